@@ -0,0 +1,98 @@
+/*
+ * All content copyright unionj-cloud, unless otherwise indicated. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy
+ * of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package quartzplus.benchmarks;
+
+import org.openjdk.jmh.annotations.*;
+import org.springframework.context.support.GenericApplicationContext;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.scheduling.quartz.SchedulerFactoryBean;
+import quartzplus.core.dto.JobRequest;
+import quartzplus.core.quartz.QuartzUtils;
+import quartzplus.core.service.impl.DefaultQuartzPlusBaseServiceImpl;
+
+import javax.sql.DataSource;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Cost of storing jobs into the JDBC job store, one by one and in bulk. Results are per stored job.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class AddScheduleJobBenchmark {
+
+    private static final int BATCH_SIZE = 100;
+
+    private final AtomicLong sequence = new AtomicLong();
+
+    private GenericApplicationContext context;
+    private SchedulerFactoryBean schedulerFactoryBean;
+    private DefaultQuartzPlusBaseServiceImpl service;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        DataSource dataSource = BenchmarkDatabase.create();
+
+        context = new GenericApplicationContext();
+        context.registerBean(DataSourceTransactionManager.class, () -> new DataSourceTransactionManager(dataSource));
+        context.refresh();
+
+        schedulerFactoryBean = BenchmarkDatabase.createSchedulerFactoryBean("addScheduleJobBenchmark", dataSource);
+        QuartzUtils.addSchedulerFactoryBean(NoOpJob.class.getName(), schedulerFactoryBean);
+        service = new DefaultQuartzPlusBaseServiceImpl(context);
+    }
+
+    @TearDown(Level.Iteration)
+    public void clear() throws Exception {
+        schedulerFactoryBean.getScheduler().clear();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        schedulerFactoryBean.destroy();
+        context.close();
+    }
+
+    @Benchmark
+    public boolean addScheduleJob() {
+        return service.addScheduleJob(newRequest());
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH_SIZE)
+    public List<Boolean> addScheduleJobs() {
+        List<JobRequest> jobRequests = new ArrayList<>(BATCH_SIZE);
+        for (int i = 0; i < BATCH_SIZE; i++) {
+            jobRequests.add(newRequest());
+        }
+        return service.addScheduleJobs(jobRequests);
+    }
+
+    private JobRequest newRequest() {
+        JobRequest jobRequest = new JobRequest();
+        jobRequest.setJobClass(NoOpJob.class.getName());
+        jobRequest.setJobName("job-" + sequence.incrementAndGet());
+        jobRequest.setJobGroup("benchmark");
+        return jobRequest;
+    }
+}
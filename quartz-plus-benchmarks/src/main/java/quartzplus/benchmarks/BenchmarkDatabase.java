@@ -0,0 +1,73 @@
+/*
+ * All content copyright unionj-cloud, unless otherwise indicated. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy
+ * of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package quartzplus.benchmarks;
+
+import org.h2.jdbcx.JdbcDataSource;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.jdbc.datasource.init.ScriptUtils;
+import org.springframework.scheduling.quartz.SchedulerFactoryBean;
+import quartzplus.core.quartz.GroupBalanceTriggerDelegate;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.Properties;
+import java.util.UUID;
+
+/**
+ * Embedded H2 database holding the quartz tables, one fresh in-memory database per benchmark trial
+ */
+public final class BenchmarkDatabase {
+
+    public static final String TABLE_PREFIX = "QRTZ_";
+
+    private static final String SCHEMA = "quartzplus/core/sql/tables_h2.sql";
+
+    private BenchmarkDatabase() {
+    }
+
+    public static DataSource create() throws SQLException {
+        JdbcDataSource dataSource = new JdbcDataSource();
+        dataSource.setURL("jdbc:h2:mem:" + UUID.randomUUID() + ";DB_CLOSE_DELAY=-1");
+        dataSource.setUser("sa");
+        dataSource.setPassword("");
+        try (Connection conn = dataSource.getConnection()) {
+            ScriptUtils.executeSqlScript(conn, new ClassPathResource(SCHEMA));
+        }
+        return dataSource;
+    }
+
+    /**
+     * Build a scheduler on the given data source the same way QuartzPlusJobFactoryBean does, without starting it
+     */
+    public static SchedulerFactoryBean createSchedulerFactoryBean(String schedulerName, DataSource dataSource) throws Exception {
+        Properties properties = new Properties();
+        properties.setProperty("org.quartz.scheduler.instanceName", schedulerName);
+        properties.setProperty("org.quartz.scheduler.instanceId", "AUTO");
+        properties.setProperty("org.quartz.threadPool.threadCount", "1");
+        properties.setProperty("org.quartz.jobStore.tablePrefix", TABLE_PREFIX);
+        properties.setProperty("org.quartz.jobStore.driverDelegateClass", GroupBalanceTriggerDelegate.class.getName());
+
+        SchedulerFactoryBean schedulerFactoryBean = new SchedulerFactoryBean();
+        schedulerFactoryBean.setSchedulerName(schedulerName);
+        schedulerFactoryBean.setDataSource(dataSource);
+        schedulerFactoryBean.setQuartzProperties(properties);
+        schedulerFactoryBean.setAutoStartup(false);
+        schedulerFactoryBean.afterPropertiesSet();
+        return schedulerFactoryBean;
+    }
+}
@@ -0,0 +1,119 @@
+/*
+ * All content copyright unionj-cloud, unless otherwise indicated. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy
+ * of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package quartzplus.benchmarks;
+
+import org.openjdk.jmh.annotations.*;
+import org.quartz.Job;
+import org.quartz.JobExecutionContext;
+import org.quartz.Scheduler;
+import org.quartz.simpl.SimpleJobFactory;
+import org.springframework.context.support.GenericApplicationContext;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.scheduling.quartz.SchedulerFactoryBean;
+import quartzplus.core.delay.DelayedJobEngine;
+import quartzplus.core.dto.JobRequest;
+import quartzplus.core.quartz.QuartzUtils;
+import quartzplus.core.service.impl.DefaultQuartzPlusBaseServiceImpl;
+
+import javax.sql.DataSource;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Whole life of one shot jobs due right away, from storing them to the end of their run, either as quartz triggers
+ * or through the delayed job engine. Results are per job.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class DelayedJobBenchmark {
+
+    private static final int BATCH_SIZE = 100;
+
+    private static final Semaphore COMPLETED = new Semaphore(0);
+
+    private final AtomicLong sequence = new AtomicLong();
+
+    @Param({"false", "true"})
+    private boolean delayedJobs;
+
+    private GenericApplicationContext context;
+    private SchedulerFactoryBean schedulerFactoryBean;
+    private DelayedJobEngine engine;
+    private DefaultQuartzPlusBaseServiceImpl service;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        DataSource dataSource = BenchmarkDatabase.create();
+
+        context = new GenericApplicationContext();
+        context.registerBean(DataSourceTransactionManager.class, () -> new DataSourceTransactionManager(dataSource));
+        context.refresh();
+
+        schedulerFactoryBean = BenchmarkDatabase.createSchedulerFactoryBean("delayedJobBenchmark", dataSource);
+        Scheduler scheduler = schedulerFactoryBean.getScheduler();
+        if (delayedJobs) {
+            engine = DelayedJobEngine.open(scheduler, new SimpleJobFactory(), dataSource,
+                BenchmarkDatabase.TABLE_PREFIX, false, 10L, 60_000L, 1);
+        }
+        QuartzUtils.addSchedulerFactoryBean(CompletingJob.class.getName(), schedulerFactoryBean);
+        service = new DefaultQuartzPlusBaseServiceImpl(context);
+        scheduler.start();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        if (engine != null) {
+            engine.close(5_000L);
+        }
+        schedulerFactoryBean.destroy();
+        context.close();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH_SIZE)
+    public boolean runOneShotJobs() throws InterruptedException {
+        List<JobRequest> jobRequests = new ArrayList<>(BATCH_SIZE);
+        for (int i = 0; i < BATCH_SIZE; i++) {
+            jobRequests.add(newRequest());
+        }
+        service.addScheduleJobs(jobRequests);
+        return COMPLETED.tryAcquire(BATCH_SIZE, 30, TimeUnit.SECONDS);
+    }
+
+    private JobRequest newRequest() {
+        JobRequest jobRequest = new JobRequest();
+        jobRequest.setJobClass(CompletingJob.class.getName());
+        jobRequest.setJobName("job-" + sequence.incrementAndGet());
+        jobRequest.setJobGroup("benchmark");
+        return jobRequest;
+    }
+
+    public static class CompletingJob implements Job {
+
+        @Override
+        public void execute(JobExecutionContext context) {
+            COMPLETED.release();
+        }
+    }
+}
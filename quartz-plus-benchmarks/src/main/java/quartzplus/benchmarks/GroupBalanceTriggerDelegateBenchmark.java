@@ -0,0 +1,162 @@
+/*
+ * All content copyright unionj-cloud, unless otherwise indicated. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy
+ * of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package quartzplus.benchmarks;
+
+import org.openjdk.jmh.annotations.*;
+import org.quartz.TriggerKey;
+import org.quartz.impl.jdbcjobstore.Constants;
+import org.quartz.impl.jdbcjobstore.StdJDBCDelegate;
+import org.quartz.simpl.SimpleClassLoadHelper;
+import org.slf4j.LoggerFactory;
+import quartzplus.core.quartz.GroupBalanceTriggerDelegate;
+import quartzplus.core.quartz.SkipLockedTriggerDelegate;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of selecting the triggers to acquire against a backlog of waiting triggers.
+ * <p>
+ * Half of the backlog belongs to the first group to mimic one busy tenant, the rest is spread over the other groups,
+ * and every other group already has a job executing.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class GroupBalanceTriggerDelegateBenchmark {
+
+    private static final String SCHED_NAME = "delegateBenchmark";
+
+    @Param({"1000", "10000"})
+    private int triggerCount;
+
+    @Param({"10", "100"})
+    private int groupCount;
+
+    @Param({"1", "10"})
+    private int maxCount;
+
+    /**
+     * stock: StdJDBCDelegate, balanced: GroupBalanceTriggerDelegate, fair: balanced with fairGroupAcquisition,
+     * skipLocked: SkipLockedTriggerDelegate with the H2 lock clause
+     */
+    @Param({"stock", "balanced", "fair", "skipLocked"})
+    private String delegate;
+
+    private StdJDBCDelegate jdbcDelegate;
+    private Connection conn;
+    private long noLaterThan;
+    private long noEarlierThan;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        DataSource dataSource = BenchmarkDatabase.create();
+        long now = System.currentTimeMillis();
+        noLaterThan = now + 30_000L;
+        noEarlierThan = now - 60_000L;
+
+        conn = dataSource.getConnection();
+        insertBacklog(now);
+
+        String initString = null;
+        if ("stock".equals(delegate)) {
+            jdbcDelegate = new StdJDBCDelegate();
+        } else if ("skipLocked".equals(delegate)) {
+            jdbcDelegate = new SkipLockedTriggerDelegate();
+            initString = SkipLockedTriggerDelegate.SETTING_LOCK_CLAUSE + "=FOR UPDATE SKIP LOCKED";
+        } else {
+            jdbcDelegate = new GroupBalanceTriggerDelegate();
+            if ("fair".equals(delegate)) {
+                initString = GroupBalanceTriggerDelegate.SETTING_FAIR_GROUP_ACQUISITION + "=true";
+            }
+        }
+        jdbcDelegate.initialize(LoggerFactory.getLogger(getClass()), BenchmarkDatabase.TABLE_PREFIX, SCHED_NAME,
+            "benchmark", new SimpleClassLoadHelper(), false, initString);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        conn.close();
+    }
+
+    @Benchmark
+    public List<TriggerKey> selectTriggerToAcquire() throws Exception {
+        return jdbcDelegate.selectTriggerToAcquire(conn, noLaterThan, noEarlierThan, maxCount);
+    }
+
+    private void insertBacklog(long now) throws Exception {
+        String prefix = BenchmarkDatabase.TABLE_PREFIX;
+        try (PreparedStatement jobs = conn.prepareStatement("INSERT INTO " + prefix + "JOB_DETAILS " +
+            "(SCHED_NAME, JOB_NAME, JOB_GROUP, JOB_CLASS_NAME, IS_DURABLE, IS_NONCONCURRENT, IS_UPDATE_DATA, " +
+            "REQUESTS_RECOVERY) VALUES (?, ?, ?, ?, FALSE, FALSE, FALSE, TRUE)");
+             PreparedStatement triggers = conn.prepareStatement("INSERT INTO " + prefix + "TRIGGERS " +
+                 "(SCHED_NAME, TRIGGER_NAME, TRIGGER_GROUP, JOB_NAME, JOB_GROUP, NEXT_FIRE_TIME, PRIORITY, " +
+                 "TRIGGER_STATE, TRIGGER_TYPE, START_TIME, MISFIRE_INSTR) VALUES (?, ?, ?, ?, ?, ?, 5, ?, ?, ?, -1)");
+             PreparedStatement fired = conn.prepareStatement("INSERT INTO " + prefix + "FIRED_TRIGGERS " +
+                 "(SCHED_NAME, ENTRY_ID, TRIGGER_NAME, TRIGGER_GROUP, INSTANCE_NAME, FIRED_TIME, SCHED_TIME, " +
+                 "PRIORITY, STATE) VALUES (?, ?, ?, ?, 'benchmark', ?, ?, 5, ?)")) {
+            for (int i = 0; i < triggerCount; i++) {
+                String group = group(i);
+                String name = "trigger-" + i;
+                long nextFireTime = now - (i * 7919L) % 60_000L;
+
+                jobs.setString(1, SCHED_NAME);
+                jobs.setString(2, name);
+                jobs.setString(3, group);
+                jobs.setString(4, NoOpJob.class.getName());
+                jobs.addBatch();
+
+                triggers.setString(1, SCHED_NAME);
+                triggers.setString(2, name);
+                triggers.setString(3, group);
+                triggers.setString(4, name);
+                triggers.setString(5, group);
+                triggers.setLong(6, nextFireTime);
+                triggers.setString(7, Constants.STATE_WAITING);
+                triggers.setString(8, Constants.TTYPE_SIMPLE);
+                triggers.setLong(9, nextFireTime);
+                triggers.addBatch();
+            }
+            for (int g = 0; g < groupCount; g += 2) {
+                fired.setString(1, SCHED_NAME);
+                fired.setString(2, "fired-" + g);
+                fired.setString(3, "running-" + g);
+                fired.setString(4, "group-" + g);
+                fired.setLong(5, now);
+                fired.setLong(6, now);
+                fired.setString(7, Constants.STATE_EXECUTING);
+                fired.addBatch();
+            }
+            jobs.executeBatch();
+            triggers.executeBatch();
+            fired.executeBatch();
+        }
+    }
+
+    private String group(int i) {
+        if (i < triggerCount / 2) {
+            return "group-0";
+        }
+        return "group-" + (i % groupCount);
+    }
+}
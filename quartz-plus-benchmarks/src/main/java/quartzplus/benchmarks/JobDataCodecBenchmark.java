@@ -0,0 +1,122 @@
+/*
+ * All content copyright unionj-cloud, unless otherwise indicated. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy
+ * of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package quartzplus.benchmarks;
+
+import org.openjdk.jmh.annotations.*;
+import org.quartz.JobDataMap;
+import quartzplus.core.codec.CompactJobDataCodec;
+import quartzplus.core.codec.JobDataCodecs;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of writing a JobDataMap on store and reading it back on every fire, with Java serialization (what
+ * StdJDBCDelegate does) and with the compact codec. The stored size is reported by the {@code bytes} counter.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class JobDataCodecBenchmark {
+
+    /**
+     * java: Java serialization, compact: CompactJobDataCodec, never compressed
+     * compactGzip: CompactJobDataCodec, always compressed
+     */
+    @Param({"java", "compact", "compactGzip"})
+    private String codec;
+
+    /**
+     * Entries of the map besides the failCnt entry of QuartzUtils cron triggers
+     */
+    @Param({"3", "50"})
+    private int entries;
+
+    private JobDataMap jobDataMap;
+    private CompactJobDataCodec compactCodec;
+    private byte[] stored;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        jobDataMap = new JobDataMap();
+        jobDataMap.put("failCnt", "0");
+        for (int i = 0; i < entries; i++) {
+            switch (i % 3) {
+                case 0:
+                    jobDataMap.put("tenant" + i, "tenant-" + i);
+                    break;
+                case 1:
+                    jobDataMap.put("orderId" + i, 100_000_000L + i);
+                    break;
+                default:
+                    jobDataMap.put("createdAt" + i, new Date(1_700_000_000_000L + i));
+            }
+        }
+        compactCodec = new CompactJobDataCodec();
+        stored = encode();
+    }
+
+    @Benchmark
+    public byte[] encodeJobData() throws IOException {
+        return encode();
+    }
+
+    @Benchmark
+    public Object decodeJobData() throws IOException, ClassNotFoundException {
+        if ("java".equals(codec)) {
+            try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(stored))) {
+                return in.readObject();
+            }
+        }
+        return JobDataCodecs.decode(stored);
+    }
+
+    @Benchmark
+    public void storedBytes(StoredBytes counter) {
+        counter.bytes = stored.length;
+    }
+
+    private byte[] encode() throws IOException {
+        switch (codec) {
+            case "java":
+                ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+                try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+                    out.writeObject(jobDataMap);
+                }
+                return bytes.toByteArray();
+            case "compact":
+                return JobDataCodecs.encode(compactCodec, jobDataMap.getWrappedMap(), -1);
+            default:
+                return JobDataCodecs.encode(compactCodec, jobDataMap.getWrappedMap(), 0);
+        }
+    }
+
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class StoredBytes {
+
+        public long bytes;
+    }
+}
@@ -0,0 +1,123 @@
+/*
+ * All content copyright unionj-cloud, unless otherwise indicated. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy
+ * of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package quartzplus.benchmarks;
+
+import org.openjdk.jmh.annotations.*;
+import org.quartz.*;
+import org.quartz.impl.JobDetailImpl;
+import org.quartz.impl.triggers.SimpleTriggerImpl;
+import org.quartz.spi.OperableTrigger;
+import org.quartz.spi.TriggerFiredBundle;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+import org.springframework.scheduling.quartz.QuartzJobBean;
+import quartzplus.core.spring.AutowiringSpringBeanJobFactory;
+import quartzplus.core.spring.QuartzPlusJob;
+
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of instantiating and autowiring a job instance, paid by every trigger fire
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class JobFactoryBenchmark {
+
+    private AnnotationConfigApplicationContext context;
+    private AutowiringSpringBeanJobFactory jobFactory;
+    private TriggerFiredBundle plainBundle;
+    private TriggerFiredBundle autowiredBundle;
+    private TriggerFiredBundle reusableBundle;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        context = new AnnotationConfigApplicationContext();
+        context.registerBean(GreetingService.class);
+        context.refresh();
+
+        jobFactory = new AutowiringSpringBeanJobFactory();
+        jobFactory.setApplicationContext(context);
+
+        plainBundle = newBundle(NoOpJob.class);
+        autowiredBundle = newBundle(AutowiredJob.class);
+        reusableBundle = newBundle(ReusableJob.class);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public Job newPlainJob() throws SchedulerException {
+        return jobFactory.newJob(plainBundle, null);
+    }
+
+    @Benchmark
+    public Job newAutowiredJob() throws SchedulerException {
+        return jobFactory.newJob(autowiredBundle, null);
+    }
+
+    @Benchmark
+    public Job newReusableJob() throws SchedulerException {
+        return jobFactory.newJob(reusableBundle, null);
+    }
+
+    private static TriggerFiredBundle newBundle(Class<? extends Job> jobClass) {
+        JobDetailImpl jobDetail = new JobDetailImpl();
+        jobDetail.setKey(new JobKey(jobClass.getSimpleName(), "benchmark"));
+        jobDetail.setJobClass(jobClass);
+
+        SimpleTriggerImpl trigger = new SimpleTriggerImpl();
+        trigger.setKey(new TriggerKey(jobClass.getSimpleName(), "benchmark"));
+        trigger.setJobKey(jobDetail.getKey());
+        trigger.setStartTime(new Date());
+        OperableTrigger operableTrigger = trigger;
+
+        Date now = new Date();
+        return new TriggerFiredBundle(jobDetail, operableTrigger, null, false, now, now, null, null);
+    }
+
+    public static class GreetingService {
+    }
+
+    public static class AutowiredJob implements Job {
+
+        @Autowired
+        private GreetingService greetingService;
+
+        @Override
+        public void execute(JobExecutionContext context) {
+        }
+    }
+
+    @QuartzPlusJob(reusable = true)
+    public static class ReusableJob extends QuartzJobBean {
+
+        @Autowired
+        private GreetingService greetingService;
+
+        @Override
+        protected void executeInternal(JobExecutionContext context) {
+        }
+    }
+}
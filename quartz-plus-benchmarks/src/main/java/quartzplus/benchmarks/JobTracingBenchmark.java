@@ -0,0 +1,144 @@
+/*
+ * All content copyright unionj-cloud, unless otherwise indicated. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy
+ * of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package quartzplus.benchmarks;
+
+import io.opentelemetry.sdk.OpenTelemetrySdk;
+import io.opentelemetry.sdk.common.CompletableResultCode;
+import io.opentelemetry.sdk.trace.SdkTracerProvider;
+import io.opentelemetry.sdk.trace.data.SpanData;
+import io.opentelemetry.sdk.trace.export.SimpleSpanProcessor;
+import io.opentelemetry.sdk.trace.export.SpanExporter;
+import org.openjdk.jmh.annotations.*;
+import org.quartz.*;
+import org.quartz.impl.JobDetailImpl;
+import org.quartz.impl.JobExecutionContextImpl;
+import org.quartz.impl.StdSchedulerFactory;
+import org.quartz.impl.triggers.SimpleTriggerImpl;
+import org.quartz.spi.TriggerFiredBundle;
+import quartzplus.core.tracing.JobTracing;
+
+import java.util.Collection;
+import java.util.Date;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Tracing cost paid by every fire: the job listeners run before and after a job, with spans recorded by the
+ * OpenTelemetry SDK and exported to nowhere
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class JobTracingBenchmark {
+
+    /**
+     * off: no tracing, all: every fire, sampled: samplingRatio of the fires,
+     * slowOnly: fires of 5 ms against a 1 s threshold, i.e. none is traced
+     */
+    @Param({"off", "all", "sampled", "slowOnly"})
+    private String mode;
+
+    @Param({"0.1"})
+    private double samplingRatio;
+
+    private OpenTelemetrySdk openTelemetry;
+    private Scheduler scheduler;
+    private List<JobListener> listeners;
+    private TriggerFiredBundle bundle;
+    private Job job;
+
+    @Setup(Level.Trial)
+    public void setUp() throws SchedulerException {
+        openTelemetry = OpenTelemetrySdk.builder()
+            .setTracerProvider(SdkTracerProvider.builder()
+                .addSpanProcessor(SimpleSpanProcessor.create(new DiscardingSpanExporter()))
+                .build())
+            .build();
+
+        Properties properties = new Properties();
+        properties.setProperty("org.quartz.scheduler.instanceName", "JobTracingBenchmark-" + mode);
+        properties.setProperty("org.quartz.scheduler.skipUpdateCheck", "true");
+        properties.setProperty("org.quartz.jobStore.class", "org.quartz.simpl.RAMJobStore");
+        properties.setProperty("org.quartz.threadPool.threadCount", "1");
+        scheduler = new StdSchedulerFactory(properties).getScheduler();
+        switch (mode) {
+            case "all":
+                JobTracing.configure(scheduler, openTelemetry, 1.0, -1);
+                break;
+            case "sampled":
+                JobTracing.configure(scheduler, openTelemetry, samplingRatio, -1);
+                break;
+            case "slowOnly":
+                JobTracing.configure(scheduler, openTelemetry, 1.0, 1000);
+                break;
+            default:
+        }
+        listeners = scheduler.getListenerManager().getJobListeners();
+
+        JobDetailImpl jobDetail = new JobDetailImpl();
+        jobDetail.setKey(new JobKey("tracedJob", "benchmark"));
+        jobDetail.setJobClass(NoOpJob.class);
+        SimpleTriggerImpl trigger = new SimpleTriggerImpl();
+        trigger.setKey(new TriggerKey("tracedJob", "benchmark"));
+        trigger.setJobKey(jobDetail.getKey());
+        trigger.setStartTime(new Date());
+        Date now = new Date();
+        bundle = new TriggerFiredBundle(jobDetail, trigger, null, false, now, now, null, null);
+        job = new NoOpJob();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws SchedulerException {
+        scheduler.shutdown();
+        openTelemetry.getSdkTracerProvider().shutdown();
+    }
+
+    @Benchmark
+    public JobExecutionContext fire() {
+        JobExecutionContextImpl context = new JobExecutionContextImpl(scheduler, bundle, job);
+        for (JobListener listener : listeners) {
+            listener.jobToBeExecuted(context);
+        }
+        context.setJobRunTime(5);
+        for (JobListener listener : listeners) {
+            listener.jobWasExecuted(context, null);
+        }
+        return context;
+    }
+
+    private static class DiscardingSpanExporter implements SpanExporter {
+
+        @Override
+        public CompletableResultCode export(Collection<SpanData> spans) {
+            return CompletableResultCode.ofSuccess();
+        }
+
+        @Override
+        public CompletableResultCode flush() {
+            return CompletableResultCode.ofSuccess();
+        }
+
+        @Override
+        public CompletableResultCode shutdown() {
+            return CompletableResultCode.ofSuccess();
+        }
+    }
+}
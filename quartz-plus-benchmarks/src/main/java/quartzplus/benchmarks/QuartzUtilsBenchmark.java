@@ -0,0 +1,150 @@
+/*
+ * All content copyright unionj-cloud, unless otherwise indicated. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy
+ * of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package quartzplus.benchmarks;
+
+import org.openjdk.jmh.annotations.*;
+import org.quartz.*;
+import org.springframework.context.support.GenericApplicationContext;
+import org.springframework.scheduling.quartz.CronTriggerFactoryBean;
+import org.springframework.scheduling.quartz.JobDetailFactoryBean;
+import org.springframework.scheduling.quartz.SimpleTriggerFactoryBean;
+import quartzplus.core.dto.JobRequest;
+import quartzplus.core.quartz.QuartzUtils;
+
+import java.text.ParseException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of building the JobDetail and Trigger of one request, paid by every addScheduleJob call.
+ * <p>
+ * The *WithFactoryBean benchmarks are the former Spring factory bean based implementation, kept as a baseline for the
+ * Quartz builder one; run with -prof gc to compare allocations (gc.alloc.rate.norm).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class QuartzUtilsBenchmark {
+
+    private GenericApplicationContext context;
+    private JobRequest simpleRequest;
+    private JobRequest repeatRequest;
+    private JobRequest cronRequest;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        context = new GenericApplicationContext();
+        context.refresh();
+
+        simpleRequest = newRequest("simple");
+
+        repeatRequest = newRequest("repeat");
+        repeatRequest.setRepeatIntervalInSeconds(60);
+        repeatRequest.setRepeatCount(10);
+
+        cronRequest = newRequest("cron");
+        cronRequest.setCronExpression("0 0/5 * * * ?");
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public JobDetail createJob() {
+        return QuartzUtils.createJob(simpleRequest, NoOpJob.class, context);
+    }
+
+    @Benchmark
+    public Trigger createSimpleTrigger() {
+        return QuartzUtils.createTrigger(simpleRequest);
+    }
+
+    @Benchmark
+    public Trigger createRepeatTrigger() {
+        return QuartzUtils.createTrigger(repeatRequest);
+    }
+
+    @Benchmark
+    public Trigger createCronTrigger() {
+        return QuartzUtils.createTrigger(cronRequest);
+    }
+
+    @Benchmark
+    public Class<? extends Job> getJobClass() throws ClassNotFoundException {
+        return QuartzUtils.getJobClass(simpleRequest.getJobClass());
+    }
+
+    @Benchmark
+    @SuppressWarnings("unchecked")
+    public Class<? extends Job> classForName() throws ClassNotFoundException {
+        return (Class<? extends Job>) Class.forName(simpleRequest.getJobClass());
+    }
+
+    @Benchmark
+    public JobDetail createJobWithFactoryBean() {
+        JobDetailFactoryBean factoryBean = new JobDetailFactoryBean();
+        factoryBean.setJobClass(NoOpJob.class);
+        factoryBean.setDurability(false);
+        factoryBean.setApplicationContext(context);
+        factoryBean.setName(simpleRequest.getJobName());
+        factoryBean.setGroup(simpleRequest.getJobGroup());
+        factoryBean.setDescription(simpleRequest.getDesc());
+        factoryBean.setRequestsRecovery(true);
+        factoryBean.afterPropertiesSet();
+        return factoryBean.getObject();
+    }
+
+    @Benchmark
+    public Trigger createSimpleTriggerWithFactoryBean() {
+        SimpleTriggerFactoryBean factoryBean = new SimpleTriggerFactoryBean();
+        factoryBean.setName(simpleRequest.getJobName());
+        factoryBean.setGroup(simpleRequest.getJobGroup());
+        factoryBean.setMisfireInstruction(SimpleTrigger.MISFIRE_INSTRUCTION_IGNORE_MISFIRE_POLICY);
+        factoryBean.setRepeatInterval(simpleRequest.getRepeatIntervalInSeconds() * 1000);
+        factoryBean.setRepeatCount(simpleRequest.getRepeatCount());
+        factoryBean.afterPropertiesSet();
+        return factoryBean.getObject();
+    }
+
+    @Benchmark
+    public Trigger createCronTriggerWithFactoryBean() throws ParseException {
+        JobDataMap jobDataMap = new JobDataMap();
+        jobDataMap.put("failCnt", "0");
+        jobDataMap.put("stop", "N");
+        jobDataMap.put("retry", cronRequest.getRetry());
+        CronTriggerFactoryBean factoryBean = new CronTriggerFactoryBean();
+        factoryBean.setName(cronRequest.getJobName().concat("Trigger"));
+        factoryBean.setGroup(cronRequest.getJobGroup());
+        factoryBean.setCronExpression(cronRequest.getCronExpression());
+        factoryBean.setMisfireInstruction(SimpleTrigger.MISFIRE_INSTRUCTION_FIRE_NOW);
+        factoryBean.setJobDataMap(jobDataMap);
+        factoryBean.afterPropertiesSet();
+        return factoryBean.getObject();
+    }
+
+    private static JobRequest newRequest(String jobName) {
+        JobRequest jobRequest = new JobRequest();
+        jobRequest.setJobClass(NoOpJob.class.getName());
+        jobRequest.setJobName(jobName);
+        jobRequest.setJobGroup("benchmark");
+        return jobRequest;
+    }
+}
@@ -7,14 +7,19 @@ import org.springframework.boot.context.event.ApplicationReadyEvent;
 import org.springframework.context.ApplicationListener;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Profile;
 import org.springframework.core.annotation.Order;
 import quartzplus.core.dto.JobRequest;
 import quartzplus.core.service.QuartzPlusBaseService;
 
 import java.util.UUID;
 
+/**
+ * Demo jobs, left out of the load test profile, which disables their schedulers
+ */
 @Slf4j
 @Configuration
+@Profile("!loadtest")
 public class AppConfig implements ApplicationListener<ApplicationReadyEvent> {
 
     @Autowired
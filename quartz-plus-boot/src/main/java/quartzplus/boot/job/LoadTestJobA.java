@@ -0,0 +1,8 @@
+package quartzplus.boot.job;
+
+import quartzplus.boot.loadtest.AbstractLoadTestJob;
+import quartzplus.core.spring.QuartzPlusJob;
+
+@QuartzPlusJob("loadTestJobA")
+public class LoadTestJobA extends AbstractLoadTestJob {
+}
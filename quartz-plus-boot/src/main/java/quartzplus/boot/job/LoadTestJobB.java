@@ -0,0 +1,8 @@
+package quartzplus.boot.job;
+
+import quartzplus.boot.loadtest.AbstractLoadTestJob;
+import quartzplus.core.spring.QuartzPlusJob;
+
+@QuartzPlusJob("loadTestJobB")
+public class LoadTestJobB extends AbstractLoadTestJob {
+}
@@ -0,0 +1,35 @@
+package quartzplus.boot.loadtest;
+
+import org.quartz.CronTrigger;
+import org.quartz.JobExecutionContext;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.scheduling.quartz.QuartzJobBean;
+
+/**
+ * Base of the load test jobs, reports fire lag and completion to the recorder
+ */
+public abstract class AbstractLoadTestJob extends QuartzJobBean {
+
+    public static final String WORK_MILLIS = "workMillis";
+
+    @Autowired(required = false)
+    private LoadTestRecorder recorder;
+
+    @Override
+    protected void executeInternal(JobExecutionContext context) {
+        if (recorder == null) {
+            return;
+        }
+        recorder.jobStarted(context);
+        long workMillis = context.getMergedJobDataMap().containsKey(WORK_MILLIS) ?
+            context.getMergedJobDataMap().getLongValue(WORK_MILLIS) : 0L;
+        if (workMillis > 0) {
+            try {
+                Thread.sleep(workMillis);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        recorder.jobCompleted(context, !(context.getTrigger() instanceof CronTrigger));
+    }
+}
@@ -0,0 +1,68 @@
+package quartzplus.boot.loadtest;
+
+import javax.sql.DataSource;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.Statement;
+
+/**
+ * Wraps a DataSource so that every statement execution, commit and rollback counts as one DB round trip
+ */
+public final class CountingDataSource {
+
+    private CountingDataSource() {
+    }
+
+    public static DataSource wrap(DataSource dataSource, LoadTestRecorder recorder) {
+        return proxy(DataSource.class, dataSource, recorder);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> T proxy(Class<T> type, T target, LoadTestRecorder recorder) {
+        return (T) Proxy.newProxyInstance(CountingDataSource.class.getClassLoader(), new Class<?>[]{type},
+            new CountingHandler(target, recorder));
+    }
+
+    private static class CountingHandler implements InvocationHandler {
+
+        private final Object target;
+        private final LoadTestRecorder recorder;
+
+        CountingHandler(Object target, LoadTestRecorder recorder) {
+            this.target = target;
+            this.recorder = recorder;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            String name = method.getName();
+            if ("unwrap".equals(name) && args[0] instanceof Class && ((Class<?>) args[0]).isInstance(target)) {
+                return target;
+            }
+            if (name.startsWith("execute") || "commit".equals(name) || "rollback".equals(name)) {
+                recorder.dbRoundTrip();
+            }
+            Object result;
+            try {
+                result = method.invoke(target, args);
+            } catch (InvocationTargetException e) {
+                throw e.getTargetException();
+            }
+            if (result instanceof Connection) {
+                return proxy(Connection.class, (Connection) result, recorder);
+            }
+            if (result instanceof Statement) {
+                return proxy(statementType(method.getReturnType()), (Statement) result, recorder);
+            }
+            return result;
+        }
+
+        @SuppressWarnings("unchecked")
+        private static Class<Statement> statementType(Class<?> returnType) {
+            return (Class<Statement>) (Statement.class.isAssignableFrom(returnType) ? returnType : Statement.class);
+        }
+    }
+}
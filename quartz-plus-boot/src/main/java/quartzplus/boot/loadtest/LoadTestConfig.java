@@ -0,0 +1,43 @@
+package quartzplus.boot.loadtest;
+
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Lazy;
+
+import javax.sql.DataSource;
+
+/**
+ * Load test beans, only present with quartz-plus.load-test.enabled=true (see application-loadtest.properties)
+ */
+@Configuration
+@ConditionalOnProperty(prefix = "quartz-plus.load-test", name = "enabled", havingValue = "true")
+public class LoadTestConfig {
+
+    @Bean
+    public LoadTestRecorder loadTestRecorder() {
+        return new LoadTestRecorder();
+    }
+
+    /**
+     * Counts DB round trips of every DataSource, including the one handed to the schedulers
+     */
+    @Bean
+    public static BeanPostProcessor countingDataSourcePostProcessor(@Lazy LoadTestRecorder loadTestRecorder) {
+        return new BeanPostProcessor() {
+            @Override
+            public Object postProcessAfterInitialization(Object bean, String beanName) {
+                if (bean instanceof DataSource) {
+                    return CountingDataSource.wrap((DataSource) bean, loadTestRecorder);
+                }
+                return bean;
+            }
+        };
+    }
+
+    @Bean
+    public LoadTestRunner loadTestRunner() {
+        return new LoadTestRunner();
+    }
+}
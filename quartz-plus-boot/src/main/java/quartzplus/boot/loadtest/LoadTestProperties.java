@@ -0,0 +1,63 @@
+package quartzplus.boot.loadtest;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.util.ArrayList;
+import java.util.List;
+
+@Getter
+@Setter
+@ConfigurationProperties(prefix = "quartz-plus.load-test")
+public class LoadTestProperties {
+
+    /**
+     * Whether to run the load test once the application is ready
+     */
+    private Boolean enabled = false;
+
+    /**
+     * Fully qualified job classes the load is spread over round-robin, each one is backed by its own scheduler
+     */
+    private List<String> jobClasses = new ArrayList<>();
+
+    /**
+     * Number of one-shot simple jobs submitted
+     */
+    private Integer simpleJobs = 1000;
+
+    /**
+     * Simple jobs start times are spread evenly over this many seconds after submission
+     */
+    private Integer simpleStartSpreadSeconds = 30;
+
+    /**
+     * Number of cron jobs submitted, they fire until the end of the run
+     */
+    private Integer cronJobs = 100;
+
+    private String cronExpression = "0/5 * * * * ?";
+
+    /**
+     * Length of the measured run in seconds, counted from the end of submission
+     */
+    private Integer durationSeconds = 60;
+
+    /**
+     * Extra seconds to wait for simple jobs still pending at the end of the run
+     */
+    private Integer drainTimeoutSeconds = 30;
+
+    /**
+     * Simulated work of each job in milliseconds
+     */
+    private Long jobWorkMillis = 0L;
+
+    private String reportFile = "target/load-test-report.json";
+
+    /**
+     * Whether to shut the application down once the report is written
+     */
+    private Boolean exitOnComplete = true;
+}
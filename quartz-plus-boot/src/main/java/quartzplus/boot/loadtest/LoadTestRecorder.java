@@ -0,0 +1,100 @@
+package quartzplus.boot.loadtest;
+
+import org.HdrHistogram.ConcurrentHistogram;
+import org.HdrHistogram.Histogram;
+import org.quartz.JobExecutionContext;
+import org.quartz.Scheduler;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Collects what the load test measures: completed jobs, fire lag and DB round trips
+ */
+public class LoadTestRecorder {
+
+    /**
+     * Lag is recorded in milliseconds, anything above one hour is clamped
+     */
+    private static final long MAX_LAG_MILLIS = 3_600_000L;
+
+    private final Histogram fireLag = new ConcurrentHistogram(MAX_LAG_MILLIS, 3);
+    private final LongAdder completed = new LongAdder();
+    private final LongAdder completedSimple = new LongAdder();
+    private final LongAdder dbRoundTrips = new LongAdder();
+    private final Map<String, Scheduler> schedulers = new ConcurrentHashMap<>();
+    private final Map<String, LongAdder> completedPerScheduler = new ConcurrentHashMap<>();
+
+    private volatile boolean recording;
+
+    /**
+     * Records the lag between the scheduled fire time and the moment the job instance actually starts
+     */
+    public void jobStarted(JobExecutionContext context) {
+        if (!recording || context.getScheduledFireTime() == null) {
+            return;
+        }
+        long lag = System.currentTimeMillis() - context.getScheduledFireTime().getTime();
+        fireLag.recordValue(Math.min(Math.max(lag, 0L), MAX_LAG_MILLIS));
+    }
+
+    public void jobCompleted(JobExecutionContext context, boolean simple) {
+        if (!recording) {
+            return;
+        }
+        completed.increment();
+        if (simple) {
+            completedSimple.increment();
+        }
+        Scheduler scheduler = context.getScheduler();
+        try {
+            String schedulerName = scheduler.getSchedulerName();
+            schedulers.putIfAbsent(schedulerName, scheduler);
+            completedPerScheduler.computeIfAbsent(schedulerName, k -> new LongAdder()).increment();
+        } catch (Exception ignored) {
+            // scheduler shutting down, the job is still counted
+        }
+    }
+
+    public void dbRoundTrip() {
+        dbRoundTrips.increment();
+    }
+
+    public void start() {
+        fireLag.reset();
+        completed.reset();
+        completedSimple.reset();
+        completedPerScheduler.clear();
+        recording = true;
+    }
+
+    public void stop() {
+        recording = false;
+    }
+
+    public Histogram getFireLag() {
+        return fireLag.copy();
+    }
+
+    public long getCompleted() {
+        return completed.sum();
+    }
+
+    public long getCompletedSimple() {
+        return completedSimple.sum();
+    }
+
+    public long getDbRoundTrips() {
+        return dbRoundTrips.sum();
+    }
+
+    public Map<String, Scheduler> getSchedulers() {
+        return schedulers;
+    }
+
+    public long getCompleted(String schedulerName) {
+        LongAdder adder = completedPerScheduler.get(schedulerName);
+        return adder == null ? 0L : adder.sum();
+    }
+}
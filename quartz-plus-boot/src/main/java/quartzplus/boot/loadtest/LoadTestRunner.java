@@ -0,0 +1,193 @@
+package quartzplus.boot.loadtest;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import lombok.extern.slf4j.Slf4j;
+import org.HdrHistogram.Histogram;
+import org.quartz.JobDataMap;
+import org.quartz.Scheduler;
+import org.quartz.SchedulerMetaData;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.SpringApplication;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.ApplicationListener;
+import org.springframework.context.ConfigurableApplicationContext;
+import quartzplus.core.dto.JobRequest;
+import quartzplus.core.service.QuartzPlusBaseService;
+
+import java.io.File;
+import java.time.LocalDateTime;
+import java.time.OffsetDateTime;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Submits the configured load once the application is ready, waits for the run to finish and writes a JSON report
+ */
+@Slf4j
+public class LoadTestRunner implements ApplicationListener<ApplicationReadyEvent> {
+
+    private static final String JOB_GROUP_PREFIX = "load-test-";
+    private static final int JOB_GROUPS = 10;
+
+    @Autowired
+    private LoadTestProperties properties;
+    @Autowired
+    private LoadTestRecorder recorder;
+    @Autowired
+    private QuartzPlusBaseService quartzPlusBaseService;
+
+    @Override
+    public void onApplicationEvent(ApplicationReadyEvent event) {
+        Thread thread = new Thread(() -> run(event.getApplicationContext()), "load-test");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    private void run(ConfigurableApplicationContext context) {
+        int exitCode = 0;
+        try {
+            Map<String, Object> report = execute();
+            File reportFile = new File(properties.getReportFile()).getAbsoluteFile();
+            reportFile.getParentFile().mkdirs();
+            new ObjectMapper().enable(SerializationFeature.INDENT_OUTPUT).writeValue(reportFile, report);
+            log.info("Load test report written to {}", reportFile);
+        } catch (Exception e) {
+            log.error("Load test failed", e);
+            exitCode = 1;
+        }
+        if (properties.getExitOnComplete()) {
+            int code = exitCode;
+            System.exit(SpringApplication.exit(context, () -> code));
+        }
+    }
+
+    private Map<String, Object> execute() throws InterruptedException {
+        if (properties.getJobClasses().isEmpty()) {
+            throw new IllegalStateException("quartz-plus.load-test.job-classes must not be empty");
+        }
+        Map<String, Object> report = new LinkedHashMap<>();
+        report.put("startedAt", OffsetDateTime.now().toString());
+        report.put("settings", properties);
+
+        recorder.start();
+        long runStart = System.currentTimeMillis();
+        long roundTripsAtStart = recorder.getDbRoundTrips();
+
+        List<JobRequest> simpleRequests = buildSimpleRequests();
+        List<JobRequest> cronRequests = buildCronRequests();
+        long submittedSimple = countAccepted(quartzPlusBaseService.addScheduleJobs(simpleRequests));
+        long submittedCron = countAccepted(quartzPlusBaseService.addScheduleJobs(cronRequests));
+
+        long submitEnd = System.currentTimeMillis();
+        long roundTripsAtSubmitEnd = recorder.getDbRoundTrips();
+        Map<String, Object> submission = new LinkedHashMap<>();
+        submission.put("simpleJobs", submittedSimple);
+        submission.put("cronJobs", submittedCron);
+        submission.put("rejected", simpleRequests.size() + cronRequests.size() - submittedSimple - submittedCron);
+        submission.put("millis", submitEnd - runStart);
+        submission.put("dbRoundTrips", roundTripsAtSubmitEnd - roundTripsAtStart);
+        report.put("submission", submission);
+        log.info("Load test submitted {} simple and {} cron jobs in {} ms", submittedSimple, submittedCron, submitEnd - runStart);
+
+        long runEnd = submitEnd + TimeUnit.SECONDS.toMillis(properties.getDurationSeconds());
+        long drainEnd = runEnd + TimeUnit.SECONDS.toMillis(properties.getDrainTimeoutSeconds());
+        while (System.currentTimeMillis() < runEnd
+            || (recorder.getCompletedSimple() < submittedSimple && System.currentTimeMillis() < drainEnd)) {
+            Thread.sleep(200L);
+        }
+        recorder.stop();
+
+        long elapsed = System.currentTimeMillis() - runStart;
+        long completed = recorder.getCompleted();
+        long roundTrips = recorder.getDbRoundTrips() - roundTripsAtStart;
+        Map<String, Object> run = new LinkedHashMap<>();
+        run.put("millis", elapsed);
+        run.put("completedJobs", completed);
+        run.put("completedSimpleJobs", recorder.getCompletedSimple());
+        run.put("pendingSimpleJobs", submittedSimple - recorder.getCompletedSimple());
+        run.put("jobsPerSecond", completed * 1000.0d / elapsed);
+        run.put("dbRoundTrips", roundTrips);
+        run.put("dbRoundTripsPerFiredJob", completed == 0 ? null : (double) roundTrips / completed);
+        report.put("run", run);
+        report.put("fireLagMillis", fireLag(recorder.getFireLag()));
+        report.put("schedulers", schedulers());
+        log.info("Load test completed {} jobs in {} ms, {} jobs/s", completed, elapsed, run.get("jobsPerSecond"));
+        return report;
+    }
+
+    private List<JobRequest> buildSimpleRequests() {
+        List<JobRequest> jobRequests = new ArrayList<>();
+        LocalDateTime now = LocalDateTime.now();
+        long spreadMillis = TimeUnit.SECONDS.toMillis(properties.getSimpleStartSpreadSeconds());
+        for (int i = 0; i < properties.getSimpleJobs(); i++) {
+            JobRequest jobRequest = newRequest("load-simple-" + i, i);
+            long offsetMillis = spreadMillis * i / Math.max(properties.getSimpleJobs(), 1);
+            jobRequest.setStartDateAt(now.plusNanos(TimeUnit.MILLISECONDS.toNanos(offsetMillis)));
+            jobRequests.add(jobRequest);
+        }
+        return jobRequests;
+    }
+
+    private List<JobRequest> buildCronRequests() {
+        List<JobRequest> jobRequests = new ArrayList<>();
+        for (int i = 0; i < properties.getCronJobs(); i++) {
+            JobRequest jobRequest = newRequest("load-cron-" + i, i);
+            jobRequest.setCronExpression(properties.getCronExpression());
+            jobRequests.add(jobRequest);
+        }
+        return jobRequests;
+    }
+
+    private JobRequest newRequest(String jobName, int index) {
+        List<String> jobClasses = properties.getJobClasses();
+        JobRequest jobRequest = new JobRequest();
+        jobRequest.setJobName(jobName);
+        jobRequest.setJobGroup(JOB_GROUP_PREFIX + index % JOB_GROUPS);
+        jobRequest.setJobClass(jobClasses.get(index % jobClasses.size()));
+        JobDataMap jobDataMap = new JobDataMap();
+        jobDataMap.put(AbstractLoadTestJob.WORK_MILLIS, properties.getJobWorkMillis());
+        jobRequest.setJobDataMap(jobDataMap);
+        return jobRequest;
+    }
+
+    private long countAccepted(List<Boolean> results) {
+        return results.stream().filter(Boolean.TRUE::equals).count();
+    }
+
+    private Map<String, Object> fireLag(Histogram histogram) {
+        Map<String, Object> fireLag = new LinkedHashMap<>();
+        fireLag.put("count", histogram.getTotalCount());
+        fireLag.put("min", histogram.getMinValue());
+        fireLag.put("mean", histogram.getMean());
+        fireLag.put("p50", histogram.getValueAtPercentile(50));
+        fireLag.put("p90", histogram.getValueAtPercentile(90));
+        fireLag.put("p99", histogram.getValueAtPercentile(99));
+        fireLag.put("p999", histogram.getValueAtPercentile(99.9));
+        fireLag.put("max", histogram.getMaxValue());
+        return fireLag;
+    }
+
+    private List<Map<String, Object>> schedulers() {
+        List<Map<String, Object>> schedulers = new ArrayList<>();
+        for (Map.Entry<String, Scheduler> entry : recorder.getSchedulers().entrySet()) {
+            Map<String, Object> scheduler = new LinkedHashMap<>();
+            scheduler.put("name", entry.getKey());
+            scheduler.put("completedJobs", recorder.getCompleted(entry.getKey()));
+            try {
+                SchedulerMetaData metaData = entry.getValue().getMetaData();
+                scheduler.put("threadPoolSize", metaData.getThreadPoolSize());
+                scheduler.put("clustered", metaData.isJobStoreClustered());
+                scheduler.put("jobStoreClass", metaData.getJobStoreClass().getName());
+                scheduler.put("jobsExecuted", metaData.getNumberOfJobsExecuted());
+            } catch (Exception e) {
+                log.warn("Failed to read metadata of scheduler {}", entry.getKey(), e);
+            }
+            schedulers.add(scheduler);
+        }
+        return schedulers;
+    }
+}
@@ -18,6 +18,7 @@ package quartzplus.core;
 
 import lombok.RequiredArgsConstructor;
 import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.SmartInitializingSingleton;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnMissingBean;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnSingleCandidate;
@@ -33,8 +34,11 @@ import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Conditional;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.context.annotation.Import;
+import quartzplus.core.quartz.QuartzPlusJobStore;
 import quartzplus.core.service.QuartzPlusBaseService;
 import quartzplus.core.service.impl.DefaultQuartzPlusBaseServiceImpl;
+import quartzplus.core.wakeup.LocalWakeUpChannel;
+import quartzplus.core.wakeup.WakeUpChannel;
 
 import javax.sql.DataSource;
 
@@ -51,6 +55,17 @@ public class QuartzPlusCoreAutoConfiguration {
         return new DefaultQuartzPlusBaseServiceImpl(context);
     }
 
+    @Bean
+    @ConditionalOnMissingBean
+    public WakeUpChannel wakeUpChannel() {
+        return new LocalWakeUpChannel();
+    }
+
+    @Bean
+    public SmartInitializingSingleton wakeUpChannelSubscriber(ObjectProvider<WakeUpChannel> wakeUpChannel) {
+        return () -> wakeUpChannel.ifUnique(channel -> channel.subscribe(QuartzPlusJobStore::wakeUp));
+    }
+
     @Configuration(proxyBeanMethods = false)
     @ConditionalOnSingleCandidate(DataSource.class)
     @ConditionalOnProperty(prefix = "spring.quartz", name = "job-store-type", havingValue = "jdbc")
@@ -0,0 +1,43 @@
+/*
+ * All content copyright unionj-cloud, unless otherwise indicated. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy
+ * of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package quartzplus.core.codec;
+
+import java.io.IOException;
+import java.util.Map;
+
+/**
+ * Encodes the JobDataMap of jobs and triggers stored in the JOB_DATA columns, in place of Java serialization.
+ * <p>
+ * Stored values start with the header written by {@link JobDataCodecs}, which names the codec by {@link #getId()},
+ * so a codec must keep its id and keep decoding what it wrote in earlier versions. Values that are not encoded
+ * by a codec are still read with Java serialization.
+ */
+public interface JobDataCodec {
+
+    /**
+     * Identifies the codec in stored values, ids below 16 are reserved for the codecs of quartz-plus
+     */
+    byte getId();
+
+    /**
+     * @return the encoded data, or null if the data holds values this codec can not encode, in which case it is
+     * stored with Java serialization
+     */
+    byte[] encode(Map<String, ?> data) throws IOException;
+
+    Map<String, Object> decode(byte[] data, int offset, int length) throws IOException;
+}
@@ -0,0 +1,138 @@
+/*
+ * All content copyright unionj-cloud, unless otherwise indicated. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy
+ * of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package quartzplus.core.codec;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Frames the values of {@link JobDataCodec}s: the two byte magic "QP", the codec id, a flags byte and the payload,
+ * gzipped when it exceeds the compression threshold. Java serialization streams start with 0xACED, so both kinds
+ * of values are told apart by their first bytes.
+ * <p>
+ * Holds the codecs by id, so that values written by any registered codec can be read whatever codec a scheduler
+ * writes with.
+ */
+public class JobDataCodecs {
+
+    public static final String COMPACT = "compact";
+
+    private static final byte MAGIC_0 = 'Q';
+    private static final byte MAGIC_1 = 'P';
+    private static final int HEADER_LENGTH = 4;
+    private static final byte FLAG_GZIP = 1;
+
+    private static final Map<Byte, JobDataCodec> CODECS = new ConcurrentHashMap<>();
+
+    static {
+        register(new CompactJobDataCodec());
+    }
+
+    private JobDataCodecs() {
+    }
+
+    public static void register(JobDataCodec codec) {
+        JobDataCodec previous = CODECS.putIfAbsent(codec.getId(), codec);
+        if (previous != null && previous.getClass() != codec.getClass()) {
+            throw new IllegalArgumentException("Codec id " + codec.getId() + " of " + codec.getClass().getName()
+                + " is already used by " + previous.getClass().getName());
+        }
+    }
+
+    /**
+     * Resolves {@value #COMPACT} or the class name of a codec, and registers it for reading
+     */
+    public static JobDataCodec forName(String name, ClassLoader classLoader) throws ReflectiveOperationException {
+        if (COMPACT.equals(name)) {
+            return CODECS.get(CompactJobDataCodec.ID);
+        }
+        JobDataCodec codec = (JobDataCodec) Class.forName(name, true, classLoader).getDeclaredConstructor().newInstance();
+        register(codec);
+        return codec;
+    }
+
+    /**
+     * @param compressThreshold payload size in bytes above which it is gzipped, negative to never compress
+     * @return the framed value, or null if the codec can not encode the data
+     */
+    public static byte[] encode(JobDataCodec codec, Map<String, ?> data, int compressThreshold) throws IOException {
+        byte[] payload = codec.encode(data);
+        if (payload == null) {
+            return null;
+        }
+        byte flags = 0;
+        if (compressThreshold >= 0 && payload.length > compressThreshold) {
+            ByteArrayOutputStream compressed = new ByteArrayOutputStream(payload.length / 2);
+            try (GZIPOutputStream gzip = new GZIPOutputStream(compressed)) {
+                gzip.write(payload);
+            }
+            if (compressed.size() < payload.length) {
+                payload = compressed.toByteArray();
+                flags |= FLAG_GZIP;
+            }
+        }
+        byte[] value = new byte[HEADER_LENGTH + payload.length];
+        value[0] = MAGIC_0;
+        value[1] = MAGIC_1;
+        value[2] = codec.getId();
+        value[3] = flags;
+        System.arraycopy(payload, 0, value, HEADER_LENGTH, payload.length);
+        return value;
+    }
+
+    public static boolean isEncoded(byte[] value) {
+        return value != null && value.length >= HEADER_LENGTH && isMagic(value[0], value[1]);
+    }
+
+    /**
+     * Tells from the first two bytes of a stored value whether it was written by a codec
+     */
+    public static boolean isMagic(int first, int second) {
+        return first == MAGIC_0 && second == MAGIC_1;
+    }
+
+    /**
+     * @param value a value for which {@link #isEncoded(byte[])} holds
+     */
+    public static Map<String, Object> decode(byte[] value) throws IOException {
+        if (!isEncoded(value)) {
+            throw new IOException("Not a job data codec value");
+        }
+        JobDataCodec codec = CODECS.get(value[2]);
+        if (codec == null) {
+            throw new IOException("No job data codec registered with id " + value[2]);
+        }
+        if ((value[3] & FLAG_GZIP) == 0) {
+            return codec.decode(value, HEADER_LENGTH, value.length - HEADER_LENGTH);
+        }
+        ByteArrayOutputStream payload = new ByteArrayOutputStream(value.length * 4);
+        try (InputStream gzip = new GZIPInputStream(new ByteArrayInputStream(value, HEADER_LENGTH, value.length - HEADER_LENGTH))) {
+            byte[] buffer = new byte[4096];
+            int read;
+            while ((read = gzip.read(buffer)) != -1) {
+                payload.write(buffer, 0, read);
+            }
+        }
+        return codec.decode(payload.toByteArray(), 0, payload.size());
+    }
+}
@@ -0,0 +1,52 @@
+/*
+ * All content copyright unionj-cloud, unless otherwise indicated. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy
+ * of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package quartzplus.core.delay;
+
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+import org.quartz.JobDataMap;
+import org.quartz.JobKey;
+
+/**
+ * One shot job run once at its fire time by a {@link DelayedJobEngine}
+ */
+@Getter
+@RequiredArgsConstructor
+public class DelayedJob {
+
+    private final String jobName;
+
+    private final String jobGroup;
+
+    /**
+     * class getName
+     */
+    private final String jobClassName;
+
+    private final String description;
+
+    /**
+     * Epoch milliseconds
+     */
+    private final long fireTime;
+
+    private final JobDataMap jobDataMap;
+
+    public JobKey getKey() {
+        return JobKey.jobKey(jobName, jobGroup);
+    }
+}
@@ -0,0 +1,714 @@
+/*
+ * All content copyright unionj-cloud, unless otherwise indicated. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy
+ * of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package quartzplus.core.delay;
+
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.collections4.ListUtils;
+import org.quartz.InterruptableJob;
+import org.quartz.Job;
+import org.quartz.JobBuilder;
+import org.quartz.JobDataMap;
+import org.quartz.JobDetail;
+import org.quartz.JobExecutionContext;
+import org.quartz.JobExecutionException;
+import org.quartz.JobKey;
+import org.quartz.JobListener;
+import org.quartz.JobPersistenceException;
+import org.quartz.ListenerManager;
+import org.quartz.Matcher;
+import org.quartz.Scheduler;
+import org.quartz.SchedulerException;
+import org.quartz.Trigger.CompletedExecutionInstruction;
+import org.quartz.TriggerBuilder;
+import org.quartz.TriggerKey;
+import org.quartz.TriggerListener;
+import org.quartz.UnableToInterruptJobException;
+import org.quartz.impl.JobExecutionContextImpl;
+import org.quartz.spi.JobFactory;
+import org.quartz.spi.OperableTrigger;
+import org.quartz.spi.TriggerFiredBundle;
+import org.quartz.utils.Key;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import quartzplus.core.quartz.QuartzUtils;
+
+import javax.sql.DataSource;
+import java.io.IOException;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * Runs one shot delayed jobs of a scheduler without Quartz triggers. Each job is a single row of the
+ * {@code <table prefix>DELAYED_JOBS} table, see {@link DelayedJobStore}: jobs due within the load ahead time are kept
+ * in a {@link TimingWheel} of the node that stored or loaded them, later ones are loaded in bulk as their time
+ * approaches. When a job is due its row is moved to EXECUTING, in one batch with the other jobs due at that tick, the
+ * job is run on the engine's thread pool and its row is deleted in a later batch.
+ * <p>
+ * A job costs one insert plus its share of the batched load, mark and delete statements, instead of the row
+ * locking, polling and state updates of a trigger. Jobs run with the scheduler's JobFactory and notify the
+ * scheduler's job and trigger listeners, under the trigger key of the job's name and group, but they are neither
+ * paused with the scheduler's jobs nor listed among its executing jobs, see {@link #getCurrentlyExecutingJobs()}.
+ * <p>
+ * Execution is at least once: the jobs a node loaded or was executing return to WAITING when it leaves the cluster
+ * (or, when not clustered, when the scheduler starts again) and are run by another node, late jobs are run at once.
+ * A node only loads jobs while its scheduler is started, the jobs it loaded return to WAITING in standby.
+ */
+@Slf4j
+public class DelayedJobEngine {
+
+    /**
+     * Key of the engine in the {@link org.quartz.SchedulerContext} of its scheduler
+     */
+    public static final String CONTEXT_KEY = "quartzPlusDelayedJobEngine";
+
+    static final int WHEEL_SIZE = 512;
+
+    /**
+     * Max wait of the wheel thread, so that completed jobs are deleted and standby is left in time
+     */
+    private static final long MAX_WAIT_MILLIS = 1000L;
+
+    private static final long RETRY_DELAY_MILLIS = 1000L;
+
+    /**
+     * Also the max number of jobs claimed per load, a load claiming as many is followed by another one at once
+     * unless the thread pool is still that far behind
+     */
+    private static final int MAX_BATCH_SIZE = 500;
+
+    private static final long BACKLOG_LOAD_DELAY_MILLIS = 100L;
+
+    private final Scheduler scheduler;
+
+    private final JobFactory jobFactory;
+
+    private final DelayedJobStore store;
+
+    private final String schedulerName;
+
+    private final String instanceId;
+
+    private final boolean clustered;
+
+    private final long loadAheadMillis;
+
+    /**
+     * Guarded by this, as are {@link #loaded} and {@link #due}
+     */
+    private final TimingWheel<DelayedJob> wheel;
+
+    private final Map<JobKey, TimingWheel.Entry<DelayedJob>> loaded = new HashMap<>();
+
+    /**
+     * Jobs already due when stored or loaded
+     */
+    private final List<DelayedJob> due = new ArrayList<>();
+
+    private final Queue<JobKey> completed = new ConcurrentLinkedQueue<>();
+
+    private final ThreadPoolExecutor executor;
+
+    private final AtomicLong fireCount = new AtomicLong();
+
+    /**
+     * Running executions by fire instance id
+     */
+    private final Map<String, Execution> executions = new ConcurrentHashMap<>();
+
+    private final Thread wheelThread;
+
+    private volatile boolean closed;
+
+    private long lastLoadId;
+
+    private long nextOrphanRelease;
+
+    private DelayedJobEngine(Scheduler scheduler, JobFactory jobFactory, DelayedJobStore store, boolean clustered,
+                             long tickMillis, long loadAheadMillis, int threads) throws SchedulerException {
+        this.scheduler = scheduler;
+        this.jobFactory = jobFactory;
+        this.store = store;
+        this.schedulerName = scheduler.getSchedulerName();
+        this.instanceId = scheduler.getSchedulerInstanceId();
+        this.clustered = clustered;
+        this.loadAheadMillis = loadAheadMillis;
+        this.wheel = new TimingWheel<>(tickMillis, WHEEL_SIZE, System.currentTimeMillis());
+        AtomicInteger threadNumber = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS, new LinkedBlockingQueue<>(),
+            runnable -> new Thread(runnable, "quartz-plus-delayed-" + schedulerName + "-" + threadNumber.incrementAndGet()));
+        this.executor.allowCoreThreadTimeOut(true);
+        this.wheelThread = new Thread(this::run, "quartz-plus-delayed-wheel-" + schedulerName);
+        this.wheelThread.setDaemon(true);
+    }
+
+    /**
+     * Creates the engine of a scheduler, registers it in the scheduler context and starts it, jobs are only run while
+     * the scheduler is started
+     */
+    public static DelayedJobEngine open(Scheduler scheduler, JobFactory jobFactory, DataSource dataSource,
+                                        String tablePrefix, boolean clustered, long tickMillis, long loadAheadMillis,
+                                        int threads) throws SchedulerException {
+        DelayedJobStore store = new DelayedJobStore(dataSource, tablePrefix, scheduler.getSchedulerName());
+        if (!clustered) {
+            // Nobody else runs this scheduler, whatever was loaded or executing belongs to a previous run
+            try {
+                int released = store.releaseAll();
+                if (released > 0) {
+                    log.info("Recovered {} delayed jobs of scheduler {}", released, scheduler.getSchedulerName());
+                }
+            } catch (SQLException e) {
+                throw new JobPersistenceException("Couldn't recover delayed jobs: " + e.getMessage(), e);
+            }
+        }
+        DelayedJobEngine engine = new DelayedJobEngine(scheduler, jobFactory, store, clustered,
+            Math.max(tickMillis, 1L), Math.max(loadAheadMillis, 1L), Math.max(threads, 1));
+        scheduler.getContext().put(CONTEXT_KEY, engine);
+        engine.wheelThread.start();
+        return engine;
+    }
+
+    /**
+     * Engine of the scheduler, null if delayed jobs are not enabled for it
+     */
+    public static DelayedJobEngine get(Scheduler scheduler) throws SchedulerException {
+        Object engine = scheduler.getContext().get(CONTEXT_KEY);
+        return engine instanceof DelayedJobEngine ? (DelayedJobEngine) engine : null;
+    }
+
+    /**
+     * Stores the jobs in one batch. Within a Spring transaction the jobs are stored in it and only run once it
+     * committed, rolling it back drops them. While the scheduler is not started the jobs are left to the started nodes.
+     *
+     * @return whether each job was stored, false for jobs whose name and group are already taken
+     */
+    public boolean[] schedule(List<DelayedJob> jobs) throws SchedulerException {
+        long ownedUntil = closed || scheduler.isInStandbyMode()
+            ? Long.MIN_VALUE : System.currentTimeMillis() + loadAheadMillis;
+        boolean[] stored;
+        try {
+            stored = store.insert(jobs, instanceId, ownedUntil);
+        } catch (SQLException | IOException e) {
+            throw new JobPersistenceException("Couldn't store delayed jobs: " + e.getMessage(), e);
+        }
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    addOwned(jobs, stored, ownedUntil);
+                }
+            });
+        } else {
+            addOwned(jobs, stored, ownedUntil);
+        }
+        return stored;
+    }
+
+    private void addOwned(List<DelayedJob> jobs, boolean[] stored, long ownedUntil) {
+        synchronized (this) {
+            long nextExpiration = wheel.nextExpiration();
+            for (int i = 0; i < jobs.size(); i++) {
+                if (stored[i] && jobs.get(i).getFireTime() <= ownedUntil) {
+                    add(jobs.get(i));
+                }
+            }
+            if (!due.isEmpty() || wheel.nextExpiration() < nextExpiration) {
+                notifyAll();
+            }
+        }
+    }
+
+    /**
+     * Deletes a job that has not been run yet
+     *
+     * @return false if the job is not stored
+     */
+    public boolean cancel(JobKey jobKey) throws JobPersistenceException {
+        synchronized (this) {
+            TimingWheel.Entry<DelayedJob> entry = loaded.remove(jobKey);
+            if (entry != null) {
+                TimingWheel.remove(entry);
+            }
+        }
+        try {
+            return store.delete(Collections.singleton(jobKey)) > 0;
+        } catch (SQLException e) {
+            throw new JobPersistenceException("Couldn't delete delayed job " + jobKey + ": " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Replaces a job that has not completed yet by a job of the same name and group, e.g. with another fire time
+     *
+     * @return false if the job is not stored
+     */
+    public boolean reschedule(DelayedJob job) throws SchedulerException {
+        return cancel(job.getKey()) && schedule(Collections.singletonList(job))[0];
+    }
+
+    /**
+     * Job that has not completed yet, null if there is no such job
+     */
+    public DelayedJob getJob(JobKey jobKey) throws JobPersistenceException {
+        try {
+            return store.select(jobKey);
+        } catch (SQLException | IOException | ClassNotFoundException e) {
+            throw new JobPersistenceException("Couldn't read delayed job " + jobKey + ": " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Fire time of a job that has not completed yet, null if there is no such job
+     */
+    public Date getFireTime(JobKey jobKey) throws JobPersistenceException {
+        try {
+            Long fireTime = store.selectFireTime(jobKey);
+            return fireTime != null ? new Date(fireTime) : null;
+        } catch (SQLException e) {
+            throw new JobPersistenceException("Couldn't read delayed job " + jobKey + ": " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Executions of delayed jobs running on this node, {@code Scheduler.getCurrentlyExecutingJobs()} does not list them
+     */
+    public List<JobExecutionContext> getCurrentlyExecutingJobs() {
+        List<JobExecutionContext> contexts = new ArrayList<>(executions.size());
+        for (Execution execution : executions.values()) {
+            contexts.add(execution.context);
+        }
+        return contexts;
+    }
+
+    /**
+     * Interrupts the running executions of a job, see {@link #interrupt(String)}
+     *
+     * @return whether an execution of the job was running
+     */
+    public boolean interrupt(JobKey jobKey) {
+        boolean interrupted = false;
+        for (Execution execution : executions.values()) {
+            if (jobKey.equals(execution.context.getJobDetail().getKey())) {
+                execution.interrupt();
+                interrupted = true;
+            }
+        }
+        return interrupted;
+    }
+
+    /**
+     * Interrupts a running execution: an {@link InterruptableJob} is asked to stop and the thread running it is
+     * interrupted
+     *
+     * @return whether the execution was running
+     */
+    public boolean interrupt(String fireInstanceId) {
+        Execution execution = executions.get(fireInstanceId);
+        if (execution == null) {
+            return false;
+        }
+        execution.interrupt();
+        return true;
+    }
+
+    /**
+     * Stops loading and running jobs, waits for the running ones until the timeout and hands the loaded ones back
+     * to the other nodes
+     */
+    public void close(long timeoutMillis) throws InterruptedException {
+        shutdown();
+        awaitTermination(System.currentTimeMillis() + timeoutMillis);
+    }
+
+    /**
+     * Stops loading and running jobs without waiting, the thread pool is shut down once the wheel thread has stopped
+     */
+    public void shutdown() {
+        closed = true;
+        synchronized (this) {
+            notifyAll();
+        }
+        wheelThread.interrupt();
+    }
+
+    /**
+     * Waits until the deadline (epoch millis) for the wheel thread and the running jobs after {@link #shutdown()},
+     * then hands the loaded jobs back to the other nodes
+     */
+    public void awaitTermination(long deadline) throws InterruptedException {
+        wheelThread.join(Math.max(deadline - System.currentTimeMillis(), 1L));
+        if (wheelThread.isAlive()) {
+            log.warn("Wheel thread of scheduler {} did not stop by the shutdown deadline", schedulerName);
+            executor.shutdown();
+        }
+        if (!executor.awaitTermination(Math.max(deadline - System.currentTimeMillis(), 0L), TimeUnit.MILLISECONDS)) {
+            log.warn("Scheduler {} abandoned {} running delayed job(s) at the shutdown deadline", schedulerName,
+                executor.getActiveCount());
+        }
+        try {
+            deleteCompleted();
+            store.releaseOwned(instanceId);
+            scheduler.getContext().remove(CONTEXT_KEY);
+        } catch (SQLException | SchedulerException e) {
+            log.warn("Failed to release the delayed jobs of scheduler {}, they are recovered on restart or by the cluster",
+                schedulerName, e);
+        }
+    }
+
+    private void run() {
+        try {
+            loop();
+        } finally {
+            // Only once no dispatch is in flight, so that every marked job is run
+            executor.shutdown();
+        }
+    }
+
+    private void loop() {
+        long nextLoad = 0L;
+        while (!closed) {
+            try {
+                if (scheduler.isInStandbyMode()) {
+                    releaseLoaded();
+                    deleteCompleted();
+                    nextLoad = 0L;
+                    synchronized (this) {
+                        if (!closed) {
+                            wait(MAX_WAIT_MILLIS);
+                        }
+                    }
+                    continue;
+                }
+                long now = System.currentTimeMillis();
+                if (now >= nextLoad) {
+                    if (executor.getQueue().size() >= MAX_BATCH_SIZE) {
+                        nextLoad = now + BACKLOG_LOAD_DELAY_MILLIS;
+                    } else {
+                        nextLoad = load(now) ? now : now + Math.max(loadAheadMillis / 2, 1L);
+                    }
+                }
+                dispatch(takeDue(now));
+                deleteCompleted();
+                synchronized (this) {
+                    long wakeUp = Math.min(Math.min(nextLoad, wheel.nextExpiration()), now + MAX_WAIT_MILLIS);
+                    long wait = wakeUp - System.currentTimeMillis();
+                    if (wait > 0 && due.isEmpty() && !closed) {
+                        wait(wait);
+                    }
+                }
+            } catch (InterruptedException e) {
+                return;
+            } catch (Exception e) {
+                log.warn("Delayed jobs of scheduler {} failed, retrying", schedulerName, e);
+                try {
+                    Thread.sleep(RETRY_DELAY_MILLIS);
+                } catch (InterruptedException interrupted) {
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * @return whether the load was capped and more jobs may be due within the load ahead time
+     */
+    private boolean load(long now) throws SQLException, IOException, ClassNotFoundException {
+        if (clustered && now >= nextOrphanRelease) {
+            int released = store.releaseOrphans();
+            if (released > 0) {
+                log.info("Recovered {} delayed jobs of failed instances of scheduler {}", released, schedulerName);
+            }
+            nextOrphanRelease = now + Math.max(loadAheadMillis / 2, 1L);
+        }
+        // Unique per load of this instance, so that the rows claimed by this load can be read back
+        lastLoadId = Math.max(lastLoadId + 1, now);
+        List<DelayedJob> jobs = store.claim(instanceId, lastLoadId, now + loadAheadMillis, MAX_BATCH_SIZE);
+        if (jobs.isEmpty()) {
+            return false;
+        }
+        synchronized (this) {
+            for (DelayedJob job : jobs) {
+                add(job);
+            }
+        }
+        log.debug("Loaded {} delayed jobs of scheduler {}", jobs.size(), schedulerName);
+        return jobs.size() >= MAX_BATCH_SIZE;
+    }
+
+    /**
+     * Hands the jobs loaded by this node back to the other nodes while the scheduler is in standby
+     */
+    private void releaseLoaded() throws SQLException {
+        List<TimingWheel.Entry<DelayedJob>> entries;
+        List<DelayedJob> dueJobs;
+        synchronized (this) {
+            if (loaded.isEmpty() && due.isEmpty()) {
+                return;
+            }
+            entries = new ArrayList<>(loaded.values());
+            dueJobs = new ArrayList<>(due);
+        }
+        // Released before forgotten, if the release fails the jobs are still run once the scheduler is started again.
+        // Jobs stored meanwhile are kept, they are released by the next call.
+        int released = store.releaseOwned(instanceId);
+        synchronized (this) {
+            for (TimingWheel.Entry<DelayedJob> entry : entries) {
+                if (loaded.remove(entry.payload.getKey(), entry)) {
+                    TimingWheel.remove(entry);
+                }
+            }
+            due.removeAll(new HashSet<>(dueJobs));
+        }
+        log.info("Released {} delayed jobs of scheduler {} in standby", released, schedulerName);
+    }
+
+    /**
+     * Guarded by this
+     */
+    private void add(DelayedJob job) {
+        add(job, job.getFireTime());
+    }
+
+    /**
+     * Guarded by this
+     */
+    private void add(DelayedJob job, long expiration) {
+        TimingWheel.Entry<DelayedJob> entry = new TimingWheel.Entry<>(job, expiration);
+        if (wheel.add(entry)) {
+            loaded.put(job.getKey(), entry);
+        } else {
+            due.add(job);
+        }
+    }
+
+    private synchronized List<DelayedJob> takeDue(long now) {
+        List<DelayedJob> jobs = new ArrayList<>(due);
+        due.clear();
+        wheel.advance(now, entry -> {
+            loaded.remove(entry.payload.getKey(), entry);
+            jobs.add(entry.payload);
+        });
+        return jobs;
+    }
+
+    private void dispatch(List<DelayedJob> jobs) {
+        for (List<DelayedJob> batch : ListUtils.partition(jobs, MAX_BATCH_SIZE)) {
+            if (closed) {
+                // Left LOADED, handed back on close
+                return;
+            }
+            Set<JobKey> marked;
+            try {
+                marked = store.markExecuting(instanceId, batch);
+            } catch (SQLException e) {
+                log.warn("Failed to start {} delayed jobs of scheduler {}, retrying", batch.size(), schedulerName, e);
+                synchronized (this) {
+                    long retryAt = System.currentTimeMillis() + RETRY_DELAY_MILLIS;
+                    for (DelayedJob job : batch) {
+                        add(job, retryAt);
+                    }
+                }
+                continue;
+            }
+            for (DelayedJob job : batch) {
+                if (marked.contains(job.getKey())) {
+                    try {
+                        executor.execute(() -> execute(job));
+                    } catch (RejectedExecutionException e) {
+                        // Only past the shutdown deadline, the row stays EXECUTING until recovered
+                        log.warn("Delayed job {} of scheduler {} not run, shut down", job.getKey(), schedulerName);
+                    }
+                } else {
+                    log.debug("Delayed job {} of scheduler {} was deleted or recovered by another node, skipped",
+                        job.getKey(), schedulerName);
+                }
+            }
+        }
+    }
+
+    private void deleteCompleted() throws SQLException {
+        List<JobKey> jobKeys = new ArrayList<>();
+        JobKey jobKey;
+        while ((jobKey = completed.poll()) != null) {
+            jobKeys.add(jobKey);
+        }
+        for (List<JobKey> batch : ListUtils.partition(jobKeys, MAX_BATCH_SIZE)) {
+            try {
+                store.delete(batch);
+            } catch (SQLException e) {
+                // Put back, the rows stay EXECUTING until deleted
+                completed.addAll(batch);
+                throw e;
+            }
+        }
+    }
+
+    private void execute(DelayedJob job) {
+        try {
+            runJob(job);
+        } catch (SchedulerException | ClassNotFoundException | RuntimeException e) {
+            log.error("Delayed job {} of scheduler {} could not be run and is dropped", job.getKey(), schedulerName, e);
+        } finally {
+            completed.add(job.getKey());
+        }
+    }
+
+    private void runJob(DelayedJob job) throws SchedulerException, ClassNotFoundException {
+        JobDetail jobDetail = JobBuilder.newJob(QuartzUtils.getJobClass(job.getJobClassName()))
+            .withIdentity(job.getJobName(), job.getJobGroup())
+            .withDescription(job.getDescription())
+            .usingJobData(job.getJobDataMap() != null ? job.getJobDataMap() : new JobDataMap())
+            .requestRecovery(true)
+            .build();
+        OperableTrigger trigger = (OperableTrigger) TriggerBuilder.newTrigger()
+            .withIdentity(job.getJobName(), job.getJobGroup())
+            .forJob(jobDetail)
+            .startAt(new Date(job.getFireTime()))
+            .build();
+        trigger.setFireInstanceId(instanceId + "_delayed_" + fireCount.incrementAndGet());
+        TriggerFiredBundle bundle = new TriggerFiredBundle(jobDetail, trigger, null, false, new Date(),
+            new Date(job.getFireTime()), null, null);
+        Job instance = jobFactory.newJob(bundle, scheduler);
+        JobExecutionContextImpl context = new JobExecutionContextImpl(scheduler, bundle, instance);
+        executions.put(trigger.getFireInstanceId(), new Execution(context, Thread.currentThread()));
+        try {
+            runJob(context, trigger);
+        } finally {
+            executions.remove(trigger.getFireInstanceId());
+        }
+    }
+
+    /**
+     * Same steps as Quartz's JobRunShell: trigger listeners may veto, the job may ask to be refired
+     */
+    private void runJob(JobExecutionContextImpl context, OperableTrigger trigger) throws SchedulerException {
+        Job instance = context.getJobInstance();
+        boolean[] vetoed = new boolean[1];
+        notifyTriggerListeners(context, listener -> {
+            listener.triggerFired(trigger, context);
+            vetoed[0] |= listener.vetoJobExecution(trigger, context);
+        });
+        if (vetoed[0]) {
+            notifyJobListeners(context, listener -> listener.jobExecutionVetoed(context));
+            return;
+        }
+
+        JobExecutionException exception;
+        do {
+            notifyJobListeners(context, listener -> listener.jobToBeExecuted(context));
+            exception = null;
+            long start = System.currentTimeMillis();
+            try {
+                instance.execute(context);
+            } catch (JobExecutionException e) {
+                exception = e;
+            } catch (Throwable e) {
+                exception = new JobExecutionException(new SchedulerException("Job threw an unhandled exception.", e), false);
+            }
+            context.setJobRunTime(System.currentTimeMillis() - start);
+            JobExecutionException jobException = exception;
+            notifyJobListeners(context, listener -> listener.jobWasExecuted(context, jobException));
+            if (exception != null && exception.refireImmediately()) {
+                context.incrementRefireCount();
+            }
+        } while (exception != null && exception.refireImmediately() && !closed);
+
+        notifyTriggerListeners(context, listener ->
+            listener.triggerComplete(trigger, context, CompletedExecutionInstruction.DELETE_TRIGGER));
+    }
+
+    private void notifyJobListeners(JobExecutionContext context, Consumer<JobListener> event) throws SchedulerException {
+        ListenerManager listenerManager = scheduler.getListenerManager();
+        JobKey jobKey = context.getJobDetail().getKey();
+        for (JobListener listener : listenerManager.getJobListeners()) {
+            if (!matches(listenerManager.getJobListenerMatchers(listener.getName()), jobKey)) {
+                continue;
+            }
+            try {
+                event.accept(listener);
+            } catch (RuntimeException e) {
+                log.warn("Job listener {} failed on delayed job {}", listener.getName(), jobKey, e);
+            }
+        }
+    }
+
+    private void notifyTriggerListeners(JobExecutionContext context, Consumer<TriggerListener> event) throws SchedulerException {
+        ListenerManager listenerManager = scheduler.getListenerManager();
+        TriggerKey triggerKey = context.getTrigger().getKey();
+        for (TriggerListener listener : listenerManager.getTriggerListeners()) {
+            if (!matches(listenerManager.getTriggerListenerMatchers(listener.getName()), triggerKey)) {
+                continue;
+            }
+            try {
+                event.accept(listener);
+            } catch (RuntimeException e) {
+                log.warn("Trigger listener {} failed on delayed job {}", listener.getName(), triggerKey, e);
+            }
+        }
+    }
+
+    private static final class Execution {
+
+        private final JobExecutionContext context;
+
+        private final Thread thread;
+
+        private Execution(JobExecutionContext context, Thread thread) {
+            this.context = context;
+            this.thread = thread;
+        }
+
+        private void interrupt() {
+            if (context.getJobInstance() instanceof InterruptableJob) {
+                try {
+                    ((InterruptableJob) context.getJobInstance()).interrupt();
+                } catch (UnableToInterruptJobException e) {
+                    log.warn("Failed to interrupt delayed job {}", context.getJobDetail().getKey(), e);
+                }
+            }
+            thread.interrupt();
+        }
+    }
+
+    private static <K extends Key<K>> boolean matches(List<Matcher<K>> matchers, K key) {
+        if (matchers == null) {
+            return true;
+        }
+        for (Matcher<K> matcher : matchers) {
+            if (matcher.isMatch(key)) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,475 @@
+/*
+ * All content copyright unionj-cloud, unless otherwise indicated. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy
+ * of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package quartzplus.core.delay;
+
+import org.quartz.JobDataMap;
+import org.quartz.JobKey;
+import quartzplus.core.codec.JobDataCodec;
+import org.springframework.jdbc.datasource.DataSourceUtils;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import quartzplus.core.codec.JobDataCodecs;
+
+import javax.sql.DataSource;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Rows of the {@code <table prefix>DELAYED_JOBS} table, see quartzplus/core/sql/delayed_jobs.sql. A row is WAITING
+ * until a node loads it into its timing wheel (LOADED, with the node as INSTANCE_NAME), EXECUTING once its fire time came and
+ * deleted when the execution ended.
+ */
+final class DelayedJobStore {
+
+    static final String STATE_WAITING = "WAITING";
+    static final String STATE_LOADED = "LOADED";
+    static final String STATE_EXECUTING = "EXECUTING";
+
+    private static final int JOB_DATA_COMPRESS_THRESHOLD = 1024;
+
+    private static final String INSERT_DELAYED_JOB = "INSERT INTO {0}DELAYED_JOBS (SCHED_NAME, JOB_NAME, JOB_GROUP, " +
+        "JOB_CLASS_NAME, DESCRIPTION, FIRE_TIME, STATE, INSTANCE_NAME, JOB_DATA) VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?)";
+
+    private static final String SELECT_WAITING_DELAYED_JOBS = "SELECT JOB_NAME, JOB_GROUP FROM {0}DELAYED_JOBS " +
+        "WHERE SCHED_NAME = ? AND STATE = ? AND FIRE_TIME <= ? ORDER BY FIRE_TIME";
+
+    // Conditional on the state, rows claimed by another node since they were selected are left out
+    private static final String CLAIM_DELAYED_JOB = "UPDATE {0}DELAYED_JOBS SET STATE = ?, INSTANCE_NAME = ?, LOAD_ID = ? " +
+        "WHERE SCHED_NAME = ? AND JOB_NAME = ? AND JOB_GROUP = ? AND STATE = ?";
+
+    private static final String SELECT_CLAIMED_DELAYED_JOBS = "SELECT JOB_NAME, JOB_GROUP, JOB_CLASS_NAME, DESCRIPTION, " +
+        "FIRE_TIME, JOB_DATA FROM {0}DELAYED_JOBS WHERE SCHED_NAME = ? AND INSTANCE_NAME = ? AND LOAD_ID = ?";
+
+    private static final String MARK_EXECUTING = "UPDATE {0}DELAYED_JOBS SET STATE = ? " +
+        "WHERE SCHED_NAME = ? AND JOB_NAME = ? AND JOB_GROUP = ? AND INSTANCE_NAME = ? AND STATE = ?";
+
+    private static final String DELETE_DELAYED_JOB = "DELETE FROM {0}DELAYED_JOBS " +
+        "WHERE SCHED_NAME = ? AND JOB_NAME = ? AND JOB_GROUP = ?";
+
+    private static final String SELECT_DELAYED_JOB = "SELECT JOB_NAME, JOB_GROUP, JOB_CLASS_NAME, DESCRIPTION, " +
+        "FIRE_TIME, JOB_DATA FROM {0}DELAYED_JOBS WHERE SCHED_NAME = ? AND JOB_NAME = ? AND JOB_GROUP = ?";
+
+    private static final String SELECT_FIRE_TIME = "SELECT FIRE_TIME FROM {0}DELAYED_JOBS " +
+        "WHERE SCHED_NAME = ? AND JOB_NAME = ? AND JOB_GROUP = ?";
+
+    private static final String RELEASE_DELAYED_JOBS = "UPDATE {0}DELAYED_JOBS SET STATE = ?, INSTANCE_NAME = NULL, LOAD_ID = NULL " +
+        "WHERE SCHED_NAME = ? AND STATE <> ?";
+
+    // Owners without a SCHEDULER_STATE row have been recovered by Quartz as failed instances
+    private static final String RELEASE_ORPHANED_DELAYED_JOBS = "UPDATE {0}DELAYED_JOBS SET STATE = ?, INSTANCE_NAME = NULL, LOAD_ID = NULL " +
+        "WHERE SCHED_NAME = ? AND STATE <> ? " +
+        "AND INSTANCE_NAME NOT IN (SELECT INSTANCE_NAME FROM {0}SCHEDULER_STATE WHERE SCHED_NAME = ?)";
+
+    private static final String RELEASE_OWNED_DELAYED_JOBS = "UPDATE {0}DELAYED_JOBS SET STATE = ?, INSTANCE_NAME = NULL, LOAD_ID = NULL " +
+        "WHERE SCHED_NAME = ? AND INSTANCE_NAME = ? AND STATE = ?";
+
+    private final DataSource dataSource;
+
+    private final String tablePrefix;
+
+    private final String schedulerName;
+
+    private final JobDataCodec jobDataCodec;
+
+    DelayedJobStore(DataSource dataSource, String tablePrefix, String schedulerName) {
+        this.dataSource = dataSource;
+        this.tablePrefix = tablePrefix;
+        this.schedulerName = schedulerName;
+        try {
+            this.jobDataCodec = JobDataCodecs.forName(JobDataCodecs.COMPACT, getClass().getClassLoader());
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Inserts the jobs in one batch, falling back to one by one when the batch fails so that a duplicate only fails
+     * its own job. Jobs due until {@code ownedUntil} are inserted as LOADED by {@code owner}. Within a Spring
+     * transaction the rows are inserted on its connection and committed or rolled back with it.
+     *
+     * @return whether each job was stored, false for jobs that already exist
+     */
+    boolean[] insert(List<DelayedJob> jobs, String owner, long ownedUntil) throws SQLException, IOException {
+        List<byte[]> jobData = new ArrayList<>(jobs.size());
+        for (DelayedJob job : jobs) {
+            jobData.add(serialize(job.getJobDataMap()));
+        }
+        if (TransactionSynchronizationManager.isActualTransactionActive()) {
+            Connection conn = DataSourceUtils.getConnection(dataSource);
+            try {
+                return insertInTransaction(conn, jobs, jobData, owner, ownedUntil);
+            } finally {
+                DataSourceUtils.releaseConnection(conn, dataSource);
+            }
+        }
+        boolean[] stored = new boolean[jobs.size()];
+        try (Connection conn = dataSource.getConnection()) {
+            boolean autoCommit = conn.getAutoCommit();
+            conn.setAutoCommit(false);
+            try (PreparedStatement ps = conn.prepareStatement(rtp(INSERT_DELAYED_JOB))) {
+                for (int i = 0; i < jobs.size(); i++) {
+                    setInsertParameters(ps, jobs.get(i), jobData.get(i), owner, ownedUntil);
+                    ps.addBatch();
+                }
+                ps.executeBatch();
+                conn.commit();
+                Arrays.fill(stored, true);
+                return stored;
+            } catch (SQLException e) {
+                conn.rollback();
+                if (jobs.size() == 1) {
+                    if (isIntegrityViolation(e)) {
+                        return stored;
+                    }
+                    throw e;
+                }
+            } finally {
+                conn.setAutoCommit(autoCommit);
+            }
+        }
+        for (int i = 0; i < jobs.size(); i++) {
+            stored[i] = insert(jobs.get(i), jobData.get(i), owner, ownedUntil);
+        }
+        return stored;
+    }
+
+    private boolean insert(DelayedJob job, byte[] jobData, String owner, long ownedUntil) throws SQLException {
+        try (Connection conn = dataSource.getConnection()) {
+            boolean autoCommit = conn.getAutoCommit();
+            conn.setAutoCommit(false);
+            try (PreparedStatement ps = conn.prepareStatement(rtp(INSERT_DELAYED_JOB))) {
+                setInsertParameters(ps, job, jobData, owner, ownedUntil);
+                ps.executeUpdate();
+                conn.commit();
+                return true;
+            } catch (SQLException e) {
+                conn.rollback();
+                if (isIntegrityViolation(e)) {
+                    return false;
+                }
+                throw e;
+            } finally {
+                conn.setAutoCommit(autoCommit);
+            }
+        }
+    }
+
+    /**
+     * Taken keys are looked up instead of caught, a failed insert would abort the whole transaction on some databases
+     */
+    private boolean[] insertInTransaction(Connection conn, List<DelayedJob> jobs, List<byte[]> jobData, String owner,
+                                          long ownedUntil) throws SQLException {
+        boolean[] stored = new boolean[jobs.size()];
+        Set<JobKey> jobKeys = new HashSet<>();
+        int batched = 0;
+        try (PreparedStatement select = conn.prepareStatement(rtp(SELECT_FIRE_TIME));
+             PreparedStatement ps = conn.prepareStatement(rtp(INSERT_DELAYED_JOB))) {
+            for (int i = 0; i < jobs.size(); i++) {
+                DelayedJob job = jobs.get(i);
+                if (!jobKeys.add(job.getKey()) || selectFireTime(select, job.getKey()) != null) {
+                    continue;
+                }
+                setInsertParameters(ps, job, jobData.get(i), owner, ownedUntil);
+                ps.addBatch();
+                stored[i] = true;
+                batched++;
+            }
+            if (batched > 0) {
+                ps.executeBatch();
+            }
+        }
+        return stored;
+    }
+
+    private void setInsertParameters(PreparedStatement ps, DelayedJob job, byte[] jobData, String owner, long ownedUntil)
+        throws SQLException {
+        boolean owned = job.getFireTime() <= ownedUntil;
+        ps.setString(1, schedulerName);
+        ps.setString(2, job.getJobName());
+        ps.setString(3, job.getJobGroup());
+        ps.setString(4, job.getJobClassName());
+        ps.setString(5, job.getDescription());
+        ps.setLong(6, job.getFireTime());
+        ps.setString(7, owned ? STATE_LOADED : STATE_WAITING);
+        ps.setString(8, owned ? owner : null);
+        ps.setBytes(9, jobData);
+    }
+
+    /**
+     * Loads the first {@code limit} waiting jobs due until {@code until} by fire time, they are LOADED by
+     * {@code owner} once this returns
+     */
+    List<DelayedJob> claim(String owner, long loadId, long until, int limit)
+        throws SQLException, IOException, ClassNotFoundException {
+        List<DelayedJob> jobs = new ArrayList<>();
+        try (Connection conn = dataSource.getConnection()) {
+            boolean autoCommit = conn.getAutoCommit();
+            conn.setAutoCommit(false);
+            try {
+                List<JobKey> waiting = new ArrayList<>();
+                try (PreparedStatement ps = conn.prepareStatement(rtp(SELECT_WAITING_DELAYED_JOBS))) {
+                    ps.setMaxRows(limit);
+                    ps.setString(1, schedulerName);
+                    ps.setString(2, STATE_WAITING);
+                    ps.setLong(3, until);
+                    try (ResultSet rs = ps.executeQuery()) {
+                        while (rs.next()) {
+                            waiting.add(new JobKey(rs.getString(1), rs.getString(2)));
+                        }
+                    }
+                }
+                if (!waiting.isEmpty()) {
+                    try (PreparedStatement ps = conn.prepareStatement(rtp(CLAIM_DELAYED_JOB))) {
+                        for (JobKey jobKey : waiting) {
+                            ps.setString(1, STATE_LOADED);
+                            ps.setString(2, owner);
+                            ps.setLong(3, loadId);
+                            ps.setString(4, schedulerName);
+                            ps.setString(5, jobKey.getName());
+                            ps.setString(6, jobKey.getGroup());
+                            ps.setString(7, STATE_WAITING);
+                            ps.addBatch();
+                        }
+                        ps.executeBatch();
+                    }
+                    try (PreparedStatement ps = conn.prepareStatement(rtp(SELECT_CLAIMED_DELAYED_JOBS))) {
+                        ps.setString(1, schedulerName);
+                        ps.setString(2, owner);
+                        ps.setLong(3, loadId);
+                        try (ResultSet rs = ps.executeQuery()) {
+                            while (rs.next()) {
+                                jobs.add(readJob(rs));
+                            }
+                        }
+                    }
+                }
+                conn.commit();
+                return jobs;
+            } catch (SQLException | IOException | ClassNotFoundException | RuntimeException e) {
+                conn.rollback();
+                throw e;
+            } finally {
+                conn.setAutoCommit(autoCommit);
+            }
+        }
+    }
+
+    /**
+     * Moves the loaded jobs of {@code owner} to EXECUTING in one batch
+     *
+     * @return the jobs moved, jobs deleted or taken over by another node meanwhile are left out
+     */
+    Set<JobKey> markExecuting(String owner, Collection<DelayedJob> jobs) throws SQLException {
+        Set<JobKey> marked = new HashSet<>();
+        try (Connection conn = dataSource.getConnection()) {
+            boolean autoCommit = conn.getAutoCommit();
+            conn.setAutoCommit(false);
+            try (PreparedStatement ps = conn.prepareStatement(rtp(MARK_EXECUTING))) {
+                for (DelayedJob job : jobs) {
+                    ps.setString(1, STATE_EXECUTING);
+                    ps.setString(2, schedulerName);
+                    ps.setString(3, job.getJobName());
+                    ps.setString(4, job.getJobGroup());
+                    ps.setString(5, owner);
+                    ps.setString(6, STATE_LOADED);
+                    ps.addBatch();
+                }
+                int[] counts = ps.executeBatch();
+                conn.commit();
+                int i = 0;
+                for (DelayedJob job : jobs) {
+                    int count = counts[i++];
+                    if (count > 0 || count == Statement.SUCCESS_NO_INFO) {
+                        marked.add(job.getKey());
+                    }
+                }
+                return marked;
+            } catch (SQLException e) {
+                conn.rollback();
+                throw e;
+            } finally {
+                conn.setAutoCommit(autoCommit);
+            }
+        }
+    }
+
+    /**
+     * @return the number of jobs deleted
+     */
+    int delete(Collection<JobKey> jobKeys) throws SQLException {
+        try (Connection conn = dataSource.getConnection()) {
+            boolean autoCommit = conn.getAutoCommit();
+            conn.setAutoCommit(false);
+            try (PreparedStatement ps = conn.prepareStatement(rtp(DELETE_DELAYED_JOB))) {
+                for (JobKey jobKey : jobKeys) {
+                    ps.setString(1, schedulerName);
+                    ps.setString(2, jobKey.getName());
+                    ps.setString(3, jobKey.getGroup());
+                    ps.addBatch();
+                }
+                int deleted = 0;
+                for (int count : ps.executeBatch()) {
+                    deleted += Math.max(count, 0);
+                }
+                conn.commit();
+                return deleted;
+            } catch (SQLException e) {
+                conn.rollback();
+                throw e;
+            } finally {
+                conn.setAutoCommit(autoCommit);
+            }
+        }
+    }
+
+    /**
+     * @return the fire time of the job, null if it is not stored
+     */
+    Long selectFireTime(JobKey jobKey) throws SQLException {
+        try (Connection conn = dataSource.getConnection();
+             PreparedStatement ps = conn.prepareStatement(rtp(SELECT_FIRE_TIME))) {
+            return selectFireTime(ps, jobKey);
+        }
+    }
+
+    /**
+     * @return the job, null if it is not stored
+     */
+    DelayedJob select(JobKey jobKey) throws SQLException, IOException, ClassNotFoundException {
+        try (Connection conn = dataSource.getConnection();
+             PreparedStatement ps = conn.prepareStatement(rtp(SELECT_DELAYED_JOB))) {
+            ps.setString(1, schedulerName);
+            ps.setString(2, jobKey.getName());
+            ps.setString(3, jobKey.getGroup());
+            try (ResultSet rs = ps.executeQuery()) {
+                return rs.next() ? readJob(rs) : null;
+            }
+        }
+    }
+
+    private Long selectFireTime(PreparedStatement ps, JobKey jobKey) throws SQLException {
+        ps.setString(1, schedulerName);
+        ps.setString(2, jobKey.getName());
+        ps.setString(3, jobKey.getGroup());
+        try (ResultSet rs = ps.executeQuery()) {
+            return rs.next() ? rs.getLong(1) : null;
+        }
+    }
+
+    /**
+     * Returns the loaded and executing jobs of every owner to WAITING, for schedulers that are not clustered
+     */
+    int releaseAll() throws SQLException {
+        return release(RELEASE_DELAYED_JOBS, false);
+    }
+
+    /**
+     * Returns the loaded and executing jobs of owners no longer part of the cluster to WAITING
+     */
+    int releaseOrphans() throws SQLException {
+        return release(RELEASE_ORPHANED_DELAYED_JOBS, true);
+    }
+
+    /**
+     * Returns the jobs loaded by {@code owner} but not executing to WAITING, when it shuts down
+     */
+    int releaseOwned(String owner) throws SQLException {
+        try (Connection conn = dataSource.getConnection();
+             PreparedStatement ps = conn.prepareStatement(rtp(RELEASE_OWNED_DELAYED_JOBS))) {
+            ps.setString(1, STATE_WAITING);
+            ps.setString(2, schedulerName);
+            ps.setString(3, owner);
+            ps.setString(4, STATE_LOADED);
+            int released = ps.executeUpdate();
+            if (!conn.getAutoCommit()) {
+                conn.commit();
+            }
+            return released;
+        }
+    }
+
+    private int release(String sql, boolean orphansOnly) throws SQLException {
+        try (Connection conn = dataSource.getConnection();
+             PreparedStatement ps = conn.prepareStatement(rtp(sql))) {
+            ps.setString(1, STATE_WAITING);
+            ps.setString(2, schedulerName);
+            ps.setString(3, STATE_WAITING);
+            if (orphansOnly) {
+                ps.setString(4, schedulerName);
+            }
+            int released = ps.executeUpdate();
+            if (!conn.getAutoCommit()) {
+                conn.commit();
+            }
+            return released;
+        }
+    }
+
+    private byte[] serialize(JobDataMap jobDataMap) throws IOException {
+        if (jobDataMap == null || jobDataMap.isEmpty()) {
+            return null;
+        }
+        byte[] encoded = JobDataCodecs.encode(jobDataCodec, jobDataMap.getWrappedMap(), JOB_DATA_COMPRESS_THRESHOLD);
+        if (encoded != null) {
+            return encoded;
+        }
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (ObjectOutputStream objectOutput = new ObjectOutputStream(out)) {
+            objectOutput.writeObject(jobDataMap);
+        }
+        return out.toByteArray();
+    }
+
+    private static DelayedJob readJob(ResultSet rs) throws SQLException, IOException, ClassNotFoundException {
+        return new DelayedJob(rs.getString(1), rs.getString(2), rs.getString(3), rs.getString(4), rs.getLong(5),
+            deserialize(rs.getBytes(6)));
+    }
+
+    private static JobDataMap deserialize(byte[] value) throws IOException, ClassNotFoundException {
+        if (value == null || value.length == 0) {
+            return new JobDataMap();
+        }
+        if (JobDataCodecs.isEncoded(value)) {
+            return new JobDataMap((Map<?, ?>) JobDataCodecs.decode(value));
+        }
+        try (ObjectInputStream objectInput = new ObjectInputStream(new ByteArrayInputStream(value))) {
+            return (JobDataMap) objectInput.readObject();
+        }
+    }
+
+    private static boolean isIntegrityViolation(SQLException e) {
+        return e.getSQLState() != null && e.getSQLState().startsWith("23");
+    }
+
+    private String rtp(String sql) {
+        return sql.replace("{0}", tablePrefix);
+    }
+}
@@ -0,0 +1,219 @@
+/*
+ * All content copyright unionj-cloud, unless otherwise indicated. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy
+ * of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package quartzplus.core.delay;
+
+import java.util.Comparator;
+import java.util.PriorityQueue;
+import java.util.function.Consumer;
+
+/**
+ * Hierarchical timing wheel: each level has {@code wheelSize} buckets of one tick, a tick of a level being a whole
+ * turn of the level below, and entries beyond the last level's turn go to a level created on demand. Adding and
+ * removing an entry only link it into a bucket list; as time passes the buckets of higher levels are flushed and
+ * their entries re-added, cascading down until they are due.
+ * <p>
+ * Only non empty buckets are queued by expiration, so the clock jumps from one bucket to the next instead of
+ * ticking through empty ones. Not thread safe.
+ */
+final class TimingWheel<T> {
+
+    private final long tickMillis;
+
+    private final int wheelSize;
+
+    private final long interval;
+
+    private final Bucket<T>[] buckets;
+
+    /**
+     * Non empty buckets of all levels
+     */
+    private final PriorityQueue<Bucket<T>> queue;
+
+    private long currentTime;
+
+    private TimingWheel<T> overflowWheel;
+
+    TimingWheel(long tickMillis, int wheelSize, long startMillis) {
+        this(tickMillis, wheelSize, startMillis, new PriorityQueue<>(Comparator.comparingLong(Bucket::getExpiration)));
+    }
+
+    @SuppressWarnings("unchecked")
+    private TimingWheel(long tickMillis, int wheelSize, long startMillis, PriorityQueue<Bucket<T>> queue) {
+        this.tickMillis = tickMillis;
+        this.wheelSize = wheelSize;
+        this.interval = tickMillis * wheelSize;
+        this.buckets = new Bucket[wheelSize];
+        for (int i = 0; i < wheelSize; i++) {
+            buckets[i] = new Bucket<>();
+        }
+        this.queue = queue;
+        this.currentTime = startMillis - startMillis % tickMillis;
+    }
+
+    /**
+     * @return false if the entry is already due, it is then not added
+     */
+    boolean add(Entry<T> entry) {
+        // Rounded up to a tick, so that entries are handed over within a tick after their expiration, never before
+        entry.deadline = (entry.expiration + tickMillis - 1) / tickMillis * tickMillis;
+        return place(entry);
+    }
+
+    private boolean place(Entry<T> entry) {
+        long expiration = entry.deadline;
+        if (expiration < currentTime + tickMillis) {
+            return false;
+        }
+        if (expiration < currentTime + interval) {
+            long virtualId = expiration / tickMillis;
+            Bucket<T> bucket = buckets[(int) (virtualId % wheelSize)];
+            bucket.add(entry);
+            if (bucket.setExpiration(virtualId * tickMillis)) {
+                queue.offer(bucket);
+            }
+            return true;
+        }
+        if (overflowWheel == null) {
+            overflowWheel = new TimingWheel<>(interval, wheelSize, currentTime, queue);
+        }
+        return overflowWheel.place(entry);
+    }
+
+    static <T> void remove(Entry<T> entry) {
+        if (entry.bucket != null) {
+            entry.bucket.remove(entry);
+        }
+    }
+
+    /**
+     * Moves the clock up to {@code now}, handing over the entries that became due
+     */
+    void advance(long now, Consumer<Entry<T>> expired) {
+        Bucket<T> bucket;
+        while ((bucket = queue.peek()) != null && bucket.getExpiration() <= now) {
+            queue.poll();
+            advanceClock(bucket.getExpiration());
+            bucket.flush(entry -> {
+                if (!place(entry)) {
+                    expired.accept(entry);
+                }
+            });
+        }
+        // Every bucket left expires after now, so that entries added next are placed against the current time
+        advanceClock(now);
+    }
+
+    /**
+     * Expiration of the earliest non empty bucket, {@link Long#MAX_VALUE} if there is none
+     */
+    long nextExpiration() {
+        Bucket<T> bucket = queue.peek();
+        return bucket != null ? bucket.getExpiration() : Long.MAX_VALUE;
+    }
+
+    private void advanceClock(long time) {
+        if (time >= currentTime + tickMillis) {
+            currentTime = time - time % tickMillis;
+            if (overflowWheel != null) {
+                overflowWheel.advanceClock(currentTime);
+            }
+        }
+    }
+
+    static final class Entry<T> {
+
+        final T payload;
+
+        final long expiration;
+
+        private long deadline;
+
+        private Bucket<T> bucket;
+
+        private Entry<T> prev;
+
+        private Entry<T> next;
+
+        Entry(T payload, long expiration) {
+            this.payload = payload;
+            this.expiration = expiration;
+        }
+    }
+
+    /**
+     * Circular doubly linked list of entries around a sentinel
+     */
+    private static final class Bucket<T> {
+
+        private final Entry<T> root = new Entry<>(null, -1L);
+
+        private long expiration = -1L;
+
+        Bucket() {
+            root.prev = root;
+            root.next = root;
+        }
+
+        long getExpiration() {
+            return expiration;
+        }
+
+        /**
+         * @return true if the expiration changed, i.e. the bucket has to be queued
+         */
+        boolean setExpiration(long expiration) {
+            if (this.expiration == expiration) {
+                return false;
+            }
+            this.expiration = expiration;
+            return true;
+        }
+
+        void add(Entry<T> entry) {
+            Entry<T> tail = root.prev;
+            entry.next = root;
+            entry.prev = tail;
+            entry.bucket = this;
+            tail.next = entry;
+            root.prev = entry;
+        }
+
+        void remove(Entry<T> entry) {
+            entry.next.prev = entry.prev;
+            entry.prev.next = entry.next;
+            entry.next = null;
+            entry.prev = null;
+            entry.bucket = null;
+        }
+
+        void flush(Consumer<Entry<T>> consumer) {
+            Entry<T> entry = root.next;
+            root.next = root;
+            root.prev = root;
+            expiration = -1L;
+            while (entry != root) {
+                Entry<T> next = entry.next;
+                entry.next = null;
+                entry.prev = null;
+                entry.bucket = null;
+                consumer.accept(entry);
+                entry = next;
+            }
+        }
+    }
+}
@@ -53,6 +53,12 @@ public class JobRequest {
 
     private int repeatCount;
 
+    /**
+     * Trigger priority, 0 or more, unset for {@link quartzplus.core.quartz.QuartzUtils#DEFAULT_PRIORITY}. Ignored for
+     * one shot jobs run as delayed jobs.
+     */
+    private Integer priority;
+
     private JobDataMap jobDataMap;
 
     private String desc;
@@ -0,0 +1,37 @@
+/*
+ * All content copyright unionj-cloud, unless otherwise indicated. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy
+ * of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package quartzplus.core.history;
+
+/**
+ * Slot of the {@link JobHistoryWriter} ring buffer, filled in place by the worker thread of a finished job and read
+ * by the writer thread
+ */
+final class JobExecutionRecord {
+
+    JobHistoryListener listener;
+    String entryId;
+    String jobName;
+    String jobGroup;
+    String triggerName;
+    String triggerGroup;
+    long scheduledTime;
+    long firedTime;
+    long endTime;
+    long runTime;
+    String outcome;
+    String errorMessage;
+}
@@ -0,0 +1,105 @@
+/*
+ * All content copyright unionj-cloud, unless otherwise indicated. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy
+ * of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package quartzplus.core.history;
+
+import lombok.Getter;
+import org.quartz.JobExecutionContext;
+import org.quartz.JobExecutionException;
+import org.quartz.JobListener;
+
+import javax.sql.DataSource;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Records every execution of the jobs of one scheduler in its {@code <table prefix>JOB_HISTORY} table, see
+ * quartzplus/core/sql/job_history.sql.
+ * <p>
+ * The worker thread only copies the execution into the ring buffer of {@link JobHistoryWriter}, which inserts them
+ * in batches on its own thread. Executions finishing while the buffer is full are dropped and counted, so a slow
+ * database never holds up jobs nor grows the memory used.
+ */
+@Getter
+public class JobHistoryListener implements JobListener {
+
+    public static final String OUTCOME_SUCCESS = "SUCCESS";
+    public static final String OUTCOME_FAILED = "FAILED";
+    public static final String OUTCOME_VETOED = "VETOED";
+
+    static final int MAX_ERROR_MESSAGE_LENGTH = 1000;
+
+    private final DataSource dataSource;
+    private final String tablePrefix;
+    private final String schedulerName;
+    private final String instanceId;
+    /**
+     * Executions that ended longer ago are purged, 0 keeps them
+     */
+    private final long retentionMillis;
+
+    private JobHistoryListener(DataSource dataSource, String tablePrefix, String schedulerName, String instanceId,
+                               long retentionMillis) {
+        this.dataSource = dataSource;
+        this.tablePrefix = tablePrefix;
+        this.schedulerName = schedulerName;
+        this.instanceId = instanceId;
+        this.retentionMillis = retentionMillis;
+    }
+
+    /**
+     * Creates the listener of a scheduler and starts writing its history, until {@link #close()}
+     */
+    public static JobHistoryListener open(DataSource dataSource, String tablePrefix, String schedulerName,
+                                          String instanceId, int retentionDays) {
+        JobHistoryListener listener = new JobHistoryListener(dataSource, tablePrefix, schedulerName, instanceId,
+            TimeUnit.DAYS.toMillis(Math.max(retentionDays, 0)));
+        JobHistoryWriter.register(listener);
+        return listener;
+    }
+
+    public void close() {
+        JobHistoryWriter.unregister(this);
+    }
+
+    @Override
+    public String getName() {
+        return "QuartzPlusJobHistory";
+    }
+
+    @Override
+    public void jobToBeExecuted(JobExecutionContext context) {
+    }
+
+    @Override
+    public void jobExecutionVetoed(JobExecutionContext context) {
+        JobHistoryWriter.publish(this, context, OUTCOME_VETOED, null);
+    }
+
+    @Override
+    public void jobWasExecuted(JobExecutionContext context, JobExecutionException jobException) {
+        if (jobException == null) {
+            JobHistoryWriter.publish(this, context, OUTCOME_SUCCESS, null);
+        } else {
+            JobHistoryWriter.publish(this, context, OUTCOME_FAILED, getErrorMessage(jobException));
+        }
+    }
+
+    private static String getErrorMessage(JobExecutionException jobException) {
+        Throwable error = jobException.getCause() != null ? jobException.getCause() : jobException;
+        String message = error.getClass().getName() + (error.getMessage() != null ? ": " + error.getMessage() : "");
+        return message.length() > MAX_ERROR_MESSAGE_LENGTH ? message.substring(0, MAX_ERROR_MESSAGE_LENGTH) : message;
+    }
+}
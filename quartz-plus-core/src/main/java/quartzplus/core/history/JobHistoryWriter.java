@@ -0,0 +1,245 @@
+/*
+ * All content copyright unionj-cloud, unless otherwise indicated. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy
+ * of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package quartzplus.core.history;
+
+import com.lmax.disruptor.BlockingWaitStrategy;
+import com.lmax.disruptor.EventHandler;
+import com.lmax.disruptor.EventTranslatorVararg;
+import com.lmax.disruptor.RingBuffer;
+import com.lmax.disruptor.TimeoutException;
+import com.lmax.disruptor.dsl.Disruptor;
+import com.lmax.disruptor.dsl.ProducerType;
+import lombok.extern.slf4j.Slf4j;
+import org.quartz.JobExecutionContext;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Single history writer of a node, shared by the {@link JobHistoryListener}s of all schedulers. Finished executions
+ * are published into a fixed size ring buffer without locking, and inserted by one thread in batches, one JDBC batch
+ * per data source and table prefix. Expired history is purged hourly.
+ */
+@Slf4j
+final class JobHistoryWriter {
+
+    static final int RING_BUFFER_SIZE = 8192;
+
+    static final int MAX_BATCH_SIZE = 500;
+
+    private static final long PURGE_INTERVAL_MINUTES = 60;
+
+    private static final long DROPPED_LOG_INTERVAL_MILLIS = 60_000;
+
+    private static final long SHUTDOWN_TIMEOUT_SECONDS = 5;
+
+    private static final String INSERT_HISTORY = "INSERT INTO {0}JOB_HISTORY (SCHED_NAME, INSTANCE_NAME, ENTRY_ID, " +
+        "JOB_NAME, JOB_GROUP, TRIGGER_NAME, TRIGGER_GROUP, SCHED_TIME, FIRED_TIME, END_TIME, RUN_TIME, OUTCOME, " +
+        "ERROR_MESSAGE) VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
+
+    private static final String DELETE_EXPIRED_HISTORY = "DELETE FROM {0}JOB_HISTORY WHERE SCHED_NAME = ? AND END_TIME < ?";
+
+    private static final EventTranslatorVararg<JobExecutionRecord> TRANSLATOR = (record, sequence, args) -> {
+        JobExecutionContext context = (JobExecutionContext) args[1];
+        long firedTime = context.getFireTime().getTime();
+        long runTime = Math.max(context.getJobRunTime(), 0);
+        record.listener = (JobHistoryListener) args[0];
+        record.entryId = context.getFireInstanceId();
+        record.jobName = context.getJobDetail().getKey().getName();
+        record.jobGroup = context.getJobDetail().getKey().getGroup();
+        record.triggerName = context.getTrigger().getKey().getName();
+        record.triggerGroup = context.getTrigger().getKey().getGroup();
+        record.scheduledTime = context.getScheduledFireTime() != null ? context.getScheduledFireTime().getTime() : firedTime;
+        record.firedTime = firedTime;
+        record.runTime = runTime;
+        record.endTime = firedTime + runTime;
+        record.outcome = (String) args[2];
+        record.errorMessage = (String) args[3];
+    };
+
+    private static final Set<JobHistoryListener> LISTENERS = new CopyOnWriteArraySet<>();
+
+    private static final AtomicLong DROPPED = new AtomicLong();
+
+    private static volatile long droppedLoggedAt;
+
+    private static volatile Disruptor<JobExecutionRecord> disruptor;
+
+    private static volatile RingBuffer<JobExecutionRecord> ringBuffer;
+
+    private static ScheduledExecutorService purgeExecutor;
+
+    private JobHistoryWriter() {
+    }
+
+    static synchronized void register(JobHistoryListener listener) {
+        LISTENERS.add(listener);
+        if (disruptor != null) {
+            return;
+        }
+        disruptor = new Disruptor<>(JobExecutionRecord::new, RING_BUFFER_SIZE, runnable -> {
+            Thread thread = new Thread(runnable, "quartz-plus-history-writer");
+            thread.setDaemon(true);
+            return thread;
+        }, ProducerType.MULTI, new BlockingWaitStrategy());
+        disruptor.handleEventsWith(new BatchInsertHandler());
+        ringBuffer = disruptor.start();
+
+        purgeExecutor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "quartz-plus-history-purge");
+            thread.setDaemon(true);
+            return thread;
+        });
+        purgeExecutor.scheduleWithFixedDelay(JobHistoryWriter::purge, 1, PURGE_INTERVAL_MINUTES, TimeUnit.MINUTES);
+    }
+
+    static synchronized void unregister(JobHistoryListener listener) {
+        if (!LISTENERS.remove(listener) || !LISTENERS.isEmpty() || disruptor == null) {
+            return;
+        }
+        purgeExecutor.shutdownNow();
+        purgeExecutor = null;
+        ringBuffer = null;
+        try {
+            // Writes what is left in the buffer
+            disruptor.shutdown(SHUTDOWN_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        } catch (TimeoutException e) {
+            log.warn("Job history still not written after {} seconds, dropping it", SHUTDOWN_TIMEOUT_SECONDS);
+            disruptor.halt();
+        }
+        disruptor = null;
+    }
+
+    static void publish(JobHistoryListener listener, JobExecutionContext context, String outcome, String errorMessage) {
+        RingBuffer<JobExecutionRecord> buffer = ringBuffer;
+        if (buffer == null || buffer.tryPublishEvent(TRANSLATOR, listener, context, outcome, errorMessage)) {
+            return;
+        }
+        long dropped = DROPPED.incrementAndGet();
+        long now = System.currentTimeMillis();
+        if (now - droppedLoggedAt >= DROPPED_LOG_INTERVAL_MILLIS) {
+            droppedLoggedAt = now;
+            log.warn("Job history buffer is full, the database does not keep up, {} executions dropped so far", dropped);
+        }
+    }
+
+    private static void purge() {
+        long now = System.currentTimeMillis();
+        for (JobHistoryListener listener : LISTENERS) {
+            if (listener.getRetentionMillis() <= 0) {
+                continue;
+            }
+            try (Connection conn = listener.getDataSource().getConnection();
+                 PreparedStatement ps = conn.prepareStatement(DELETE_EXPIRED_HISTORY.replace("{0}", listener.getTablePrefix()))) {
+                ps.setString(1, listener.getSchedulerName());
+                ps.setLong(2, now - listener.getRetentionMillis());
+                int purged = ps.executeUpdate();
+                if (!conn.getAutoCommit()) {
+                    conn.commit();
+                }
+                log.debug("Purged {} job history rows of scheduler {}", purged, listener.getSchedulerName());
+            } catch (SQLException | RuntimeException e) {
+                log.warn("Failed to purge the job history of scheduler {}", listener.getSchedulerName(), e);
+            }
+        }
+    }
+
+    private static class BatchInsertHandler implements EventHandler<JobExecutionRecord> {
+
+        /**
+         * Slots of the current batch, not reused by publishers before onEvent returns for the end of the batch
+         */
+        private final List<JobExecutionRecord> pending = new ArrayList<>(MAX_BATCH_SIZE);
+
+        @Override
+        public void onEvent(JobExecutionRecord record, long sequence, boolean endOfBatch) {
+            pending.add(record);
+            if (endOfBatch || pending.size() >= MAX_BATCH_SIZE) {
+                try {
+                    flush();
+                } finally {
+                    for (JobExecutionRecord written : pending) {
+                        written.listener = null;
+                    }
+                    pending.clear();
+                }
+            }
+        }
+
+        private void flush() {
+            // Schedulers sharing a data source and table prefix are written by one batch
+            Map<DataSource, Map<String, List<JobExecutionRecord>>> groups = new IdentityHashMap<>();
+            for (JobExecutionRecord record : pending) {
+                groups.computeIfAbsent(record.listener.getDataSource(), ds -> new LinkedHashMap<>())
+                    .computeIfAbsent(record.listener.getTablePrefix(), prefix -> new ArrayList<>())
+                    .add(record);
+            }
+            for (Map.Entry<DataSource, Map<String, List<JobExecutionRecord>>> group : groups.entrySet()) {
+                for (Map.Entry<String, List<JobExecutionRecord>> prefix : group.getValue().entrySet()) {
+                    insert(group.getKey(), prefix.getKey(), prefix.getValue());
+                }
+            }
+        }
+
+        private void insert(DataSource dataSource, String tablePrefix, List<JobExecutionRecord> records) {
+            try (Connection conn = dataSource.getConnection()) {
+                boolean autoCommit = conn.getAutoCommit();
+                conn.setAutoCommit(false);
+                try (PreparedStatement ps = conn.prepareStatement(INSERT_HISTORY.replace("{0}", tablePrefix))) {
+                    for (JobExecutionRecord record : records) {
+                        ps.setString(1, record.listener.getSchedulerName());
+                        ps.setString(2, record.listener.getInstanceId());
+                        ps.setString(3, record.entryId);
+                        ps.setString(4, record.jobName);
+                        ps.setString(5, record.jobGroup);
+                        ps.setString(6, record.triggerName);
+                        ps.setString(7, record.triggerGroup);
+                        ps.setLong(8, record.scheduledTime);
+                        ps.setLong(9, record.firedTime);
+                        ps.setLong(10, record.endTime);
+                        ps.setLong(11, record.runTime);
+                        ps.setString(12, record.outcome);
+                        ps.setString(13, record.errorMessage);
+                        ps.addBatch();
+                    }
+                    ps.executeBatch();
+                    conn.commit();
+                } catch (SQLException e) {
+                    conn.rollback();
+                    throw e;
+                } finally {
+                    conn.setAutoCommit(autoCommit);
+                }
+            } catch (SQLException | RuntimeException e) {
+                log.warn("Failed to write {} job history rows into {}JOB_HISTORY, dropping them", records.size(), tablePrefix, e);
+            }
+        }
+    }
+}
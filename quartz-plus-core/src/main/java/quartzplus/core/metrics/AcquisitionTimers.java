@@ -0,0 +1,51 @@
+/*
+ * All content copyright unionj-cloud, unless otherwise indicated. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy
+ * of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package quartzplus.core.metrics;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.LongConsumer;
+
+/**
+ * Acquisition latency recorders by scheduler name, the driver delegate is created by quartz and has no other way to
+ * reach them. Free of Micrometer types, delegates load whether it is on the classpath or not.
+ */
+public final class AcquisitionTimers {
+
+    private static final Map<String, LongConsumer> RECORDERS = new ConcurrentHashMap<>();
+
+    private AcquisitionTimers() {
+    }
+
+    static void register(String schedulerName, LongConsumer recorder) {
+        RECORDERS.put(schedulerName, recorder);
+    }
+
+    static void unregister(String schedulerName) {
+        RECORDERS.remove(schedulerName);
+    }
+
+    /**
+     * Record the latency of one acquisition query, no-op for schedulers without metrics
+     */
+    public static void record(String schedulerName, long nanos) {
+        LongConsumer recorder = RECORDERS.get(schedulerName);
+        if (recorder != null) {
+            recorder.accept(nanos);
+        }
+    }
+}
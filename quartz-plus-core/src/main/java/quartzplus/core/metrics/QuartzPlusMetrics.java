@@ -0,0 +1,189 @@
+/*
+ * All content copyright unionj-cloud, unless otherwise indicated. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy
+ * of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package quartzplus.core.metrics;
+
+import io.micrometer.core.instrument.*;
+import lombok.extern.slf4j.Slf4j;
+import org.quartz.Scheduler;
+import org.quartz.SchedulerException;
+import org.quartz.impl.jdbcjobstore.Constants;
+import org.quartz.impl.matchers.EverythingMatcher;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Micrometer meters of one scheduler, tagged with the scheduler name and, where it applies, the job group
+ */
+@Slf4j
+public class QuartzPlusMetrics implements AutoCloseable {
+
+    public static final String METER_PREFIX = "quartz.plus.";
+    public static final String FIRE_LAG = METER_PREFIX + "job.fire.lag";
+    public static final String EXECUTION = METER_PREFIX + "job.execution";
+    public static final String MISFIRES = METER_PREFIX + "trigger.misfires";
+    public static final String ACQUISITION = METER_PREFIX + "trigger.acquisition";
+    public static final String THREADS_BUSY = METER_PREFIX + "threads.busy";
+    public static final String THREADS_IDLE = METER_PREFIX + "threads.idle";
+    public static final String BACKLOG = METER_PREFIX + "triggers.backlog";
+
+    public static final String TAG_SCHEDULER = "scheduler";
+    public static final String TAG_GROUP = "group";
+    public static final String TAG_OUTCOME = "outcome";
+
+    private static final String SELECT_BACKLOG = "SELECT TRIGGER_GROUP, COUNT(*) FROM {0}TRIGGERS " +
+        "WHERE SCHED_NAME = ? AND TRIGGER_STATE = ? AND NEXT_FIRE_TIME <= ? GROUP BY TRIGGER_GROUP";
+
+    private static volatile ScheduledExecutorService backlogExecutor;
+
+    private final MeterRegistry registry;
+    private final Scheduler scheduler;
+    private final String schedulerName;
+    private final DataSource dataSource;
+    private final String selectBacklog;
+    private final MultiGauge backlog;
+    private ScheduledFuture<?> backlogRefresh;
+
+    private QuartzPlusMetrics(MeterRegistry registry, Scheduler scheduler, DataSource dataSource, String tablePrefix)
+        throws SchedulerException {
+        this.registry = registry;
+        this.scheduler = scheduler;
+        this.schedulerName = scheduler.getSchedulerName();
+        this.dataSource = dataSource;
+        this.selectBacklog = SELECT_BACKLOG.replace("{0}", tablePrefix);
+        this.backlog = MultiGauge.builder(BACKLOG)
+            .description("Triggers due but not yet acquired")
+            .tag(TAG_SCHEDULER, schedulerName)
+            .register(registry);
+    }
+
+    /**
+     * Register the meters of the scheduler, the backlog gauge is refreshed every backlogRefreshSeconds from the
+     * job store tables and skipped when dataSource is null
+     */
+    public static QuartzPlusMetrics bind(MeterRegistry registry, Scheduler scheduler, DataSource dataSource,
+                                         String tablePrefix, int backlogRefreshSeconds) throws SchedulerException {
+        QuartzPlusMetrics metrics = new QuartzPlusMetrics(registry, scheduler, dataSource, tablePrefix);
+        metrics.bindListener();
+        metrics.bindThreadGauges();
+        metrics.bindAcquisitionTimer();
+        if (dataSource != null && backlogRefreshSeconds > 0) {
+            metrics.backlogRefresh = getBacklogExecutor().scheduleWithFixedDelay(metrics::refreshBacklog,
+                0, backlogRefreshSeconds, TimeUnit.SECONDS);
+        }
+        return metrics;
+    }
+
+    private void bindListener() throws SchedulerException {
+        QuartzPlusMetricsListener listener = new QuartzPlusMetricsListener(registry, schedulerName);
+        scheduler.getListenerManager().addJobListener(listener, EverythingMatcher.allJobs());
+        scheduler.getListenerManager().addTriggerListener(listener, EverythingMatcher.allTriggers());
+    }
+
+    private void bindThreadGauges() {
+        Gauge.builder(THREADS_BUSY, this, QuartzPlusMetrics::busyThreads)
+            .description("Worker threads executing a job")
+            .tag(TAG_SCHEDULER, schedulerName)
+            .register(registry);
+        Gauge.builder(THREADS_IDLE, this, metrics -> metrics.threadPoolSize() - metrics.busyThreads())
+            .description("Worker threads available for new jobs")
+            .tag(TAG_SCHEDULER, schedulerName)
+            .register(registry);
+    }
+
+    private void bindAcquisitionTimer() {
+        Timer timer = Timer.builder(ACQUISITION)
+            .description("Latency of the query selecting the next triggers to acquire")
+            .tag(TAG_SCHEDULER, schedulerName)
+            .register(registry);
+        AcquisitionTimers.register(schedulerName, nanos -> timer.record(nanos, TimeUnit.NANOSECONDS));
+    }
+
+    private double busyThreads() {
+        try {
+            return scheduler.getCurrentlyExecutingJobs().size();
+        } catch (SchedulerException e) {
+            return Double.NaN;
+        }
+    }
+
+    private double threadPoolSize() {
+        try {
+            return scheduler.getMetaData().getThreadPoolSize();
+        } catch (SchedulerException e) {
+            return Double.NaN;
+        }
+    }
+
+    private void refreshBacklog() {
+        List<MultiGauge.Row<?>> rows = new ArrayList<>();
+        try (Connection conn = dataSource.getConnection();
+             PreparedStatement ps = conn.prepareStatement(selectBacklog)) {
+            ps.setString(1, schedulerName);
+            ps.setString(2, Constants.STATE_WAITING);
+            ps.setLong(3, System.currentTimeMillis());
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    rows.add(MultiGauge.Row.of(Tags.of(TAG_GROUP, rs.getString(1)), rs.getLong(2)));
+                }
+            }
+            backlog.register(rows, true);
+        } catch (Exception e) {
+            log.warn("Failed to refresh trigger backlog of scheduler {}", schedulerName, e);
+        }
+    }
+
+    private static ScheduledExecutorService getBacklogExecutor() {
+        if (backlogExecutor == null) {
+            synchronized (QuartzPlusMetrics.class) {
+                if (backlogExecutor == null) {
+                    backlogExecutor = Executors.newSingleThreadScheduledExecutor(r -> {
+                        Thread thread = new Thread(r, "quartz-plus-metrics");
+                        thread.setDaemon(true);
+                        return thread;
+                    });
+                }
+            }
+        }
+        return backlogExecutor;
+    }
+
+    /**
+     * Stop refreshing the backlog and remove every meter of the scheduler
+     */
+    @Override
+    public void close() {
+        if (backlogRefresh != null) {
+            backlogRefresh.cancel(false);
+        }
+        AcquisitionTimers.unregister(schedulerName);
+        for (Meter meter : new ArrayList<>(registry.getMeters())) {
+            Meter.Id id = meter.getId();
+            if (id.getName().startsWith(METER_PREFIX) && schedulerName.equals(id.getTag(TAG_SCHEDULER))) {
+                registry.remove(meter);
+            }
+        }
+    }
+}
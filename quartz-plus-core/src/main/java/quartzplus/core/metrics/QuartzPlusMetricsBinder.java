@@ -0,0 +1,46 @@
+/*
+ * All content copyright unionj-cloud, unless otherwise indicated. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy
+ * of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package quartzplus.core.metrics;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import org.quartz.Scheduler;
+import org.quartz.SchedulerException;
+import org.springframework.context.ApplicationContext;
+
+import javax.sql.DataSource;
+
+/**
+ * Binds {@link QuartzPlusMetrics} to the MeterRegistry bean. Micrometer is an optional dependency, callers only load
+ * this class once they checked it is on the classpath.
+ */
+public final class QuartzPlusMetricsBinder {
+
+    public static final String METER_REGISTRY_CLASS = "io.micrometer.core.instrument.MeterRegistry";
+
+    private QuartzPlusMetricsBinder() {
+    }
+
+    /**
+     * @return the meters of the scheduler, to close with it, null without a MeterRegistry bean
+     * @see QuartzPlusMetrics#bind(MeterRegistry, Scheduler, DataSource, String, int)
+     */
+    public static AutoCloseable bind(ApplicationContext applicationContext, Scheduler scheduler, DataSource dataSource,
+                                     String tablePrefix, int backlogRefreshSeconds) throws SchedulerException {
+        MeterRegistry registry = applicationContext.getBeanProvider(MeterRegistry.class).getIfUnique();
+        return registry != null ? QuartzPlusMetrics.bind(registry, scheduler, dataSource, tablePrefix, backlogRefreshSeconds) : null;
+    }
+}
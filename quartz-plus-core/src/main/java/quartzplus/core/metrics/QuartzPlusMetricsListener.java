@@ -0,0 +1,92 @@
+/*
+ * All content copyright unionj-cloud, unless otherwise indicated. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy
+ * of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package quartzplus.core.metrics;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.quartz.*;
+
+import java.util.concurrent.TimeUnit;
+
+import static quartzplus.core.metrics.QuartzPlusMetrics.*;
+
+/**
+ * Records fire lag, execution duration and misfires of one scheduler
+ */
+public class QuartzPlusMetricsListener implements JobListener, TriggerListener {
+
+    public static final String NAME = "quartzPlusMetrics";
+
+    private final MeterRegistry registry;
+    private final String schedulerName;
+
+    public QuartzPlusMetricsListener(MeterRegistry registry, String schedulerName) {
+        this.registry = registry;
+        this.schedulerName = schedulerName;
+    }
+
+    @Override
+    public String getName() {
+        return NAME;
+    }
+
+    @Override
+    public void jobToBeExecuted(JobExecutionContext context) {
+        if (context.getScheduledFireTime() == null) {
+            return;
+        }
+        long lag = context.getFireTime().getTime() - context.getScheduledFireTime().getTime();
+        Timer.builder(FIRE_LAG)
+            .description("Actual fire time minus scheduled fire time")
+            .tags(TAG_SCHEDULER, schedulerName, TAG_GROUP, context.getJobDetail().getKey().getGroup())
+            .register(registry)
+            .record(Math.max(lag, 0L), TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public void jobExecutionVetoed(JobExecutionContext context) {
+    }
+
+    @Override
+    public void jobWasExecuted(JobExecutionContext context, JobExecutionException jobException) {
+        Timer.builder(EXECUTION)
+            .description("Job execution duration")
+            .tags(TAG_SCHEDULER, schedulerName, TAG_GROUP, context.getJobDetail().getKey().getGroup(),
+                TAG_OUTCOME, jobException == null ? "success" : "failure")
+            .register(registry)
+            .record(context.getJobRunTime(), TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public void triggerFired(Trigger trigger, JobExecutionContext context) {
+    }
+
+    @Override
+    public boolean vetoJobExecution(Trigger trigger, JobExecutionContext context) {
+        return false;
+    }
+
+    @Override
+    public void triggerMisfired(Trigger trigger) {
+        registry.counter(MISFIRES, TAG_SCHEDULER, schedulerName, TAG_GROUP, trigger.getJobKey().getGroup()).increment();
+    }
+
+    @Override
+    public void triggerComplete(Trigger trigger, JobExecutionContext context,
+                                Trigger.CompletedExecutionInstruction triggerInstructionCode) {
+    }
+}
@@ -1,66 +1,567 @@
 package quartzplus.core.quartz;
 
-import org.apache.commons.collections4.CollectionUtils;
+import org.quartz.JobDataMap;
 import org.quartz.TriggerKey;
+import org.quartz.impl.jdbcjobstore.NoSuchDelegateException;
 import org.quartz.impl.jdbcjobstore.StdJDBCDelegate;
+import org.quartz.spi.ClassLoadHelper;
+import org.slf4j.Logger;
+import quartzplus.core.codec.JobDataCodec;
+import quartzplus.core.codec.JobDataCodecs;
+import quartzplus.core.metrics.AcquisitionTimers;
 
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
 import java.math.BigDecimal;
+import java.sql.Blob;
 import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
-import java.util.LinkedList;
-import java.util.List;
+import java.util.*;
 
 import static org.quartz.TriggerKey.triggerKey;
 
+/**
+ * Prefers due triggers whose group is below its concurrency limit (one fired trigger by default), so that one busy
+ * group does not occupy every thread. Limits are counted over FIRED_TRIGGERS, i.e. cluster wide when clustered.
+ * <p>
+ * Settings are passed through {@code org.quartz.jobStore.driverDelegateInitString} as {@code name=value} pairs
+ * separated by {@code |}, see {@link #applySetting(String, String)}; unknown ones are handed over to
+ * {@link StdJDBCDelegate}.
+ * <p>
+ * The fired trigger count of each group is joined in (backed by the (SCHED_NAME, TRIGGER_GROUP) index on
+ * FIRED_TRIGGERS, see quartzplus/core/sql/group_balance_index.sql) and the candidates are scanned in
+ * NEXT_FIRE_TIME order, so both the balanced pick and the fallback come from a single query.
+ * <p>
+ * With the {@code jobDataCodec} setting, JobDataMaps are stored with that {@link JobDataCodec} instead of Java
+ * serialization. Stored values of either kind are read whatever the setting is.
+ * <p>
+ * With {@code priorityAgingMillis}, due triggers are ordered by their NEXT_FIRE_TIME brought forward by PRIORITY times
+ * that many milliseconds instead of by NEXT_FIRE_TIME alone. A higher priority trigger jumps ahead of a backlog, but
+ * only by a bounded amount: once a lower priority trigger has waited the priority difference times
+ * {@code priorityAgingMillis}, it is taken first, so it cannot starve. The order is then computed for every due row,
+ * NEXT_FIRE_TIME indexes no longer bound the scan.
+ */
 public class GroupBalanceTriggerDelegate extends StdJDBCDelegate {
 
-    private static final String additionalQuery = "AND NOT EXISTS(SELECT 1 FROM {0}FIRED_TRIGGERS qft WHERE qft.TRIGGER_GROUP = qt.TRIGGER_GROUP AND qft.SCHED_NAME = qt.SCHED_NAME)";
+    public static final String SETTING_MAX_CONCURRENT_PER_GROUP = "maxConcurrentPerGroup";
+    public static final String SETTING_GROUP_MAX_CONCURRENT = "groupMaxConcurrent";
+    public static final String SETTING_STRICT_GROUP_CONCURRENCY = "strictGroupConcurrency";
+    public static final String SETTING_SCAN_WINDOW = "scanWindow";
+    public static final String SETTING_FAIR_GROUP_ACQUISITION = "fairGroupAcquisition";
+    public static final String SETTING_GROUP_WEIGHTS = "groupWeights";
+    public static final String SETTING_GROUP_BALANCE = "groupBalance";
+    public static final String SETTING_JOB_DATA_CODEC = "jobDataCodec";
+    public static final String SETTING_JOB_DATA_COMPRESS_THRESHOLD = "jobDataCompressThreshold";
+    public static final String SETTING_PRIORITY_AGING_MILLIS = "priorityAgingMillis";
 
-    private String buildSql() {
-        return "SELECT TRIGGER_NAME, TRIGGER_GROUP, NEXT_FIRE_TIME, PRIORITY FROM {0}TRIGGERS qt " +
-            "WHERE SCHED_NAME = {1} AND TRIGGER_STATE = ? AND NEXT_FIRE_TIME <= ? AND (MISFIRE_INSTR = -1 OR (MISFIRE_INSTR != -1 AND NEXT_FIRE_TIME >= ?)) " +
-            additionalQuery + " ORDER BY NEXT_FIRE_TIME ASC, PRIORITY DESC";
+    protected static final String COL_FIRED_COUNT = "FIRED_COUNT";
+
+    /**
+     * Fired triggers allowed per group unless overridden in {@link #groupMaxConcurrent}
+     */
+    protected int maxConcurrentPerGroup = 1;
+
+    /**
+     * Per group overrides of {@link #maxConcurrentPerGroup}, written as {@code group:limit,group:limit}
+     */
+    protected Map<String, Integer> groupMaxConcurrent = Collections.emptyMap();
+
+    /**
+     * When true, triggers of groups at their limit are never acquired, otherwise they are taken when no group
+     * below its limit has anything due, so threads are not left idle
+     */
+    protected boolean strictGroupConcurrency = false;
+
+    /**
+     * Candidate rows scanned per acquisition when looking for triggers of groups below their limit
+     */
+    protected int scanWindow = 32;
+
+    /**
+     * When true, acquisition batches interleave trigger groups by weighted fair queuing instead of following
+     * NEXT_FIRE_TIME order, so a group with a large overdue backlog cannot crowd out the others
+     */
+    protected boolean fairGroupAcquisition = false;
+
+    /**
+     * Share of each group in fair acquisition, written as {@code group:weight,group:weight}, default weight is 1
+     */
+    protected Map<String, Integer> groupWeights = Collections.emptyMap();
+
+    /**
+     * When false, group limits are ignored and triggers are taken in NEXT_FIRE_TIME order like {@link StdJDBCDelegate}
+     */
+    protected boolean groupBalance = true;
+
+    /**
+     * {@value JobDataCodecs#COMPACT} or the class name of a {@link JobDataCodec}, unset to use Java serialization
+     */
+    protected String jobDataCodecName;
+
+    /**
+     * Encoded JobDataMaps larger than this many bytes are gzipped, negative to never compress
+     */
+    protected int jobDataCompressThreshold = 1024;
+
+    /**
+     * Milliseconds of waiting worth one priority level, 0 to order due triggers by NEXT_FIRE_TIME and only break ties
+     * by PRIORITY like {@link StdJDBCDelegate}
+     */
+    protected long priorityAgingMillis = 0;
+
+    private JobDataCodec jobDataCodec;
+
+    private WeightedFairGroupQueue fairGroupQueue;
+
+    /**
+     * Job groups the acquisition running on the current thread must not return, see {@link #setExcludedJobGroups(Collection)}
+     */
+    private final ThreadLocal<Collection<String>> excludedJobGroups = new ThreadLocal<Collection<String>>();
+
+    // Excluded job groups are appended to it, see #setExcludedJobGroups
+    private static final String DUE_CONDITION =
+        "AND (qt.MISFIRE_INSTR = -1 OR (qt.MISFIRE_INSTR != -1 AND qt.NEXT_FIRE_TIME >= ?))";
+
+    private static final String SELECT_NEXT_TRIGGER_TO_ACQUIRE =
+        "SELECT qt.TRIGGER_NAME, qt.TRIGGER_GROUP, qt.NEXT_FIRE_TIME, qt.PRIORITY, 0 AS FIRED_COUNT " +
+            "FROM {0}TRIGGERS qt " +
+            "WHERE qt.SCHED_NAME = {1} AND qt.TRIGGER_STATE = ? AND qt.NEXT_FIRE_TIME <= ? " +
+            DUE_CONDITION + " " +
+            "ORDER BY qt.NEXT_FIRE_TIME ASC, qt.PRIORITY DESC";
+
+    private static final String SELECT_NEXT_TRIGGER_TO_ACQUIRE_BALANCED =
+        "SELECT qt.TRIGGER_NAME, qt.TRIGGER_GROUP, qt.NEXT_FIRE_TIME, qt.PRIORITY, COALESCE(qft.FIRED_COUNT, 0) AS FIRED_COUNT " +
+            "FROM {0}TRIGGERS qt LEFT JOIN (SELECT TRIGGER_GROUP, COUNT(*) AS FIRED_COUNT FROM {0}FIRED_TRIGGERS " +
+            "WHERE SCHED_NAME = {1} GROUP BY TRIGGER_GROUP) qft ON qft.TRIGGER_GROUP = qt.TRIGGER_GROUP " +
+            "WHERE qt.SCHED_NAME = {1} AND qt.TRIGGER_STATE = ? AND qt.NEXT_FIRE_TIME <= ? " +
+            DUE_CONDITION + " " +
+            "ORDER BY qt.NEXT_FIRE_TIME ASC, qt.PRIORITY DESC";
+
+    // The first rows hold the earliest due triggers of every group, needs window function support
+    // (MySQL 8, PostgreSQL, Oracle, SQL Server, H2)
+    private static final String SELECT_NEXT_TRIGGER_TO_ACQUIRE_FAIR =
+        "SELECT TRIGGER_NAME, TRIGGER_GROUP, NEXT_FIRE_TIME, PRIORITY, FIRED_COUNT FROM (" +
+            "SELECT qt.TRIGGER_NAME, qt.TRIGGER_GROUP, qt.NEXT_FIRE_TIME, qt.PRIORITY, COALESCE(qft.FIRED_COUNT, 0) AS FIRED_COUNT, " +
+            "ROW_NUMBER() OVER (PARTITION BY qt.TRIGGER_GROUP ORDER BY qt.NEXT_FIRE_TIME ASC, qt.PRIORITY DESC) AS GROUP_RANK " +
+            "FROM {0}TRIGGERS qt LEFT JOIN (SELECT TRIGGER_GROUP, COUNT(*) AS FIRED_COUNT FROM {0}FIRED_TRIGGERS " +
+            "WHERE SCHED_NAME = {1} GROUP BY TRIGGER_GROUP) qft ON qft.TRIGGER_GROUP = qt.TRIGGER_GROUP " +
+            "WHERE qt.SCHED_NAME = {1} AND qt.TRIGGER_STATE = ? AND qt.NEXT_FIRE_TIME <= ? " +
+            DUE_CONDITION + ") ranked " +
+            "WHERE GROUP_RANK <= ? ORDER BY GROUP_RANK ASC, NEXT_FIRE_TIME ASC, PRIORITY DESC";
+
+    // Due triggers move forward by PRIORITY aging periods, triggers not due yet keep their NEXT_FIRE_TIME so that they
+    // are not acquired ahead of due ones, nor are due triggers of a negative PRIORITY moved after them. Parameters are
+    // the current time and the aging period.
+    private static final String AGED_FIRE_TIME =
+        "CASE WHEN qt.NEXT_FIRE_TIME <= ? AND qt.PRIORITY > 0 THEN qt.NEXT_FIRE_TIME - qt.PRIORITY * ? " +
+            "ELSE qt.NEXT_FIRE_TIME END AS AGED_FIRE_TIME";
+
+    private static final String SELECT_NEXT_TRIGGER_TO_ACQUIRE_AGED =
+        "SELECT qt.TRIGGER_NAME, qt.TRIGGER_GROUP, qt.NEXT_FIRE_TIME, qt.PRIORITY, 0 AS FIRED_COUNT, " + AGED_FIRE_TIME + " " +
+            "FROM {0}TRIGGERS qt " +
+            "WHERE qt.SCHED_NAME = {1} AND qt.TRIGGER_STATE = ? AND qt.NEXT_FIRE_TIME <= ? " +
+            DUE_CONDITION + " " +
+            "ORDER BY AGED_FIRE_TIME ASC, qt.PRIORITY DESC";
+
+    private static final String SELECT_NEXT_TRIGGER_TO_ACQUIRE_BALANCED_AGED =
+        "SELECT qt.TRIGGER_NAME, qt.TRIGGER_GROUP, qt.NEXT_FIRE_TIME, qt.PRIORITY, COALESCE(qft.FIRED_COUNT, 0) AS FIRED_COUNT, " +
+            AGED_FIRE_TIME + " " +
+            "FROM {0}TRIGGERS qt LEFT JOIN (SELECT TRIGGER_GROUP, COUNT(*) AS FIRED_COUNT FROM {0}FIRED_TRIGGERS " +
+            "WHERE SCHED_NAME = {1} GROUP BY TRIGGER_GROUP) qft ON qft.TRIGGER_GROUP = qt.TRIGGER_GROUP " +
+            "WHERE qt.SCHED_NAME = {1} AND qt.TRIGGER_STATE = ? AND qt.NEXT_FIRE_TIME <= ? " +
+            DUE_CONDITION + " " +
+            "ORDER BY AGED_FIRE_TIME ASC, qt.PRIORITY DESC";
+
+    // Ranked one level up so that the window function can order by the aged fire time
+    private static final String SELECT_NEXT_TRIGGER_TO_ACQUIRE_FAIR_AGED =
+        "SELECT TRIGGER_NAME, TRIGGER_GROUP, NEXT_FIRE_TIME, PRIORITY, FIRED_COUNT FROM (" +
+            "SELECT TRIGGER_NAME, TRIGGER_GROUP, NEXT_FIRE_TIME, PRIORITY, FIRED_COUNT, AGED_FIRE_TIME, " +
+            "ROW_NUMBER() OVER (PARTITION BY TRIGGER_GROUP ORDER BY AGED_FIRE_TIME ASC, PRIORITY DESC) AS GROUP_RANK FROM (" +
+            "SELECT qt.TRIGGER_NAME, qt.TRIGGER_GROUP, qt.NEXT_FIRE_TIME, qt.PRIORITY, COALESCE(qft.FIRED_COUNT, 0) AS FIRED_COUNT, " +
+            AGED_FIRE_TIME + " " +
+            "FROM {0}TRIGGERS qt LEFT JOIN (SELECT TRIGGER_GROUP, COUNT(*) AS FIRED_COUNT FROM {0}FIRED_TRIGGERS " +
+            "WHERE SCHED_NAME = {1} GROUP BY TRIGGER_GROUP) qft ON qft.TRIGGER_GROUP = qt.TRIGGER_GROUP " +
+            "WHERE qt.SCHED_NAME = {1} AND qt.TRIGGER_STATE = ? AND qt.NEXT_FIRE_TIME <= ? " +
+            DUE_CONDITION + ") due) ranked " +
+            "WHERE GROUP_RANK <= ? ORDER BY GROUP_RANK ASC, AGED_FIRE_TIME ASC, PRIORITY DESC";
+
+    @Override
+    public void initialize(Logger logger, String tablePrefix, String schedName, String instanceId,
+                           ClassLoadHelper classLoadHelper, boolean useProperties, String initString)
+        throws NoSuchDelegateException {
+        List<String> remaining = new ArrayList<String>();
+        if (initString != null) {
+            for (String setting : initString.split("\\|")) {
+                String[] parts = setting.split("=", 2);
+                if (parts.length == 2 && applySetting(parts[0].trim(), parts[1].trim())) {
+                    continue;
+                }
+                remaining.add(setting);
+            }
+        }
+        super.initialize(logger, tablePrefix, schedName, instanceId, classLoadHelper, useProperties,
+            remaining.isEmpty() ? null : String.join("|", remaining));
+        fairGroupQueue = new WeightedFairGroupQueue(groupWeights);
+        if (jobDataCodecName != null && !jobDataCodecName.isEmpty()) {
+            try {
+                jobDataCodec = JobDataCodecs.forName(jobDataCodecName, classLoadHelper.getClassLoader());
+            } catch (ReflectiveOperationException | ClassCastException e) {
+                throw new NoSuchDelegateException("Invalid job data codec '" + jobDataCodecName + "'", e);
+            }
+        }
+    }
+
+    /**
+     * Applies one setting of the init string, subclasses add their own settings and delegate to this method.
+     *
+     * @return false if the setting is unknown to this delegate
+     */
+    protected boolean applySetting(String name, String value) throws NoSuchDelegateException {
+        try {
+            switch (name) {
+                case SETTING_MAX_CONCURRENT_PER_GROUP:
+                    maxConcurrentPerGroup = Integer.parseInt(value);
+                    return true;
+                case SETTING_GROUP_MAX_CONCURRENT:
+                    groupMaxConcurrent = parseGroupValues(value);
+                    return true;
+                case SETTING_STRICT_GROUP_CONCURRENCY:
+                    strictGroupConcurrency = Boolean.parseBoolean(value);
+                    return true;
+                case SETTING_SCAN_WINDOW:
+                    scanWindow = Integer.parseInt(value);
+                    return true;
+                case SETTING_FAIR_GROUP_ACQUISITION:
+                    fairGroupAcquisition = Boolean.parseBoolean(value);
+                    return true;
+                case SETTING_GROUP_WEIGHTS:
+                    groupWeights = parseGroupValues(value);
+                    return true;
+                case SETTING_GROUP_BALANCE:
+                    groupBalance = Boolean.parseBoolean(value);
+                    return true;
+                case SETTING_JOB_DATA_CODEC:
+                    jobDataCodecName = value;
+                    return true;
+                case SETTING_JOB_DATA_COMPRESS_THRESHOLD:
+                    jobDataCompressThreshold = Integer.parseInt(value);
+                    return true;
+                case SETTING_PRIORITY_AGING_MILLIS:
+                    priorityAgingMillis = Long.parseLong(value);
+                    return true;
+                default:
+                    return false;
+            }
+        } catch (NumberFormatException e) {
+            throw new NoSuchDelegateException("Invalid value '" + value + "' for setting '" + name + "'", e);
+        }
+    }
+
+    private static Map<String, Integer> parseGroupValues(String value) {
+        Map<String, Integer> values = new HashMap<String, Integer>();
+        for (String entry : value.split(",")) {
+            int idx = entry.lastIndexOf(':');
+            if (idx > 0) {
+                values.put(entry.substring(0, idx).trim(), Integer.parseInt(entry.substring(idx + 1).trim()));
+            }
+        }
+        return values;
+    }
+
+    /**
+     * Leaves triggers of the given job groups out of the acquisitions made by the current thread until cleared with
+     * null, used by {@link QuartzPlusJobStore} for groups over their rate limit
+     */
+    public void setExcludedJobGroups(Collection<String> jobGroups) {
+        if (jobGroups == null || jobGroups.isEmpty()) {
+            excludedJobGroups.remove();
+        } else {
+            excludedJobGroups.set(jobGroups);
+        }
+    }
+
+    protected int getMaxConcurrent(String group) {
+        Integer limit = groupMaxConcurrent.get(group);
+        return limit != null ? limit : maxConcurrentPerGroup;
     }
 
     @Override
     public List<TriggerKey> selectTriggerToAcquire(Connection conn, long noLaterThan, long noEarlierThan, int maxCount)
+        throws SQLException {
+        if (maxCount < 1)
+            maxCount = 1; // we want at least one trigger back.
+
+        long start = System.nanoTime();
+        try {
+            List<AcquireCandidate> candidates = selectAcquireCandidates(conn, noLaterThan, noEarlierThan, maxCount);
+            if (!groupBalance) {
+                List<TriggerKey> nextTriggers = new LinkedList<TriggerKey>();
+                for (AcquireCandidate candidate : candidates) {
+                    nextTriggers.add(candidate.getTriggerKey());
+                }
+                return nextTriggers;
+            }
+            return fairGroupAcquisition ? pickFair(candidates, maxCount) : pickBalanced(candidates, maxCount);
+        } finally {
+            AcquisitionTimers.record(schedName, System.nanoTime() - start);
+        }
+    }
+
+    protected List<AcquireCandidate> selectAcquireCandidates(Connection conn, long noLaterThan, long noEarlierThan, int maxCount)
         throws SQLException {
         PreparedStatement ps = null;
         ResultSet rs = null;
-        List<TriggerKey> nextTriggers = new LinkedList<TriggerKey>();
+        List<AcquireCandidate> candidates = new ArrayList<AcquireCandidate>();
         try {
-            ps = conn.prepareStatement(rtp(buildSql()));
-
-            // Set max rows to retrieve
-            if (maxCount < 1)
-                maxCount = 1; // we want at least one trigger back.
-            ps.setMaxRows(maxCount);
+            Collection<String> excluded = excludedJobGroups.get();
+            String sql = getSelectNextTriggerToAcquireSql();
+            if (excluded != null) {
+                StringBuilder filter = new StringBuilder(DUE_CONDITION).append(" AND qt.JOB_GROUP NOT IN (");
+                for (int i = 0; i < excluded.size(); i++) {
+                    filter.append(i == 0 ? "?" : ", ?");
+                }
+                sql = sql.replace(DUE_CONDITION, filter.append(')').toString());
+            }
+            ps = conn.prepareStatement(rtp(sql));
 
-            // Try to give jdbc driver a hint to hopefully not pull over more than the few rows we actually need.
+            // Scan a bit further than maxCount, the first rows may all belong to saturated groups.
             // Note: in some jdbc drivers, such as MySQL, you must set maxRows before fetchSize, or you get exception!
-            ps.setFetchSize(maxCount);
-
-            ps.setString(1, STATE_WAITING);
-            ps.setBigDecimal(2, new BigDecimal(String.valueOf(noLaterThan)));
-            ps.setBigDecimal(3, new BigDecimal(String.valueOf(noEarlierThan)));
-            rs = ps.executeQuery();
+            int scanRows = groupBalance ? Math.max(maxCount, scanWindow) : maxCount;
+            ps.setMaxRows(scanRows);
+            ps.setFetchSize(scanRows);
 
-            while (rs.next() && nextTriggers.size() < maxCount) {
-                nextTriggers.add(triggerKey(
-                    rs.getString(COL_TRIGGER_NAME),
-                    rs.getString(COL_TRIGGER_GROUP)));
+            int index = 1;
+            if (priorityAgingMillis > 0) {
+                ps.setBigDecimal(index++, new BigDecimal(String.valueOf(System.currentTimeMillis())));
+                ps.setLong(index++, priorityAgingMillis);
             }
-
-            if (CollectionUtils.isNotEmpty(nextTriggers)) {
-                return nextTriggers;
+            ps.setString(index++, STATE_WAITING);
+            ps.setBigDecimal(index++, new BigDecimal(String.valueOf(noLaterThan)));
+            ps.setBigDecimal(index++, new BigDecimal(String.valueOf(noEarlierThan)));
+            if (excluded != null) {
+                for (String jobGroup : excluded) {
+                    ps.setString(index++, jobGroup);
+                }
+            }
+            if (groupBalance && fairGroupAcquisition) {
+                // No group can contribute more than a whole batch
+                ps.setInt(index, maxCount);
             }
+            rs = ps.executeQuery();
 
-            return super.selectTriggerToAcquire(conn, noLaterThan, noEarlierThan, maxCount);
+            while (rs.next()) {
+                candidates.add(new AcquireCandidate(
+                    triggerKey(rs.getString(COL_TRIGGER_NAME), rs.getString(COL_TRIGGER_GROUP)),
+                    rs.getInt(COL_FIRED_COUNT)));
+            }
+            return candidates;
         } finally {
             closeResultSet(rs);
             closeStatement(ps);
         }
     }
+
+    /**
+     * Candidate query before {@link #rtp(String)}, the columns are TRIGGER_NAME, TRIGGER_GROUP, NEXT_FIRE_TIME,
+     * PRIORITY and FIRED_COUNT, the parameters are, with priority aging, the current time and the aging period, then
+     * the trigger state, noLaterThan, noEarlierThan and, in fair acquisition, the max candidates per group. Excluded
+     * job groups are filtered by appending to the misfire condition of the inner WHERE clause, which must be kept as is
+     */
+    protected String getSelectNextTriggerToAcquireSql() {
+        boolean aged = priorityAgingMillis > 0;
+        if (!groupBalance) {
+            return aged ? SELECT_NEXT_TRIGGER_TO_ACQUIRE_AGED : SELECT_NEXT_TRIGGER_TO_ACQUIRE;
+        }
+        if (fairGroupAcquisition) {
+            return aged ? SELECT_NEXT_TRIGGER_TO_ACQUIRE_FAIR_AGED : SELECT_NEXT_TRIGGER_TO_ACQUIRE_FAIR;
+        }
+        return aged ? SELECT_NEXT_TRIGGER_TO_ACQUIRE_BALANCED_AGED : SELECT_NEXT_TRIGGER_TO_ACQUIRE_BALANCED;
+    }
+
+    private List<TriggerKey> pickBalanced(List<AcquireCandidate> candidates, int maxCount) {
+        List<TriggerKey> availableTriggers = new LinkedList<TriggerKey>();
+        List<TriggerKey> saturatedTriggers = new LinkedList<TriggerKey>();
+        Map<String, Integer> acquiredPerGroup = new HashMap<String, Integer>();
+        for (AcquireCandidate candidate : candidates) {
+            if (availableTriggers.size() >= maxCount) {
+                break;
+            }
+            if (tryAcquireSlot(candidate, acquiredPerGroup)) {
+                availableTriggers.add(candidate.getTriggerKey());
+            } else if (!strictGroupConcurrency && saturatedTriggers.size() < maxCount) {
+                saturatedTriggers.add(candidate.getTriggerKey());
+            }
+        }
+
+        // Fall back to triggers of saturated groups rather than leaving threads idle
+        return availableTriggers.isEmpty() ? saturatedTriggers : availableTriggers;
+    }
+
+    private List<TriggerKey> pickFair(List<AcquireCandidate> candidates, int maxCount) {
+        // Candidates of each group, groups ordered by their earliest due trigger
+        Map<String, Deque<AcquireCandidate>> queues = new LinkedHashMap<String, Deque<AcquireCandidate>>();
+        for (AcquireCandidate candidate : candidates) {
+            Deque<AcquireCandidate> queue = queues.get(candidate.getTriggerKey().getGroup());
+            if (queue == null) {
+                queue = new ArrayDeque<AcquireCandidate>();
+                queues.put(candidate.getTriggerKey().getGroup(), queue);
+            }
+            queue.add(candidate);
+        }
+
+        List<TriggerKey> availableTriggers = new LinkedList<TriggerKey>();
+        List<TriggerKey> saturatedTriggers = new LinkedList<TriggerKey>();
+        Map<String, Integer> acquiredPerGroup = new HashMap<String, Integer>();
+        synchronized (fairGroupQueue) {
+            while (availableTriggers.size() < maxCount && !queues.isEmpty()) {
+                String group = fairGroupQueue.next(queues.keySet());
+                Deque<AcquireCandidate> queue = queues.get(group);
+                AcquireCandidate candidate = queue.peek();
+                if (!tryAcquireSlot(candidate, acquiredPerGroup)) {
+                    // Group reached its limit, its remaining candidates only serve as fallback
+                    if (!strictGroupConcurrency) {
+                        for (AcquireCandidate saturated : queue) {
+                            if (saturatedTriggers.size() < maxCount) {
+                                saturatedTriggers.add(saturated.getTriggerKey());
+                            }
+                        }
+                    }
+                    queues.remove(group);
+                    continue;
+                }
+                availableTriggers.add(candidate.getTriggerKey());
+                fairGroupQueue.charge(group);
+                queue.poll();
+                if (queue.isEmpty()) {
+                    queues.remove(group);
+                }
+            }
+        }
+
+        // Fall back to triggers of saturated groups rather than leaving threads idle
+        return availableTriggers.isEmpty() ? saturatedTriggers : availableTriggers;
+    }
+
+    /**
+     * Takes one slot of the candidate's group, triggers taken earlier in this batch count against the limit as well
+     */
+    private boolean tryAcquireSlot(AcquireCandidate candidate, Map<String, Integer> acquiredPerGroup) {
+        String group = candidate.getTriggerKey().getGroup();
+        Integer acquired = acquiredPerGroup.get(group);
+        int taken = acquired != null ? acquired : 0;
+        if (candidate.getFiredCount() + taken >= getMaxConcurrent(group)) {
+            return false;
+        }
+        acquiredPerGroup.put(group, taken + 1);
+        return true;
+    }
+
+    @Override
+    protected ByteArrayOutputStream serializeJobData(JobDataMap data) throws IOException {
+        // Properties stay readable in the database, the codec does not apply to them
+        if (jobDataCodec == null || canUseProperties() || data == null) {
+            return super.serializeJobData(data);
+        }
+        byte[] encoded = JobDataCodecs.encode(jobDataCodec, data.getWrappedMap(), jobDataCompressThreshold);
+        if (encoded == null) {
+            return super.serializeJobData(data);
+        }
+        ByteArrayOutputStream out = new ByteArrayOutputStream(encoded.length);
+        out.write(encoded);
+        return out;
+    }
+
+    /**
+     * Same as {@link StdJDBCDelegate#getObjectFromBlob(ResultSet, String)}, except for values written by a
+     * {@link JobDataCodec}. Also reads calendars, which never carry the codec header.
+     */
+    @Override
+    protected Object getObjectFromBlob(ResultSet rs, String colName) throws ClassNotFoundException, IOException, SQLException {
+        InputStream binaryInput = getBlobStream(rs, colName);
+        if (binaryInput == null) {
+            return null;
+        }
+        try (BufferedInputStream in = new BufferedInputStream(binaryInput)) {
+            in.mark(2);
+            int first = in.read();
+            int second = in.read();
+            in.reset();
+            if (first == -1) {
+                return null;
+            }
+            if (JobDataCodecs.isMagic(first, second)) {
+                return JobDataCodecs.decode(readFully(in));
+            }
+            try (ObjectInputStream objectInput = new ObjectInputStream(in)) {
+                return objectInput.readObject();
+            }
+        }
+    }
+
+    @Override
+    protected Object getJobDataFromBlob(ResultSet rs, String colName) throws ClassNotFoundException, IOException, SQLException {
+        if (canUseProperties()) {
+            return getBlobStream(rs, colName);
+        }
+        return getObjectFromBlob(rs, colName);
+    }
+
+    /**
+     * Content of a BLOB column, null if it is null or empty. Read through {@link ResultSet#getBlob(String)}, databases
+     * storing binary columns without BLOB locators override it, see {@link PostgreSQLGroupBalanceTriggerDelegate}
+     */
+    protected InputStream getBlobStream(ResultSet rs, String colName) throws SQLException {
+        Blob blobLocator = rs.getBlob(colName);
+        if (blobLocator == null || blobLocator.length() == 0) {
+            return null;
+        }
+        return blobLocator.getBinaryStream();
+    }
+
+    /**
+     * {@link #getBlobStream(ResultSet, String)} of PostgreSQL {@code bytea} columns, read like Quartz's PostgreSQLDelegate
+     */
+    static InputStream getBytesStream(ResultSet rs, String colName) throws SQLException {
+        byte[] bytes = rs.getBytes(colName);
+        if (bytes == null || bytes.length == 0) {
+            return null;
+        }
+        return new ByteArrayInputStream(bytes);
+    }
+
+    private static byte[] readFully(InputStream in) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[4096];
+        int read;
+        while ((read = in.read(buffer)) != -1) {
+            out.write(buffer, 0, read);
+        }
+        return out.toByteArray();
+    }
+
+    protected static class AcquireCandidate {
+
+        private final TriggerKey triggerKey;
+
+        private final int firedCount;
+
+        public AcquireCandidate(TriggerKey triggerKey, int firedCount) {
+            this.triggerKey = triggerKey;
+            this.firedCount = firedCount;
+        }
+
+        public TriggerKey getTriggerKey() {
+            return triggerKey;
+        }
+
+        public int getFiredCount() {
+            return firedCount;
+        }
+    }
 }
@@ -0,0 +1,33 @@
+/*
+ * All content copyright unionj-cloud, unless otherwise indicated. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy
+ * of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package quartzplus.core.quartz;
+
+import java.io.InputStream;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+/**
+ * {@link GroupBalanceTriggerDelegate} for PostgreSQL, whose {@code bytea} columns are read with
+ * {@link ResultSet#getBytes(String)} instead of BLOB locators, as Quartz's PostgreSQLDelegate does.
+ */
+public class PostgreSQLGroupBalanceTriggerDelegate extends GroupBalanceTriggerDelegate {
+
+    @Override
+    protected InputStream getBlobStream(ResultSet rs, String colName) throws SQLException {
+        return getBytesStream(rs, colName);
+    }
+}
@@ -0,0 +1,655 @@
+/*
+ * All content copyright unionj-cloud, unless otherwise indicated. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy
+ * of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package quartzplus.core.quartz;
+
+import lombok.extern.slf4j.Slf4j;
+import org.quartz.JobDetail;
+import org.quartz.JobKey;
+import org.quartz.JobPersistenceException;
+import org.quartz.SchedulerConfigException;
+import org.quartz.SchedulerException;
+import org.quartz.Trigger.CompletedExecutionInstruction;
+import org.quartz.impl.jdbcjobstore.DriverDelegate;
+import org.quartz.impl.jdbcjobstore.FiredTriggerRecord;
+import org.quartz.spi.ClassLoadHelper;
+import org.quartz.spi.OperableTrigger;
+import org.quartz.spi.SchedulerSignaler;
+import org.quartz.spi.TriggerFiredBundle;
+import org.quartz.spi.TriggerFiredResult;
+import org.quartz.utils.DBConnectionManager;
+import org.springframework.scheduling.quartz.LocalDataSourceJobStore;
+import org.springframework.scheduling.quartz.SchedulerFactoryBean;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Job store of quartz-plus schedulers, a {@link LocalDataSourceJobStore} that can size trigger acquisition batches
+ * adaptively.
+ * <p>
+ * With {@code org.quartz.jobStore.adaptiveBatchAcquisition=true}, {@code batchTriggerAcquisitionMaxCount} becomes the
+ * upper bound of the batch. The batch doubles when a full batch comes back with triggers overdue by more than
+ * {@code adaptiveBatchLowLagMillis}, i.e. the due backlog exceeds what the idle threads took, and halves when the
+ * lag drops below it. Quartz only takes the TRIGGER_ACCESS lock for batches larger than one, so a quiet scheduler
+ * acquires without it.
+ * <p>
+ * With {@link SkipLockedTriggerDelegate}, triggers are acquired without the TRIGGER_ACCESS lock whatever the batch
+ * size (unless {@code acquireTriggersWithinLock} is set), and fired without it unless one of their jobs disallows
+ * concurrent execution.
+ * <p>
+ * With {@code org.quartz.jobStore.sharedPolling=true}, the store registers with {@link SharedTriggerPoller}, which
+ * looks up the earliest waiting trigger of every registered scheduler in one query per data source. Acquisition
+ * then skips the database while that snapshot says nothing is due, and the poller wakes the scheduler thread when
+ * something becomes due, so {@code org.quartz.scheduler.idleWaitTime} can be raised without delaying triggers added
+ * by other nodes by more than the polling interval. Changes made through this store invalidate the snapshot.
+ * <p>
+ * With {@code org.quartz.jobStore.sharedClusterHeartbeat=true} in cluster mode, the store registers with
+ * {@link SharedClusterHeartbeat} once started, and its own cluster manager thread only checks in when the heartbeat
+ * asks for it.
+ * <p>
+ * With {@code org.quartz.jobStore.rateLimitPermitsPerSecond} or {@code rateLimitGroups} ({@code group:permits,...}),
+ * acquisition takes a permit per trigger from token buckets of the scheduler and of the job group of the trigger.
+ * Triggers over budget are left waiting instead of taking a worker thread, and the scheduler thread is woken up once
+ * permits are available again. Job groups seen over budget are excluded from the acquisition query of
+ * {@link GroupBalanceTriggerDelegate} until their bucket refills, so that other groups keep firing; with other
+ * delegates their triggers are acquired and released. With
+ * {@code rateLimitClustered=true} the buckets are kept in the RATE_LIMITS table and shared by every node.
+ * <p>
+ * Stores are registered by scheduler name, {@link #wakeUp(String, long)} wakes up their scheduler threads when a
+ * trigger was added elsewhere, see {@link quartzplus.core.wakeup.WakeUpChannel}.
+ */
+@Slf4j
+public class QuartzPlusJobStore extends LocalDataSourceJobStore {
+
+    private static final Map<String, Set<QuartzPlusJobStore>> STORES = new ConcurrentHashMap<>();
+
+    /**
+     * Wakes up scheduler threads when rate limited triggers can be acquired again
+     */
+    private static final ScheduledExecutorService RATE_LIMIT_WAKE_UPS = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "quartz-plus-rate-limit");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private boolean adaptiveBatchAcquisition = false;
+
+    private long adaptiveBatchLowLagMillis = 100;
+
+    private volatile int batchSize = 1;
+
+    private boolean sharedPolling = false;
+
+    private long sharedPollingIntervalMillis = SharedTriggerPoller.DEFAULT_INTERVAL_MILLIS;
+
+    private boolean sharedClusterHeartbeat = false;
+
+    private double rateLimitPermitsPerSecond = 0;
+
+    private String rateLimitGroups;
+
+    private double rateLimitBurstSeconds = 1;
+
+    private boolean rateLimitClustered = false;
+
+    private TriggerRateLimiter rateLimiter;
+
+    /**
+     * Earliest pending rate limit wake up of the scheduler thread, 0 if none
+     */
+    private final AtomicLong rateLimitWakeUp = new AtomicLong();
+
+    private DataSource dataSource;
+
+    private SchedulerSignaler signaler;
+
+    /**
+     * Bumped on every change made through this store, a snapshot taken before a change is not trusted
+     */
+    private final AtomicLong changes = new AtomicLong();
+
+    private volatile NextFireSnapshot snapshot;
+
+    /**
+     * Fire time the shared poller last woke the scheduler thread up for, only touched by the poller thread
+     */
+    private long signaledFireTime = Long.MIN_VALUE;
+
+    public void setAdaptiveBatchAcquisition(boolean adaptiveBatchAcquisition) {
+        this.adaptiveBatchAcquisition = adaptiveBatchAcquisition;
+    }
+
+    public boolean isAdaptiveBatchAcquisition() {
+        return adaptiveBatchAcquisition;
+    }
+
+    public void setAdaptiveBatchLowLagMillis(long adaptiveBatchLowLagMillis) {
+        this.adaptiveBatchLowLagMillis = adaptiveBatchLowLagMillis;
+    }
+
+    public long getAdaptiveBatchLowLagMillis() {
+        return adaptiveBatchLowLagMillis;
+    }
+
+    public void setSharedPolling(boolean sharedPolling) {
+        this.sharedPolling = sharedPolling;
+    }
+
+    public boolean isSharedPolling() {
+        return sharedPolling;
+    }
+
+    public void setSharedPollingIntervalMillis(long sharedPollingIntervalMillis) {
+        this.sharedPollingIntervalMillis = sharedPollingIntervalMillis;
+    }
+
+    public long getSharedPollingIntervalMillis() {
+        return sharedPollingIntervalMillis;
+    }
+
+    public void setSharedClusterHeartbeat(boolean sharedClusterHeartbeat) {
+        this.sharedClusterHeartbeat = sharedClusterHeartbeat;
+    }
+
+    public boolean isSharedClusterHeartbeat() {
+        return sharedClusterHeartbeat;
+    }
+
+    public void setRateLimitPermitsPerSecond(double rateLimitPermitsPerSecond) {
+        this.rateLimitPermitsPerSecond = rateLimitPermitsPerSecond;
+    }
+
+    public double getRateLimitPermitsPerSecond() {
+        return rateLimitPermitsPerSecond;
+    }
+
+    /**
+     * Permits per second of job groups, written as {@code group:permits,group:permits}
+     */
+    public void setRateLimitGroups(String rateLimitGroups) {
+        this.rateLimitGroups = rateLimitGroups;
+    }
+
+    public String getRateLimitGroups() {
+        return rateLimitGroups;
+    }
+
+    public void setRateLimitBurstSeconds(double rateLimitBurstSeconds) {
+        this.rateLimitBurstSeconds = rateLimitBurstSeconds;
+    }
+
+    public double getRateLimitBurstSeconds() {
+        return rateLimitBurstSeconds;
+    }
+
+    public void setRateLimitClustered(boolean rateLimitClustered) {
+        this.rateLimitClustered = rateLimitClustered;
+    }
+
+    public boolean isRateLimitClustered() {
+        return rateLimitClustered;
+    }
+
+    DataSource getLocalDataSource() {
+        return dataSource;
+    }
+
+    /**
+     * Current acquisition batch size, only moves in adaptive mode
+     */
+    public int getBatchSize() {
+        return batchSize;
+    }
+
+    @Override
+    public void initialize(ClassLoadHelper loadHelper, SchedulerSignaler signaler) throws SchedulerConfigException {
+        // Only available while the SchedulerFactoryBean initializes the scheduler
+        this.dataSource = SchedulerFactoryBean.getConfigTimeDataSource();
+        this.signaler = signaler;
+        // Connection providers are kept in an unsynchronized map, schedulers may be initialized in parallel
+        synchronized (DBConnectionManager.class) {
+            super.initialize(loadHelper, signaler);
+        }
+        STORES.computeIfAbsent(getInstanceName(), name -> new CopyOnWriteArraySet<>()).add(this);
+        Map<String, Double> groupPermits = parseRateLimitGroups(rateLimitGroups);
+        if (rateLimitPermitsPerSecond > 0 || !groupPermits.isEmpty()) {
+            rateLimiter = new TriggerRateLimiter(getInstanceName(), getTablePrefix(), rateLimitClustered ? dataSource : null,
+                rateLimitPermitsPerSecond, groupPermits, rateLimitBurstSeconds);
+        }
+        if (sharedPolling) {
+            SharedTriggerPoller.register(this);
+        }
+    }
+
+    @Override
+    public void schedulerStarted() throws SchedulerException {
+        super.schedulerStarted();
+        if (isClustered() && sharedClusterHeartbeat) {
+            SharedClusterHeartbeat.register(this);
+        }
+    }
+
+    @Override
+    public void shutdown() {
+        STORES.computeIfPresent(getInstanceName(), (name, stores) -> {
+            stores.remove(this);
+            return stores.isEmpty() ? null : stores;
+        });
+        if (sharedPolling) {
+            SharedTriggerPoller.unregister(this);
+        }
+        if (sharedClusterHeartbeat) {
+            SharedClusterHeartbeat.unregister(this);
+        }
+        super.shutdown();
+    }
+
+    @Override
+    public List<OperableTrigger> acquireNextTriggers(long noLaterThan, int maxCount, long timeWindow)
+        throws JobPersistenceException {
+        if (sharedPolling && !isDueBySnapshot(noLaterThan + timeWindow)) {
+            return Collections.emptyList();
+        }
+        if (rateLimiter == null) {
+            return acquireBatch(noLaterThan, maxCount, timeWindow);
+        }
+
+        long now = System.currentTimeMillis();
+        int permits = rateLimiter.available(maxCount, now);
+        if (permits == 0) {
+            wakeUpAt(rateLimiter.getNextPermitTime());
+            return Collections.emptyList();
+        }
+        // Groups known to be over budget are left out of the query, so their backlog does not hide other groups
+        Map<String, Long> exhausted = rateLimiter.getExhaustedGroups(now);
+        GroupBalanceTriggerDelegate delegate = getGroupBalanceDelegate();
+        List<OperableTrigger> acquired;
+        try {
+            if (delegate != null) {
+                delegate.setExcludedJobGroups(exhausted.keySet());
+            }
+            acquired = acquireBatch(noLaterThan, permits, timeWindow);
+        } finally {
+            if (delegate != null) {
+                delegate.setExcludedJobGroups(null);
+            }
+        }
+        if (delegate != null && acquired.isEmpty() && !exhausted.isEmpty()) {
+            wakeUpAt(Collections.min(exhausted.values()));
+        }
+
+        List<OperableTrigger> refused;
+        try {
+            refused = rateLimiter.admit(acquired);
+        } catch (JobPersistenceException | RuntimeException e) {
+            // Lock timeout or deadlock on RATE_LIMITS, the triggers would otherwise stay ACQUIRED
+            for (OperableTrigger trigger : acquired) {
+                releaseAcquiredTrigger(trigger);
+            }
+            throw e;
+        }
+        if (refused.isEmpty()) {
+            return acquired;
+        }
+        // Back to WAITING, for this node once its group has permits again, or for another node
+        for (OperableTrigger trigger : refused) {
+            releaseAcquiredTrigger(trigger);
+        }
+        wakeUpAt(rateLimiter.getNextPermitTime());
+        List<OperableTrigger> admitted = new ArrayList<>(acquired);
+        admitted.removeAll(refused);
+        return admitted;
+    }
+
+    /**
+     * The delegate when it can leave job groups out of acquisition, null for other delegates, whose triggers of
+     * groups over budget are acquired and then released
+     */
+    private GroupBalanceTriggerDelegate getGroupBalanceDelegate() throws JobPersistenceException {
+        DriverDelegate delegate = getDelegate();
+        return delegate instanceof GroupBalanceTriggerDelegate ? (GroupBalanceTriggerDelegate) delegate : null;
+    }
+
+    private List<OperableTrigger> acquireBatch(long noLaterThan, int maxCount, long timeWindow)
+        throws JobPersistenceException {
+        if (!adaptiveBatchAcquisition) {
+            return invalidateIfAcquired(acquire(noLaterThan, maxCount, timeWindow));
+        }
+
+        // maxCount is the smaller of the idle threads and batchTriggerAcquisitionMaxCount
+        int batch = Math.max(1, Math.min(batchSize, maxCount));
+        List<OperableTrigger> acquired = invalidateIfAcquired(acquire(noLaterThan, batch, timeWindow));
+        adjustBatchSize(acquired, batch, maxCount);
+        return acquired;
+    }
+
+    /**
+     * Candidates selected by {@link SkipLockedTriggerDelegate} are row locked, so nodes acquire disjoint triggers
+     * without queueing on the TRIGGER_ACCESS lock, whatever the batch size, unless acquireTriggersWithinLock is set
+     */
+    private List<OperableTrigger> acquire(long noLaterThan, int maxCount, long timeWindow)
+        throws JobPersistenceException {
+        if (!(getDelegate() instanceof SkipLockedTriggerDelegate) || isAcquireTriggersWithinLock()) {
+            return super.acquireNextTriggers(noLaterThan, maxCount, timeWindow);
+        }
+        return executeInNonManagedTXLock(null, conn -> acquireNextTrigger(conn, noLaterThan, maxCount, timeWindow),
+            (conn, result) -> {
+                // Same check as Quartz, the commit went through if a fired trigger record of the result exists
+                Set<String> fireInstanceIds = new HashSet<>();
+                for (FiredTriggerRecord record : selectOwnFiredTriggerRecords(conn)) {
+                    fireInstanceIds.add(record.getFireInstanceId());
+                }
+                for (OperableTrigger trigger : result) {
+                    if (fireInstanceIds.contains(trigger.getFireInstanceId())) {
+                        return true;
+                    }
+                }
+                return false;
+            });
+    }
+
+    @Override
+    public List<TriggerFiredResult> triggersFired(List<OperableTrigger> triggers) throws JobPersistenceException {
+        try {
+            if (getDelegate() instanceof SkipLockedTriggerDelegate) {
+                return fireWithoutLock(triggers);
+            }
+            return super.triggersFired(triggers);
+        } finally {
+            changes.incrementAndGet();
+        }
+    }
+
+    /**
+     * Fires triggers acquired by {@link SkipLockedTriggerDelegate}, which are row locked by the ACQUIRED update.
+     * Firing a job that disallows concurrent execution blocks its other triggers, that still takes the TRIGGER_ACCESS
+     * lock, before any row is touched like Quartz does.
+     */
+    private List<TriggerFiredResult> fireWithoutLock(List<OperableTrigger> triggers) throws JobPersistenceException {
+        boolean[] locked = new boolean[1];
+        try {
+            return executeInNonManagedTXLock(null, conn -> {
+                locked[0] = isAnyJobNonConcurrent(conn, triggers) && getLockHandler().obtainLock(conn, LOCK_TRIGGER_ACCESS);
+                List<TriggerFiredResult> results = new ArrayList<>(triggers.size());
+                for (OperableTrigger trigger : triggers) {
+                    TriggerFiredResult result;
+                    try {
+                        result = new TriggerFiredResult(triggerFired(conn, trigger));
+                    } catch (JobPersistenceException jpe) {
+                        result = new TriggerFiredResult(jpe);
+                    } catch (RuntimeException re) {
+                        result = new TriggerFiredResult(re);
+                    }
+                    results.add(result);
+                }
+                return results;
+            }, (conn, result) -> {
+                // Same check as Quartz, the commit went through if a fired trigger of the result is executing
+                Set<String> executing = new HashSet<>();
+                for (FiredTriggerRecord record : selectOwnFiredTriggerRecords(conn)) {
+                    if (STATE_EXECUTING.equals(record.getFireInstanceState())) {
+                        executing.add(record.getFireInstanceId());
+                    }
+                }
+                for (TriggerFiredResult fired : result) {
+                    TriggerFiredBundle bundle = fired.getTriggerFiredBundle();
+                    if (bundle != null && executing.contains(bundle.getTrigger().getFireInstanceId())) {
+                        return true;
+                    }
+                }
+                return false;
+            });
+        } finally {
+            // Held until the transaction ends, the lock handler only forgets about it here
+            releaseLock(LOCK_TRIGGER_ACCESS, locked[0]);
+        }
+    }
+
+    private boolean isAnyJobNonConcurrent(Connection conn, List<OperableTrigger> triggers) throws JobPersistenceException {
+        Set<JobKey> jobKeys = new HashSet<>();
+        try {
+            for (OperableTrigger trigger : triggers) {
+                if (jobKeys.add(trigger.getJobKey()) && getDelegate().isJobNonConcurrent(conn, trigger.getJobKey())) {
+                    return true;
+                }
+            }
+        } catch (SQLException e) {
+            throw new JobPersistenceException("Couldn't determine job concurrency: " + e.getMessage(), e);
+        }
+        return false;
+    }
+
+    private List<FiredTriggerRecord> selectOwnFiredTriggerRecords(Connection conn) throws JobPersistenceException {
+        try {
+            return getDelegate().selectInstancesFiredTriggerRecords(conn, getInstanceId());
+        } catch (SQLException e) {
+            throw new JobPersistenceException("error validating trigger acquisition", e);
+        }
+    }
+
+    @Override
+    public void releaseAcquiredTrigger(OperableTrigger trigger) {
+        super.releaseAcquiredTrigger(trigger);
+        changes.incrementAndGet();
+    }
+
+    @Override
+    public void triggeredJobComplete(OperableTrigger trigger, JobDetail jobDetail,
+                                     CompletedExecutionInstruction triggerInstCode) {
+        super.triggeredJobComplete(trigger, jobDetail, triggerInstCode);
+        changes.incrementAndGet();
+    }
+
+    @Override
+    protected Object executeInLock(String lockName, TransactionCallback txCallback) throws JobPersistenceException {
+        // Every store, remove, pause and resume goes through here
+        try {
+            return super.executeInLock(lockName, txCallback);
+        } finally {
+            changes.incrementAndGet();
+        }
+    }
+
+    @Override
+    protected void signalSchedulingChangeImmediately(long candidateNewNextFireTime) {
+        // Misfire handling and cluster recovery moved triggers
+        changes.incrementAndGet();
+        super.signalSchedulingChangeImmediately(candidateNewNextFireTime);
+    }
+
+    @Override
+    protected boolean doCheckin() throws JobPersistenceException {
+        // The shared heartbeat keeps the SCHEDULER_STATE row fresh, the first check in still recovers this instance
+        if (sharedClusterHeartbeat && !firstCheckIn && SharedClusterHeartbeat.isRegistered(this)) {
+            return false;
+        }
+        return checkin();
+    }
+
+    /**
+     * Full Quartz check in, updating SCHEDULER_STATE and recovering failed instances
+     */
+    synchronized boolean checkin() throws JobPersistenceException {
+        return super.doCheckin();
+    }
+
+    /**
+     * Called by {@link SharedClusterHeartbeat} after it updated the SCHEDULER_STATE row of this instance
+     */
+    void heartbeat(long checkinTime) {
+        lastCheckin = checkinTime;
+    }
+
+    long getLastCheckin() {
+        return lastCheckin;
+    }
+
+    /**
+     * Called by {@link SharedClusterHeartbeat} when failed instances were seen or the row of this instance is gone
+     */
+    void recover() {
+        try {
+            if (checkin()) {
+                signalSchedulingChangeImmediately(0L);
+            }
+        } catch (JobPersistenceException e) {
+            log.error("Cluster check in of scheduler {} failed", getInstanceName(), e);
+        }
+    }
+
+    /**
+     * Wakes up the scheduler threads of the named scheduler in this JVM, if any, for a trigger due at fireTime
+     */
+    public static void wakeUp(String schedulerName, long fireTime) {
+        Set<QuartzPlusJobStore> stores = STORES.get(schedulerName);
+        if (stores == null) {
+            return;
+        }
+        for (QuartzPlusJobStore store : stores) {
+            // Added by another node, the shared polling snapshot does not know about it yet
+            store.changes.incrementAndGet();
+            store.signaler.signalSchedulingChange(fireTime);
+        }
+    }
+
+    long getChangeCount() {
+        return changes.get();
+    }
+
+    /**
+     * Called by {@link SharedTriggerPoller}, {@code nextFireTime} is null when the lookup failed
+     */
+    void publishNextFireTime(Long nextFireTime, long changeCount) {
+        long now = System.currentTimeMillis();
+        snapshot = nextFireTime != null ? new NextFireSnapshot(nextFireTime, changeCount, now) : null;
+        // Due before the next poll, wake the scheduler thread up, once per fire time: a misfired trigger waiting for
+        // the misfire handler keeps the same earliest fire time in the past
+        if (nextFireTime != null && nextFireTime <= now + sharedPollingIntervalMillis && nextFireTime != signaledFireTime) {
+            signaledFireTime = nextFireTime;
+            signaler.signalSchedulingChange(nextFireTime);
+        }
+    }
+
+    /**
+     * Rate limited acquisitions return nothing while triggers are due, Quartz would then wait idleWaitTime
+     */
+    private void wakeUpAt(long time) {
+        long pending = rateLimitWakeUp.get();
+        if (pending != 0 && pending <= time) {
+            return;
+        }
+        rateLimitWakeUp.set(time);
+        RATE_LIMIT_WAKE_UPS.schedule(() -> {
+            rateLimitWakeUp.compareAndSet(time, 0);
+            signaler.signalSchedulingChange(time);
+        }, Math.max(time - System.currentTimeMillis(), 1L), TimeUnit.MILLISECONDS);
+    }
+
+    private static Map<String, Double> parseRateLimitGroups(String value) throws SchedulerConfigException {
+        Map<String, Double> values = new HashMap<>();
+        if (value == null) {
+            return values;
+        }
+        for (String entry : value.split(",")) {
+            int idx = entry.lastIndexOf(':');
+            if (idx > 0) {
+                String group = entry.substring(0, idx).trim();
+                double permits;
+                try {
+                    permits = Double.parseDouble(entry.substring(idx + 1).trim());
+                } catch (NumberFormatException e) {
+                    throw new SchedulerConfigException("Invalid rate limit of job group " + group + ": " + entry, e);
+                }
+                // A bucket without refill would never have a permit again
+                if (!(permits > 0) || Double.isInfinite(permits)) {
+                    throw new SchedulerConfigException("Rate limit of job group " + group + " must be positive: " + entry);
+                }
+                values.put(group, permits);
+            }
+        }
+        return values;
+    }
+
+    private boolean isDueBySnapshot(long noLaterThan) {
+        NextFireSnapshot current = snapshot;
+        if (current == null || current.changeCount != changes.get()
+            || System.currentTimeMillis() - current.takenAt > 2 * sharedPollingIntervalMillis) {
+            return true;
+        }
+        return current.nextFireTime <= noLaterThan;
+    }
+
+    private List<OperableTrigger> invalidateIfAcquired(List<OperableTrigger> acquired) {
+        if (!acquired.isEmpty()) {
+            changes.incrementAndGet();
+        }
+        return acquired;
+    }
+
+    private void adjustBatchSize(List<OperableTrigger> acquired, int batch, int maxCount) {
+        if (acquired.isEmpty()) {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        long lag = 0;
+        for (OperableTrigger trigger : acquired) {
+            if (trigger.getNextFireTime() != null) {
+                lag = Math.max(lag, now - trigger.getNextFireTime().getTime());
+            }
+        }
+
+        int next = batchSize;
+        if (lag > adaptiveBatchLowLagMillis && acquired.size() >= batch && batch < maxCount) {
+            next = Math.min(batch * 2, maxCount);
+        } else if (lag < adaptiveBatchLowLagMillis && batchSize > 1) {
+            next = batchSize / 2;
+        }
+        if (next != batchSize) {
+            log.debug("Scheduler {} acquisition batch size {} -> {}, fire lag {} ms", getInstanceName(), batchSize, next, lag);
+            batchSize = next;
+        }
+    }
+
+    private static class NextFireSnapshot {
+
+        private final long nextFireTime;
+
+        private final long changeCount;
+
+        private final long takenAt;
+
+        NextFireSnapshot(long nextFireTime, long changeCount, long takenAt) {
+            this.nextFireTime = nextFireTime;
+            this.changeCount = changeCount;
+            this.takenAt = takenAt;
+        }
+    }
+}
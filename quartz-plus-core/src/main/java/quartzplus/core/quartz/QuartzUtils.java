@@ -17,65 +17,161 @@
 package quartzplus.core.quartz;
 
 import cn.hutool.core.util.StrUtil;
+import com.google.common.base.Throwables;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.hash.Hashing;
+import com.google.common.util.concurrent.UncheckedExecutionException;
 import org.quartz.*;
 import org.springframework.context.ApplicationContext;
-import org.springframework.scheduling.quartz.CronTriggerFactoryBean;
-import org.springframework.scheduling.quartz.JobDetailFactoryBean;
 import org.springframework.scheduling.quartz.SchedulerFactoryBean;
-import org.springframework.scheduling.quartz.SimpleTriggerFactoryBean;
 import org.springframework.util.ObjectUtils;
+import quartzplus.core.delay.DelayedJob;
 import quartzplus.core.dto.GroupRequest;
 import quartzplus.core.dto.JobRequest;
 
-import java.text.ParseException;
+import java.nio.charset.StandardCharsets;
 import java.time.ZoneId;
-import java.util.Date;
-import java.util.Map;
+import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.function.Supplier;
 
 import static org.quartz.CronExpression.isValidExpression;
 
 public class QuartzUtils {
 
-    private static final Map<String, SchedulerFactoryBean> schedulerFactoryBeans = new ConcurrentHashMap<>();
+    /**
+     * Priority of triggers created without {@link JobRequest#getPriority()}, 0 like Spring's trigger factory beans
+     * that built them before, rather than {@link org.quartz.Trigger#DEFAULT_PRIORITY}, so that new triggers do not
+     * win ties against stored ones
+     */
+    public static final int DEFAULT_PRIORITY = 0;
+
+    /**
+     * Schedulers by job bean class name, one per shard, supplied once they are initialized
+     */
+    private static final Map<String, Supplier<List<SchedulerFactoryBean>>> schedulerFactoryBeans = new ConcurrentHashMap<>();
+
+    /**
+     * Resolved job classes by name, bounded as job class names come from requests and weak so that class loaders
+     * can still be unloaded
+     */
+    private static final Cache<String, Class<? extends Job>> jobClasses = CacheBuilder.newBuilder()
+        .maximumSize(1024)
+        .weakValues()
+        .build();
 
     public static void addSchedulerFactoryBean(String jobBeanClassName, SchedulerFactoryBean schedulerFactoryBean) {
-        schedulerFactoryBeans.put(jobBeanClassName, schedulerFactoryBean);
+        List<SchedulerFactoryBean> shards = Collections.singletonList(schedulerFactoryBean);
+        schedulerFactoryBeans.put(jobBeanClassName, () -> shards);
+    }
+
+    /**
+     * Register the schedulers of a sharded job class, jobs are routed by {@link #getShard(String, String, int)}
+     */
+    public static void addSchedulerFactoryBeans(String jobBeanClassName, List<SchedulerFactoryBean> shards) {
+        List<SchedulerFactoryBean> registered = Collections.unmodifiableList(new ArrayList<>(shards));
+        schedulerFactoryBeans.put(jobBeanClassName, () -> registered);
+    }
+
+    /**
+     * Register schedulers initialized in the background or on first use, the supplier blocks until they are ready
+     */
+    public static void addSchedulerFactoryBeans(String jobBeanClassName, Supplier<List<SchedulerFactoryBean>> shards) {
+        schedulerFactoryBeans.put(jobBeanClassName, shards);
     }
 
     public static Scheduler getScheduler(JobRequest jobRequest) throws SchedulerException {
-        SchedulerFactoryBean schedulerFactoryBean = schedulerFactoryBeans.get(jobRequest.getJobClass());
-        if (ObjectUtils.isEmpty(schedulerFactoryBean)) {
-            String errMsg = StrUtil.format("Scheduler for job {} not found", jobRequest.getJobClass());
-            throw new SchedulerException(errMsg);
+        List<SchedulerFactoryBean> shards = getSchedulerFactoryBeans(jobRequest.getJobClass());
+        if (shards.size() == 1) {
+            return shards.get(0).getScheduler();
         }
-        return schedulerFactoryBean.getScheduler();
+        return shards.get(getShard(jobRequest.getJobGroup(), jobRequest.getJobName(), shards.size())).getScheduler();
     }
 
+    /**
+     * Scheduler of the group, the first shard for sharded job classes, see {@link #getSchedulers(GroupRequest)}
+     */
     public static Scheduler getScheduler(GroupRequest groupRequest) throws SchedulerException {
-        SchedulerFactoryBean schedulerFactoryBean = schedulerFactoryBeans.get(groupRequest.getJobClass());
-        if (ObjectUtils.isEmpty(schedulerFactoryBean)) {
-            String errMsg = StrUtil.format("Scheduler for job {} not found", groupRequest.getJobClass());
+        return getSchedulerFactoryBeans(groupRequest.getJobClass()).get(0).getScheduler();
+    }
+
+    /**
+     * Schedulers of every shard the jobs of the group may be stored in
+     */
+    public static List<Scheduler> getSchedulers(GroupRequest groupRequest) throws SchedulerException {
+        List<Scheduler> schedulers = new ArrayList<>();
+        for (SchedulerFactoryBean shard : getSchedulerFactoryBeans(groupRequest.getJobClass())) {
+            schedulers.add(shard.getScheduler());
+        }
+        return schedulers;
+    }
+
+    /**
+     * Shard of a job, a consistent hash of its key so that changing the number of shards moves as few jobs as possible
+     */
+    public static int getShard(String jobGroup, String jobName, int shards) {
+        String key = (jobGroup != null ? jobGroup : Scheduler.DEFAULT_GROUP) + "." + jobName;
+        return Hashing.consistentHash(Hashing.murmur3_32_fixed().hashString(key, StandardCharsets.UTF_8), shards);
+    }
+
+    private static List<SchedulerFactoryBean> getSchedulerFactoryBeans(String jobClass) throws SchedulerException {
+        Supplier<List<SchedulerFactoryBean>> supplier = schedulerFactoryBeans.get(jobClass);
+        List<SchedulerFactoryBean> shards = supplier != null ? supplier.get() : null;
+        if (ObjectUtils.isEmpty(shards)) {
+            String errMsg = StrUtil.format("Scheduler for job {} not found", jobClass);
             throw new SchedulerException(errMsg);
         }
-        return schedulerFactoryBean.getScheduler();
+        return shards;
+    }
+
+    /**
+     * Resolve a job class by name, resolved classes are cached
+     */
+    public static Class<? extends Job> getJobClass(String jobClassName) throws ClassNotFoundException {
+        try {
+            return jobClasses.get(jobClassName, () -> Class.forName(jobClassName).asSubclass(Job.class));
+        } catch (ExecutionException | UncheckedExecutionException e) {
+            Throwables.throwIfInstanceOf(e.getCause(), ClassNotFoundException.class);
+            Throwables.throwIfUnchecked(e.getCause());
+            throw new IllegalStateException(e.getCause());
+        }
     }
 
+    /**
+     * Same JobDetail as a JobDetailFactoryBean would build, the context is not needed by the builder
+     */
     public static JobDetail createJob(JobRequest jobRequest, Class<? extends Job> jobClass, ApplicationContext context) {
-        JobDetailFactoryBean factoryBean = new JobDetailFactoryBean();
-        factoryBean.setJobClass(jobClass);
-        factoryBean.setDurability(false);
-        factoryBean.setApplicationContext(context);
-        factoryBean.setName(jobRequest.getJobName());
-        factoryBean.setGroup(jobRequest.getJobGroup());
-        factoryBean.setDescription(jobRequest.getDesc());
-        factoryBean.setRequestsRecovery(true);
+        JobBuilder jobBuilder = JobBuilder.newJob(jobClass)
+            .withIdentity(jobRequest.getJobName(), jobRequest.getJobGroup())
+            .withDescription(jobRequest.getDesc())
+            .storeDurably(false)
+            .requestRecovery(true);
         if (jobRequest.getJobDataMap() != null) {
-            factoryBean.setJobDataMap(jobRequest.getJobDataMap());
+            jobBuilder.usingJobData(jobRequest.getJobDataMap());
         }
+        return jobBuilder.build();
+    }
+
+    /**
+     * Whether the request describes a job run once, which a {@link quartzplus.core.delay.DelayedJobEngine} can take
+     */
+    public static boolean isOneShot(JobRequest jobRequest) {
+        return jobRequest.getCronExpression() == null && jobRequest.getRepeatCount() == 0;
+    }
 
-        factoryBean.afterPropertiesSet();
-        return factoryBean.getObject();
+    /**
+     * One shot job run at startDateAt, or right away if it is not set. The priority of the request is ignored, delayed
+     * jobs due at the same time run in no particular order.
+     */
+    public static DelayedJob createDelayedJob(JobRequest jobRequest) {
+        long fireTime = System.currentTimeMillis();
+        if (!ObjectUtils.isEmpty(jobRequest.getStartDateAt())) {
+            fireTime = jobRequest.getStartDateAt().atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+        }
+        return new DelayedJob(jobRequest.getJobName(), jobRequest.getJobGroup(), jobRequest.getJobClass(),
+            jobRequest.getDesc(), fireTime, jobRequest.getJobDataMap());
     }
 
     public static Trigger createTrigger(JobRequest jobRequest) {
@@ -95,39 +191,51 @@ public class QuartzUtils {
         jobDataMap.put("failCnt", "0");
         jobDataMap.put("stop", "N");
         jobDataMap.put("retry", jobRequest.getRetry());
-        CronTriggerFactoryBean factoryBean = new CronTriggerFactoryBean();
-        factoryBean.setName(jobRequest.getJobName().concat("Trigger"));
-        factoryBean.setGroup(jobRequest.getJobGroup());
-        factoryBean.setCronExpression(jobRequest.getCronExpression());
-        factoryBean.setMisfireInstruction(SimpleTrigger.MISFIRE_INSTRUCTION_FIRE_NOW);
-        factoryBean.setJobDataMap(jobDataMap);
-        try {
-            factoryBean.afterPropertiesSet();
-        } catch (ParseException e) {
-            e.printStackTrace();
-        }
-        return factoryBean.getObject();
+        // FIRE_NOW of SimpleTrigger and FIRE_ONCE_NOW of CronTrigger are the same instruction
+        return TriggerBuilder.newTrigger()
+            .withIdentity(jobRequest.getJobName().concat("Trigger"), jobRequest.getJobGroup())
+            .startAt(new Date())
+            .usingJobData(jobDataMap)
+            .withPriority(getPriority(jobRequest))
+            .withSchedule(CronScheduleBuilder.cronSchedule(jobRequest.getCronExpression())
+                .withMisfireHandlingInstructionFireAndProceed())
+            .build();
     }
 
     private static Trigger createSimpleTrigger(JobRequest jobRequest) {
-        SimpleTriggerFactoryBean factoryBean = new SimpleTriggerFactoryBean();
-        factoryBean.setName(jobRequest.getJobName());
-        factoryBean.setGroup(jobRequest.getJobGroup());
-
+        Date startTime = new Date();
         if (!ObjectUtils.isEmpty(jobRequest.getStartDateAt())) {
-            Date startTime = Date.from(jobRequest.getStartDateAt().atZone(ZoneId.systemDefault()).toInstant());
-            factoryBean.setStartTime(startTime);
+            startTime = Date.from(jobRequest.getStartDateAt().atZone(ZoneId.systemDefault()).toInstant());
         }
 
-        // Use IGNORE strategy: do not modify nextFireTime on misfire, keep the original trigger time
-        // This ensures tasks execute in the original submission order, even if misfire occurs
-        factoryBean.setMisfireInstruction(SimpleTrigger.MISFIRE_INSTRUCTION_IGNORE_MISFIRE_POLICY);
+        SimpleScheduleBuilder scheduleBuilder = SimpleScheduleBuilder.simpleSchedule()
+            .withIntervalInMilliseconds(jobRequest.getRepeatIntervalInSeconds() * 1000) //ms
+            .withRepeatCount(jobRequest.getRepeatCount());
         if (jobRequest.getRepeatIntervalInSeconds() > 0) {
-            factoryBean.setMisfireInstruction(SimpleTrigger.MISFIRE_INSTRUCTION_RESCHEDULE_NOW_WITH_REMAINING_REPEAT_COUNT);
+            scheduleBuilder.withMisfireHandlingInstructionNowWithRemainingCount();
+        } else {
+            // Use IGNORE strategy: do not modify nextFireTime on misfire, keep the original trigger time
+            // This ensures tasks execute in the original submission order, even if misfire occurs
+            scheduleBuilder.withMisfireHandlingInstructionIgnoreMisfires();
+        }
+
+        return TriggerBuilder.newTrigger()
+            .withIdentity(jobRequest.getJobName(), jobRequest.getJobGroup())
+            .startAt(startTime)
+            .withPriority(getPriority(jobRequest))
+            .withSchedule(scheduleBuilder)
+            .build();
+    }
+
+    private static int getPriority(JobRequest jobRequest) {
+        Integer priority = jobRequest.getPriority();
+        if (priority == null) {
+            return DEFAULT_PRIORITY;
+        }
+        // Priority aging brings due triggers forward by their priority, a negative one would push them back
+        if (priority < 0) {
+            throw new IllegalArgumentException("Provided priority " + priority + " is negative");
         }
-        factoryBean.setRepeatInterval(jobRequest.getRepeatIntervalInSeconds() * 1000); //ms
-        factoryBean.setRepeatCount(jobRequest.getRepeatCount());
-        factoryBean.afterPropertiesSet();
-        return factoryBean.getObject();
+        return priority;
     }
 }
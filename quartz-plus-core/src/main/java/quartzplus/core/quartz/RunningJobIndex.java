@@ -0,0 +1,134 @@
+/*
+ * All content copyright unionj-cloud, unless otherwise indicated. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy
+ * of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package quartzplus.core.quartz;
+
+import lombok.extern.slf4j.Slf4j;
+import org.quartz.JobExecutionContext;
+import org.quartz.JobExecutionException;
+import org.quartz.JobKey;
+import org.quartz.JobListener;
+import org.quartz.impl.jdbcjobstore.Constants;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Index of the jobs executing on this node, fed as a job listener so that checking a job is a map lookup instead of
+ * a scan of {@code Scheduler.getCurrentlyExecutingJobs()}.
+ * <p>
+ * In cluster mode the check is answered by one lookup on FIRED_TRIGGERS instead, backed by its
+ * (SCHED_NAME, JOB_NAME, JOB_GROUP) index, and sees the jobs executing on every node. With delayed jobs the EXECUTING
+ * rows of DELAYED_JOBS are looked up in the same statement, by primary key.
+ */
+@Slf4j
+public class RunningJobIndex implements JobListener {
+
+    public static final String NAME = "quartzPlusRunningJobIndex";
+
+    private static final String SELECT_EXECUTING_JOB = "SELECT 1 FROM {0}FIRED_TRIGGERS " +
+        "WHERE SCHED_NAME = ? AND JOB_NAME = ? AND JOB_GROUP = ? AND STATE = ?";
+
+    // Delayed jobs use the same EXECUTING state name as fired triggers
+    private static final String SELECT_EXECUTING_DELAYED_JOB = " UNION ALL SELECT 1 FROM {0}DELAYED_JOBS " +
+        "WHERE SCHED_NAME = ? AND JOB_NAME = ? AND JOB_GROUP = ? AND STATE = ?";
+
+    /**
+     * Executing instances by job, a job allowing concurrent execution can run more than once
+     */
+    private final Map<JobKey, Integer> runningJobs = new ConcurrentHashMap<>();
+
+    private final String schedulerName;
+    private final DataSource dataSource;
+    private final String selectExecutingJob;
+    private final int lookups;
+
+    /**
+     * Local index only
+     */
+    public RunningJobIndex() {
+        this(null, null, null);
+    }
+
+    /**
+     * Cluster wide index reading FIRED_TRIGGERS of the given scheduler
+     */
+    public RunningJobIndex(String schedulerName, DataSource dataSource, String tablePrefix) {
+        this(schedulerName, dataSource, tablePrefix, false);
+    }
+
+    /**
+     * Cluster wide index reading FIRED_TRIGGERS and, if {@code delayedJobs}, DELAYED_JOBS of the given scheduler
+     */
+    public RunningJobIndex(String schedulerName, DataSource dataSource, String tablePrefix, boolean delayedJobs) {
+        this.schedulerName = schedulerName;
+        this.dataSource = dataSource;
+        String sql = delayedJobs ? SELECT_EXECUTING_JOB + SELECT_EXECUTING_DELAYED_JOB : SELECT_EXECUTING_JOB;
+        this.selectExecutingJob = tablePrefix != null ? sql.replace("{0}", tablePrefix) : null;
+        this.lookups = delayedJobs ? 2 : 1;
+    }
+
+    @Override
+    public String getName() {
+        return NAME;
+    }
+
+    public boolean isClusterWide() {
+        return dataSource != null;
+    }
+
+    public boolean isRunning(JobKey jobKey) {
+        if (!isClusterWide()) {
+            return runningJobs.containsKey(jobKey);
+        }
+        try (Connection conn = dataSource.getConnection();
+             PreparedStatement ps = conn.prepareStatement(selectExecutingJob)) {
+            ps.setMaxRows(1);
+            for (int i = 0; i < lookups; i++) {
+                ps.setString(i * 4 + 1, schedulerName);
+                ps.setString(i * 4 + 2, jobKey.getName());
+                ps.setString(i * 4 + 3, jobKey.getGroup());
+                ps.setString(i * 4 + 4, Constants.STATE_EXECUTING);
+            }
+            try (ResultSet rs = ps.executeQuery()) {
+                return rs.next();
+            }
+        } catch (SQLException e) {
+            log.warn("Failed to look up job {} in fired triggers of scheduler {}, answering from this node",
+                jobKey, schedulerName, e);
+            return runningJobs.containsKey(jobKey);
+        }
+    }
+
+    @Override
+    public void jobToBeExecuted(JobExecutionContext context) {
+        runningJobs.merge(context.getJobDetail().getKey(), 1, Integer::sum);
+    }
+
+    @Override
+    public void jobExecutionVetoed(JobExecutionContext context) {
+    }
+
+    @Override
+    public void jobWasExecuted(JobExecutionContext context, JobExecutionException jobException) {
+        runningJobs.computeIfPresent(context.getJobDetail().getKey(), (key, count) -> count > 1 ? count - 1 : null);
+    }
+}
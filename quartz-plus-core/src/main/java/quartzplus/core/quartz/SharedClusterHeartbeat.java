@@ -0,0 +1,200 @@
+/*
+ * All content copyright unionj-cloud, unless otherwise indicated. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy
+ * of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package quartzplus.core.quartz;
+
+import lombok.extern.slf4j.Slf4j;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArraySet;
+
+/**
+ * Single cluster heartbeat thread of a node for the {@link QuartzPlusJobStore}s with a shared cluster heartbeat.
+ * Each pass updates the SCHEDULER_STATE rows of all of them in one transaction per data source and reads the rows of
+ * the other instances once per table prefix to detect failed instances.
+ * <p>
+ * Recovery itself is left to Quartz: a scheduler that has a failed instance, or whose own row is gone, runs its
+ * regular check in, which takes the locks, recovers and writes its row again.
+ */
+@Slf4j
+public final class SharedClusterHeartbeat {
+
+    private static final String UPDATE_SCHEDULER_STATE = "UPDATE {0}SCHEDULER_STATE SET LAST_CHECKIN_TIME = ? " +
+        "WHERE SCHED_NAME = ? AND INSTANCE_NAME = ?";
+
+    private static final String SELECT_SCHEDULER_STATES = "SELECT SCHED_NAME, INSTANCE_NAME, LAST_CHECKIN_TIME, " +
+        "CHECKIN_INTERVAL FROM {0}SCHEDULER_STATE";
+
+    /**
+     * Same grace period as Quartz when deciding that an instance failed
+     */
+    private static final long FAILED_GRACE_MILLIS = 7500L;
+
+    private static final Set<QuartzPlusJobStore> STORES = new CopyOnWriteArraySet<>();
+
+    private static volatile Thread heartbeatThread;
+
+    private SharedClusterHeartbeat() {
+    }
+
+    public static synchronized void register(QuartzPlusJobStore store) {
+        if (store.getLocalDataSource() == null) {
+            log.warn("Scheduler {} has no DataSource, it keeps its own cluster check in", store.getInstanceName());
+            return;
+        }
+        STORES.add(store);
+        if (heartbeatThread == null) {
+            heartbeatThread = new Thread(SharedClusterHeartbeat::run, "quartz-plus-cluster-heartbeat");
+            heartbeatThread.setDaemon(true);
+            heartbeatThread.start();
+        }
+    }
+
+    public static synchronized void unregister(QuartzPlusJobStore store) {
+        STORES.remove(store);
+        if (STORES.isEmpty() && heartbeatThread != null) {
+            heartbeatThread.interrupt();
+            heartbeatThread = null;
+        }
+    }
+
+    public static boolean isRegistered(QuartzPlusJobStore store) {
+        return STORES.contains(store);
+    }
+
+    private static void run() {
+        while (heartbeatThread == Thread.currentThread()) {
+            long interval = STORES.stream()
+                .mapToLong(QuartzPlusJobStore::getClusterCheckinInterval)
+                .min().orElse(7500L);
+            try {
+                Thread.sleep(Math.max(interval, 100L));
+            } catch (InterruptedException e) {
+                return;
+            }
+            try {
+                heartbeat();
+            } catch (RuntimeException e) {
+                log.warn("Shared cluster heartbeat failed", e);
+            }
+        }
+    }
+
+    static void heartbeat() {
+        Map<DataSource, Map<String, List<QuartzPlusJobStore>>> groups = new IdentityHashMap<>();
+        for (QuartzPlusJobStore store : STORES) {
+            groups.computeIfAbsent(store.getLocalDataSource(), ds -> new LinkedHashMap<>())
+                .computeIfAbsent(store.getTablePrefix(), prefix -> new ArrayList<>())
+                .add(store);
+        }
+
+        Set<QuartzPlusJobStore> recover = new LinkedHashSet<>();
+        for (Map.Entry<DataSource, Map<String, List<QuartzPlusJobStore>>> group : groups.entrySet()) {
+            try {
+                heartbeat(group.getKey(), group.getValue(), recover);
+            } catch (SQLException e) {
+                // Fall back to the full check in of every scheduler, which retries and logs on its own
+                log.warn("Shared cluster heartbeat failed, schedulers check in on their own", e);
+                for (List<QuartzPlusJobStore> stores : group.getValue().values()) {
+                    recover.addAll(stores);
+                }
+            }
+        }
+        for (QuartzPlusJobStore store : recover) {
+            store.recover();
+        }
+    }
+
+    private static void heartbeat(DataSource dataSource, Map<String, List<QuartzPlusJobStore>> prefixes,
+                                  Set<QuartzPlusJobStore> recover) throws SQLException {
+        try (Connection conn = dataSource.getConnection()) {
+            boolean autoCommit = conn.getAutoCommit();
+            conn.setAutoCommit(false);
+            try {
+                long now = System.currentTimeMillis();
+                for (Map.Entry<String, List<QuartzPlusJobStore>> prefix : prefixes.entrySet()) {
+                    checkin(conn, prefix.getKey(), prefix.getValue(), now, recover);
+                    findFailedInstances(conn, prefix.getKey(), prefix.getValue(), now, recover);
+                }
+                conn.commit();
+                for (List<QuartzPlusJobStore> stores : prefixes.values()) {
+                    for (QuartzPlusJobStore store : stores) {
+                        store.heartbeat(now);
+                    }
+                }
+            } catch (SQLException e) {
+                conn.rollback();
+                throw e;
+            } finally {
+                conn.setAutoCommit(autoCommit);
+            }
+        }
+    }
+
+    private static void checkin(Connection conn, String tablePrefix, List<QuartzPlusJobStore> stores, long now,
+                                Set<QuartzPlusJobStore> recover) throws SQLException {
+        try (PreparedStatement ps = conn.prepareStatement(UPDATE_SCHEDULER_STATE.replace("{0}", tablePrefix))) {
+            for (QuartzPlusJobStore store : stores) {
+                ps.setLong(1, now);
+                ps.setString(2, store.getInstanceName());
+                ps.setString(3, store.getInstanceId());
+                ps.addBatch();
+            }
+            int[] updated = ps.executeBatch();
+            for (int i = 0; i < updated.length; i++) {
+                if (updated[i] == 0) {
+                    // Removed by another node that took this instance for failed, the full check in inserts it again
+                    recover.add(stores.get(i));
+                }
+            }
+        }
+    }
+
+    private static void findFailedInstances(Connection conn, String tablePrefix, List<QuartzPlusJobStore> stores,
+                                            long now, Set<QuartzPlusJobStore> recover) throws SQLException {
+        Map<String, QuartzPlusJobStore> storesByScheduler = new LinkedHashMap<>();
+        for (QuartzPlusJobStore store : stores) {
+            storesByScheduler.put(store.getInstanceName(), store);
+        }
+        try (Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery(SELECT_SCHEDULER_STATES.replace("{0}", tablePrefix))) {
+            while (rs.next()) {
+                QuartzPlusJobStore store = storesByScheduler.get(rs.getString(1));
+                if (store == null || store.getInstanceId().equals(rs.getString(2))) {
+                    continue;
+                }
+                // Same rule as JobStoreSupport.calcFailedIfAfter
+                long lastCheckin = rs.getLong(3);
+                long failedIfAfter = lastCheckin + Math.max(rs.getLong(4), now - store.getLastCheckin()) + FAILED_GRACE_MILLIS;
+                if (failedIfAfter < now) {
+                    recover.add(store);
+                }
+            }
+        }
+    }
+}
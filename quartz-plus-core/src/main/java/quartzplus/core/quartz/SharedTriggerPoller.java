@@ -0,0 +1,177 @@
+/*
+ * All content copyright unionj-cloud, unless otherwise indicated. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy
+ * of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package quartzplus.core.quartz;
+
+import lombok.extern.slf4j.Slf4j;
+import org.quartz.impl.jdbcjobstore.Constants;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArraySet;
+
+/**
+ * Single polling thread of a node for the {@link QuartzPlusJobStore}s with shared polling enabled. Each pass runs one
+ * query per data source, a UNION ALL over its table prefixes, for the earliest waiting trigger of every scheduler
+ * using them, and hands the result to the stores, instead of every scheduler thread polling its tables on its own.
+ * <p>
+ * Acquisition and execution stay with each scheduler's own thread and thread pool.
+ */
+@Slf4j
+public final class SharedTriggerPoller {
+
+    // Scheduler names are listed so that the (SCHED_NAME, TRIGGER_STATE, NEXT_FIRE_TIME) index of Quartz applies,
+    // {2} is the position of the table prefix in the UNION ALL
+    private static final String SELECT_NEXT_FIRE_TIMES = "SELECT {2}, SCHED_NAME, MIN(NEXT_FIRE_TIME) FROM {0}TRIGGERS " +
+        "WHERE SCHED_NAME IN ({1}) AND TRIGGER_STATE = ? GROUP BY SCHED_NAME";
+
+    /**
+     * Quartz's default {@code org.quartz.scheduler.idleWaitTime}, polling more often than that would query more than
+     * the scheduler threads did on their own
+     */
+    public static final long DEFAULT_INTERVAL_MILLIS = 30000L;
+
+    private static final Set<QuartzPlusJobStore> STORES = new CopyOnWriteArraySet<>();
+
+    private static volatile Thread pollerThread;
+
+    private SharedTriggerPoller() {
+    }
+
+    public static synchronized void register(QuartzPlusJobStore store) {
+        if (store.getLocalDataSource() == null) {
+            log.warn("Scheduler {} has no DataSource, shared polling is disabled for it", store.getInstanceName());
+            return;
+        }
+        STORES.add(store);
+        if (pollerThread == null) {
+            pollerThread = new Thread(SharedTriggerPoller::run, "quartz-plus-shared-poller");
+            pollerThread.setDaemon(true);
+            pollerThread.start();
+        }
+    }
+
+    public static synchronized void unregister(QuartzPlusJobStore store) {
+        STORES.remove(store);
+        if (STORES.isEmpty() && pollerThread != null) {
+            pollerThread.interrupt();
+            pollerThread = null;
+        }
+    }
+
+    private static void run() {
+        while (pollerThread == Thread.currentThread()) {
+            try {
+                poll();
+            } catch (RuntimeException e) {
+                log.warn("Shared trigger polling failed", e);
+            }
+            long interval = STORES.stream()
+                .mapToLong(QuartzPlusJobStore::getSharedPollingIntervalMillis)
+                .min().orElse(DEFAULT_INTERVAL_MILLIS);
+            try {
+                Thread.sleep(Math.max(interval, 10L));
+            } catch (InterruptedException e) {
+                return;
+            }
+        }
+    }
+
+    static void poll() {
+        // Stores sharing a data source are served by one query
+        Map<DataSource, Map<String, List<QuartzPlusJobStore>>> groups = new IdentityHashMap<>();
+        for (QuartzPlusJobStore store : STORES) {
+            groups.computeIfAbsent(store.getLocalDataSource(), ds -> new LinkedHashMap<>())
+                .computeIfAbsent(store.getTablePrefix(), prefix -> new ArrayList<>())
+                .add(store);
+        }
+        for (Map.Entry<DataSource, Map<String, List<QuartzPlusJobStore>>> group : groups.entrySet()) {
+            poll(group.getKey(), group.getValue());
+        }
+    }
+
+    private static void poll(DataSource dataSource, Map<String, List<QuartzPlusJobStore>> storesByPrefix) {
+        // Taken before the query, a change made meanwhile makes the store ignore this snapshot
+        Map<QuartzPlusJobStore, Long> changeCounts = new HashMap<>();
+        for (List<QuartzPlusJobStore> stores : storesByPrefix.values()) {
+            for (QuartzPlusJobStore store : stores) {
+                changeCounts.put(store, store.getChangeCount());
+            }
+        }
+
+        List<String> tablePrefixes = new ArrayList<>(storesByPrefix.keySet());
+        List<String> parameters = new ArrayList<>();
+        StringBuilder sql = new StringBuilder();
+        for (int i = 0; i < tablePrefixes.size(); i++) {
+            Set<String> schedulerNames = new LinkedHashSet<>();
+            for (QuartzPlusJobStore store : storesByPrefix.get(tablePrefixes.get(i))) {
+                schedulerNames.add(store.getInstanceName());
+            }
+            if (i > 0) {
+                sql.append(" UNION ALL ");
+            }
+            sql.append(SELECT_NEXT_FIRE_TIMES.replace("{0}", tablePrefixes.get(i))
+                .replace("{1}", String.join(", ", Collections.nCopies(schedulerNames.size(), "?")))
+                .replace("{2}", String.valueOf(i)));
+            parameters.addAll(schedulerNames);
+            parameters.add(Constants.STATE_WAITING);
+        }
+
+        List<Map<String, Long>> nextFireTimes = new ArrayList<>();
+        for (int i = 0; i < tablePrefixes.size(); i++) {
+            nextFireTimes.add(new HashMap<>());
+        }
+        try (Connection conn = dataSource.getConnection();
+             PreparedStatement ps = conn.prepareStatement(sql.toString())) {
+            for (int i = 0; i < parameters.size(); i++) {
+                ps.setString(i + 1, parameters.get(i));
+            }
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    long nextFireTime = rs.getLong(3);
+                    if (!rs.wasNull()) {
+                        nextFireTimes.get(rs.getInt(1)).put(rs.getString(2), nextFireTime);
+                    }
+                }
+            }
+        } catch (SQLException e) {
+            log.warn("Failed to poll next fire times of table prefixes {}, schedulers poll on their own", tablePrefixes, e);
+            for (Map.Entry<QuartzPlusJobStore, Long> store : changeCounts.entrySet()) {
+                store.getKey().publishNextFireTime(null, store.getValue());
+            }
+            return;
+        }
+
+        for (int i = 0; i < tablePrefixes.size(); i++) {
+            for (QuartzPlusJobStore store : storesByPrefix.get(tablePrefixes.get(i))) {
+                Long nextFireTime = nextFireTimes.get(i).get(store.getInstanceName());
+                store.publishNextFireTime(nextFireTime != null ? nextFireTime : Long.MAX_VALUE, changeCounts.get(store));
+            }
+        }
+    }
+}
@@ -0,0 +1,74 @@
+/*
+ * All content copyright unionj-cloud, unless otherwise indicated. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy
+ * of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package quartzplus.core.quartz;
+
+import org.quartz.impl.jdbcjobstore.NoSuchDelegateException;
+import org.quartz.spi.ClassLoadHelper;
+import org.slf4j.Logger;
+
+/**
+ * Locks the acquired candidates with {@code SELECT ... FOR UPDATE SKIP LOCKED} (MySQL 8, PostgreSQL 9.5+), so that
+ * nodes scanning at the same time get disjoint trigger sets instead of queueing on the TRIGGER_ACCESS row of
+ * LOCKS. The WAITING to ACQUIRED transition done by the job store stays conditional on the trigger state, a
+ * candidate changed by another node in between is simply skipped.
+ * <p>
+ * {@link QuartzPlusJobStore} acquires and fires the triggers without the TRIGGER_ACCESS lock whatever
+ * {@code org.quartz.scheduler.batchTriggerAcquisitionMaxCount} is, unless
+ * {@code org.quartz.jobStore.acquireTriggersWithinLock} is set. Firing a job that disallows concurrent execution still
+ * takes it, since its other triggers get blocked. With other job stores, Quartz only skips the lock for batches of one.
+ * <p>
+ * Group balancing is off by default and can be turned on with {@code groupBalance=true}, the per group limits are then
+ * read from FIRED_TRIGGERS without locking, so concurrent nodes may overshoot a limit by the triggers they acquire in
+ * the same instant. Fair acquisition ranks rows with a window function, which cannot be locked, and is rejected.
+ */
+public class SkipLockedTriggerDelegate extends GroupBalanceTriggerDelegate {
+
+    public static final String SETTING_LOCK_CLAUSE = "lockClause";
+
+    /**
+     * Appended to the candidate query, H2 2.x takes {@code FOR UPDATE SKIP LOCKED} without the table name
+     */
+    protected String lockClause = "FOR UPDATE OF qt SKIP LOCKED";
+
+    public SkipLockedTriggerDelegate() {
+        groupBalance = false;
+    }
+
+    @Override
+    public void initialize(Logger logger, String tablePrefix, String schedName, String instanceId,
+                           ClassLoadHelper classLoadHelper, boolean useProperties, String initString)
+        throws NoSuchDelegateException {
+        super.initialize(logger, tablePrefix, schedName, instanceId, classLoadHelper, useProperties, initString);
+        if (groupBalance && fairGroupAcquisition) {
+            throw new NoSuchDelegateException("SkipLockedTriggerDelegate does not support fair group acquisition");
+        }
+    }
+
+    @Override
+    protected boolean applySetting(String name, String value) throws NoSuchDelegateException {
+        if (SETTING_LOCK_CLAUSE.equals(name)) {
+            lockClause = value;
+            return true;
+        }
+        return super.applySetting(name, value);
+    }
+
+    @Override
+    protected String getSelectNextTriggerToAcquireSql() {
+        return super.getSelectNextTriggerToAcquireSql() + " " + lockClause;
+    }
+}
@@ -0,0 +1,88 @@
+/*
+ * All content copyright unionj-cloud, unless otherwise indicated. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy
+ * of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package quartzplus.core.quartz;
+
+/**
+ * Token bucket refilled at a fixed rate up to its capacity. Not thread-safe, {@link TriggerRateLimiter} guards it.
+ */
+final class TokenBucket {
+
+    private final double permitsPerMillis;
+
+    private final double capacity;
+
+    private double tokens;
+
+    private long lastRefill;
+
+    TokenBucket(double permitsPerSecond, double burstSeconds, long now) {
+        this.permitsPerMillis = permitsPerSecond / 1000d;
+        this.capacity = Math.max(1d, permitsPerSecond * burstSeconds);
+        this.tokens = capacity;
+        this.lastRefill = now;
+    }
+
+    double getTokens() {
+        return tokens;
+    }
+
+    long getLastRefill() {
+        return lastRefill;
+    }
+
+    /**
+     * Restores the state kept in the RATE_LIMITS table
+     */
+    void restore(double tokens, long lastRefill) {
+        this.tokens = Math.min(tokens, capacity);
+        this.lastRefill = lastRefill;
+    }
+
+    /**
+     * @return the permits taken, at most the requested ones
+     */
+    int take(int permits, long now) {
+        refill(now);
+        int taken = (int) Math.min(permits, Math.floor(tokens));
+        tokens -= taken;
+        return taken;
+    }
+
+    /**
+     * @return the permits {@link #take(int, long)} would take now, at most the requested ones
+     */
+    int available(int permits, long now) {
+        refill(now);
+        return (int) Math.min(permits, Math.floor(tokens));
+    }
+
+    void giveBack(int permits) {
+        tokens = Math.min(capacity, tokens + permits);
+    }
+
+    long nextPermitTime(long now) {
+        refill(now);
+        return tokens >= 1 ? now : now + (long) Math.ceil((1 - tokens) / permitsPerMillis);
+    }
+
+    private void refill(long now) {
+        if (now > lastRefill) {
+            tokens = Math.min(capacity, tokens + (now - lastRefill) * permitsPerMillis);
+            lastRefill = now;
+        }
+    }
+}
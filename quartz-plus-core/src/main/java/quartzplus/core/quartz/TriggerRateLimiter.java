@@ -0,0 +1,363 @@
+/*
+ * All content copyright unionj-cloud, unless otherwise indicated. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy
+ * of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package quartzplus.core.quartz;
+
+import org.quartz.JobPersistenceException;
+import org.quartz.spi.OperableTrigger;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Savepoint;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+/**
+ * Token buckets limiting the triggers a scheduler acquires per second, overall and per job group.
+ * <p>
+ * Buckets live in memory, so each node has the full budget, or with a DataSource in the {@code <table prefix>RATE_LIMITS}
+ * table (see quartzplus/core/sql/rate_limits.sql), where their rows are locked while taking permits so that the
+ * budget is shared by every node of the cluster. Permits are only charged for triggers actually acquired, in one
+ * transaction per acquisition, the table is not touched when nothing was acquired.
+ */
+final class TriggerRateLimiter {
+
+    static final String SCHEDULER_BUCKET = "*";
+
+    private static final String GROUP_BUCKET_PREFIX = "group:";
+
+    private static final String SELECT_BUCKET_FOR_UPDATE = "SELECT TOKENS, LAST_REFILL FROM {0}RATE_LIMITS " +
+        "WHERE SCHED_NAME = ? AND BUCKET_NAME = ? FOR UPDATE";
+
+    private static final String INSERT_BUCKET = "INSERT INTO {0}RATE_LIMITS (SCHED_NAME, BUCKET_NAME, TOKENS, LAST_REFILL) " +
+        "VALUES (?, ?, ?, ?)";
+
+    private static final String UPDATE_BUCKET = "UPDATE {0}RATE_LIMITS SET TOKENS = ?, LAST_REFILL = ? " +
+        "WHERE SCHED_NAME = ? AND BUCKET_NAME = ?";
+
+    private final String schedulerName;
+
+    private final String tablePrefix;
+
+    /**
+     * Null unless the buckets are shared through the RATE_LIMITS table
+     */
+    private final DataSource dataSource;
+
+    private final double permitsPerSecond;
+
+    private final Map<String, Double> groupPermitsPerSecond;
+
+    private final double burstSeconds;
+
+    /**
+     * In memory buckets, guarded by this
+     */
+    private final Map<String, TokenBucket> buckets = new HashMap<>();
+
+    private long nextPermitTime;
+
+    /**
+     * When the overall budget seen exhausted last by {@link #admit(List)} has a permit again, clustered mode only
+     */
+    private long overallRefill;
+
+    /**
+     * Job groups seen without permits by {@link #admit(List)}, with the time their bucket has one again
+     */
+    private final Map<String, Long> exhaustedGroups = new HashMap<>();
+
+    /**
+     * @param permitsPerSecond 0 or less for no overall limit
+     */
+    TriggerRateLimiter(String schedulerName, String tablePrefix, DataSource dataSource, double permitsPerSecond,
+                       Map<String, Double> groupPermitsPerSecond, double burstSeconds) {
+        this.schedulerName = schedulerName;
+        this.tablePrefix = tablePrefix;
+        this.dataSource = dataSource;
+        this.permitsPerSecond = permitsPerSecond;
+        this.groupPermitsPerSecond = groupPermitsPerSecond;
+        this.burstSeconds = burstSeconds;
+    }
+
+    /**
+     * How many of maxCount triggers are worth acquiring, without taking permits. In memory, this is what the overall
+     * budget holds; in clustered mode, maxCount unless this node last saw the budget exhausted.
+     *
+     * @return 0 when the budget is exhausted until {@link #getNextPermitTime()}
+     */
+    synchronized int available(int maxCount, long now) {
+        if (permitsPerSecond <= 0) {
+            return maxCount;
+        }
+        if (dataSource != null) {
+            if (overallRefill > now) {
+                nextPermitTime = overallRefill;
+                return 0;
+            }
+            return maxCount;
+        }
+        TokenBucket bucket = buckets.computeIfAbsent(SCHEDULER_BUCKET,
+            key -> new TokenBucket(permitsPerSecond, burstSeconds, now));
+        int available = bucket.available(maxCount, now);
+        if (available == 0) {
+            nextPermitTime = bucket.nextPermitTime(now);
+        }
+        return available;
+    }
+
+    /**
+     * Takes a permit from the overall budget and from the budget of the job group of each acquired trigger
+     *
+     * @return the refused triggers, to be released, they are due again at {@link #getNextPermitTime()}
+     */
+    synchronized List<OperableTrigger> admit(List<OperableTrigger> acquired) throws JobPersistenceException {
+        Collection<String> names = new TreeSet<>();
+        for (OperableTrigger trigger : acquired) {
+            String group = trigger.getJobKey().getGroup();
+            if (groupPermitsPerSecond.containsKey(group)) {
+                names.add(GROUP_BUCKET_PREFIX + group);
+            }
+        }
+        if (permitsPerSecond > 0 && !acquired.isEmpty()) {
+            names.add(SCHEDULER_BUCKET);
+        }
+        if (names.isEmpty()) {
+            return Collections.emptyList();
+        }
+
+        long now = System.currentTimeMillis();
+        List<OperableTrigger> refused = new ArrayList<>();
+        try (Buckets transaction = open(names, now)) {
+            TokenBucket overall = transaction.get(SCHEDULER_BUCKET);
+            long next = Long.MAX_VALUE;
+            for (OperableTrigger trigger : acquired) {
+                String group = trigger.getJobKey().getGroup();
+                TokenBucket bucket = transaction.get(GROUP_BUCKET_PREFIX + group);
+                if (bucket != null && bucket.take(1, now) == 0) {
+                    refused.add(trigger);
+                    next = Math.min(next, bucket.nextPermitTime(now));
+                } else if (overall != null && overall.take(1, now) == 0) {
+                    if (bucket != null) {
+                        bucket.giveBack(1);
+                    }
+                    refused.add(trigger);
+                    next = Math.min(next, overall.nextPermitTime(now));
+                }
+                if (bucket != null) {
+                    long refill = bucket.nextPermitTime(now);
+                    if (refill > now) {
+                        exhaustedGroups.put(group, refill);
+                    } else {
+                        exhaustedGroups.remove(group);
+                    }
+                }
+            }
+            transaction.commit();
+            if (overall != null && dataSource != null) {
+                overallRefill = overall.nextPermitTime(now);
+            }
+            if (!refused.isEmpty()) {
+                nextPermitTime = next;
+            }
+        }
+        return refused;
+    }
+
+    /**
+     * Job groups without permits at the given time, by the time they have one again. In clustered mode, this is
+     * what this node saw last, a group drained by other nodes is only known once one of its triggers is refused.
+     */
+    synchronized Map<String, Long> getExhaustedGroups(long now) {
+        if (exhaustedGroups.isEmpty()) {
+            return Collections.emptyMap();
+        }
+        exhaustedGroups.values().removeIf(refill -> refill <= now);
+        return new HashMap<>(exhaustedGroups);
+    }
+
+    /**
+     * When the budget that was exhausted last has a permit again
+     */
+    synchronized long getNextPermitTime() {
+        return nextPermitTime;
+    }
+
+    private double getPermitsPerSecond(String bucketName) {
+        return SCHEDULER_BUCKET.equals(bucketName) ? permitsPerSecond
+            : groupPermitsPerSecond.get(bucketName.substring(GROUP_BUCKET_PREFIX.length()));
+    }
+
+    private Buckets open(Collection<String> names, long now) throws JobPersistenceException {
+        if (dataSource == null) {
+            Map<String, TokenBucket> local = new HashMap<>();
+            for (String name : names) {
+                local.put(name, buckets.computeIfAbsent(name, key -> new TokenBucket(getPermitsPerSecond(key), burstSeconds, now)));
+            }
+            return new Buckets(local, null);
+        }
+        try {
+            return openShared(names, now);
+        } catch (SQLException e) {
+            throw new JobPersistenceException("Couldn't take rate limit permits of scheduler " + schedulerName + ": " + e.getMessage(), e);
+        }
+    }
+
+    private Buckets openShared(Collection<String> names, long now) throws SQLException {
+        Connection conn = dataSource.getConnection();
+        try {
+            conn.setAutoCommit(false);
+            // Locked in name order, so that nodes never wait on each other in a cycle
+            Map<String, TokenBucket> shared = new TreeMap<>();
+            for (String name : new TreeSet<>(names)) {
+                TokenBucket bucket = new TokenBucket(getPermitsPerSecond(name), burstSeconds, now);
+                if (!selectForUpdate(conn, name, bucket) && !insert(conn, name, bucket)
+                    && !selectForUpdate(conn, name, bucket)) {
+                    throw new SQLException("Rate limit bucket " + name + " of scheduler " + schedulerName + " disappeared");
+                }
+                shared.put(name, bucket);
+            }
+            return new Buckets(shared, conn);
+        } catch (SQLException | RuntimeException e) {
+            rollbackAndClose(conn);
+            throw e;
+        }
+    }
+
+    private boolean selectForUpdate(Connection conn, String name, TokenBucket bucket) throws SQLException {
+        try (PreparedStatement ps = conn.prepareStatement(SELECT_BUCKET_FOR_UPDATE.replace("{0}", tablePrefix))) {
+            ps.setString(1, schedulerName);
+            ps.setString(2, name);
+            try (ResultSet rs = ps.executeQuery()) {
+                if (!rs.next()) {
+                    return false;
+                }
+                bucket.restore(rs.getDouble(1), rs.getLong(2));
+                return true;
+            }
+        }
+    }
+
+    /**
+     * @return false if another node inserted the bucket first, it is then selected again
+     */
+    private boolean insert(Connection conn, String name, TokenBucket bucket) throws SQLException {
+        // PostgreSQL aborts the whole transaction on a failed statement, unless rolled back to a savepoint
+        Savepoint savepoint = conn.setSavepoint();
+        try (PreparedStatement ps = conn.prepareStatement(INSERT_BUCKET.replace("{0}", tablePrefix))) {
+            ps.setString(1, schedulerName);
+            ps.setString(2, name);
+            ps.setDouble(3, bucket.getTokens());
+            ps.setLong(4, bucket.getLastRefill());
+            ps.executeUpdate();
+        } catch (SQLException e) {
+            // Integrity constraint violation class
+            if (e.getSQLState() == null || !e.getSQLState().startsWith("23")) {
+                throw e;
+            }
+            conn.rollback(savepoint);
+            return false;
+        }
+        releaseQuietly(conn, savepoint);
+        return true;
+    }
+
+    private static void releaseQuietly(Connection conn, Savepoint savepoint) {
+        try {
+            conn.releaseSavepoint(savepoint);
+        } catch (SQLException ignored) {
+            // Oracle does not release savepoints, they end with the transaction
+        }
+    }
+
+    private static void rollbackAndClose(Connection conn) {
+        try {
+            conn.rollback();
+        } catch (SQLException ignored) {
+        }
+        try {
+            conn.setAutoCommit(true);
+            conn.close();
+        } catch (SQLException ignored) {
+        }
+    }
+
+    /**
+     * Buckets of one operation, with the connection holding their row locks when shared
+     */
+    private class Buckets implements AutoCloseable {
+
+        private final Map<String, TokenBucket> buckets;
+
+        private final Connection conn;
+
+        private boolean committed;
+
+        Buckets(Map<String, TokenBucket> buckets, Connection conn) {
+            this.buckets = buckets;
+            this.conn = conn;
+        }
+
+        TokenBucket get(String name) {
+            return buckets.get(name);
+        }
+
+        void commit() throws JobPersistenceException {
+            if (conn == null) {
+                return;
+            }
+            try (PreparedStatement ps = conn.prepareStatement(UPDATE_BUCKET.replace("{0}", tablePrefix))) {
+                for (Map.Entry<String, TokenBucket> bucket : buckets.entrySet()) {
+                    ps.setDouble(1, bucket.getValue().getTokens());
+                    ps.setLong(2, bucket.getValue().getLastRefill());
+                    ps.setString(3, schedulerName);
+                    ps.setString(4, bucket.getKey());
+                    ps.addBatch();
+                }
+                ps.executeBatch();
+                conn.commit();
+                committed = true;
+            } catch (SQLException e) {
+                throw new JobPersistenceException("Couldn't update rate limits of scheduler " + schedulerName + ": " + e.getMessage(), e);
+            }
+        }
+
+        @Override
+        public void close() {
+            if (conn == null) {
+                return;
+            }
+            if (committed) {
+                try {
+                    conn.setAutoCommit(true);
+                    conn.close();
+                } catch (SQLException ignored) {
+                }
+            } else {
+                rollbackAndClose(conn);
+            }
+        }
+    }
+}
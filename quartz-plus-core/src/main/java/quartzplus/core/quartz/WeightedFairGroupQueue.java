@@ -0,0 +1,87 @@
+/*
+ * All content copyright unionj-cloud, unless otherwise indicated. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy
+ * of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package quartzplus.core.quartz;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Start-time fair queuing over trigger groups. Every acquired trigger advances its group's finish tag by
+ * {@code 1 / weight}, the group with the smallest start tag is served next. Start tags never fall behind the
+ * current virtual time, so a group returning from idle does not get to spend credit it saved up meanwhile.
+ * <p>
+ * Not thread safe, callers synchronize on the instance.
+ */
+public class WeightedFairGroupQueue {
+
+    private static final int DEFAULT_WEIGHT = 1;
+
+    /**
+     * Finish tags are pruned once this many groups are tracked
+     */
+    private static final int MAX_TRACKED_GROUPS = 1024;
+
+    private final Map<String, Integer> weights;
+
+    private final Map<String, Double> finishTags = new HashMap<>();
+
+    private double virtualTime;
+
+    public WeightedFairGroupQueue(Map<String, Integer> weights) {
+        this.weights = weights;
+    }
+
+    /**
+     * Returns the group to serve next, ties go to the group iterated first
+     */
+    public String next(Collection<String> groups) {
+        String next = null;
+        double nextStart = Double.MAX_VALUE;
+        for (String group : groups) {
+            double start = startTag(group);
+            if (start < nextStart) {
+                next = group;
+                nextStart = start;
+            }
+        }
+        return next;
+    }
+
+    /**
+     * Accounts one acquired trigger to the group
+     */
+    public void charge(String group) {
+        double start = startTag(group);
+        virtualTime = start;
+        finishTags.put(group, start + 1.0 / weight(group));
+        if (finishTags.size() > MAX_TRACKED_GROUPS) {
+            // Tags at or behind the virtual time are equivalent to no tag at all
+            finishTags.values().removeIf(finishTag -> finishTag <= virtualTime);
+        }
+    }
+
+    private double startTag(String group) {
+        Double finishTag = finishTags.get(group);
+        return finishTag != null ? Math.max(finishTag, virtualTime) : virtualTime;
+    }
+
+    private int weight(String group) {
+        Integer weight = weights.get(group);
+        return weight != null && weight > 0 ? weight : DEFAULT_WEIGHT;
+    }
+}
@@ -22,6 +22,10 @@ import org.quartz.Trigger;
 import quartzplus.core.dto.GroupRequest;
 import quartzplus.core.dto.JobRequest;
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
 public interface QuartzPlusBaseService {
 
     /**
@@ -29,6 +33,18 @@ public interface QuartzPlusBaseService {
      */
     boolean addScheduleJob(JobRequest jobRequest);
 
+    /**
+     * Add scheduled jobs in bulk, returns one result per request in iteration order. Adds them one by one unless the
+     * implementation batches them
+     */
+    default List<Boolean> addScheduleJobs(Collection<JobRequest> jobRequests) {
+        List<Boolean> results = new ArrayList<>(jobRequests.size());
+        for (JobRequest jobRequest : jobRequests) {
+            results.add(addScheduleJob(jobRequest));
+        }
+        return results;
+    }
+
     /**
      * Update scheduled job
      */
@@ -55,7 +71,7 @@ public interface QuartzPlusBaseService {
     boolean immediatelyJob(JobRequest jobRequest);
 
     /**
-     * Check if job is running
+     * Check if job (name and group) is running, on this node or, with cluster wide running job checks, on any node
      */
     boolean isJobRunning(JobRequest jobRequest);
 
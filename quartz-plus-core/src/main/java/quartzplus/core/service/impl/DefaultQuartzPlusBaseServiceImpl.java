@@ -19,23 +19,43 @@ package quartzplus.core.service.impl;
 import lombok.RequiredArgsConstructor;
 import lombok.SneakyThrows;
 import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.collections4.ListUtils;
 import org.quartz.*;
 import org.quartz.impl.matchers.GroupMatcher;
 import org.springframework.context.ApplicationContext;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import quartzplus.core.delay.DelayedJob;
+import quartzplus.core.delay.DelayedJobEngine;
 import quartzplus.core.dto.GroupRequest;
 import quartzplus.core.dto.JobRequest;
 import quartzplus.core.quartz.QuartzUtils;
+import quartzplus.core.quartz.RunningJobIndex;
 import quartzplus.core.service.QuartzPlusBaseService;
+import quartzplus.core.wakeup.WakeUpChannel;
 
-import java.util.Date;
-import java.util.List;
+import java.util.*;
 
 import static quartzplus.core.quartz.QuartzUtils.getScheduler;
+import static quartzplus.core.quartz.QuartzUtils.getSchedulers;
 
 @Slf4j
 @RequiredArgsConstructor
 public class DefaultQuartzPlusBaseServiceImpl implements QuartzPlusBaseService {
 
+    /**
+     * Max number of jobs stored by one scheduleJobs call, i.e. in one lock acquisition and transaction
+     */
+    private static final int ADD_SCHEDULE_JOBS_CHUNK_SIZE = 500;
+
+    /**
+     * Triggers due within this time are announced on the WakeUpChannel, later ones are found by regular polling
+     * (Quartz's default idleWaitTime is 30 seconds)
+     */
+    private static final long WAKE_UP_AHEAD_MILLIS = 30_000L;
+
     private final ApplicationContext context;
 
     @Override
@@ -44,11 +64,21 @@ public class DefaultQuartzPlusBaseServiceImpl implements QuartzPlusBaseService {
         Scheduler scheduler = getScheduler(jobRequest);
 
         try {
-            Class<Job> jobClass = (Class<Job>) Class.forName(jobRequest.getJobClass());
-            JobDetail jobDetail = createJob(jobRequest, jobClass, context);
-            Trigger trigger = createTrigger(jobRequest);
+            Class<? extends Job> jobClass = QuartzUtils.getJobClass(jobRequest.getJobClass());
+            DelayedJobEngine delayedJobEngine = getDelayedJobEngine(scheduler, jobRequest);
+            if (delayedJobEngine != null) {
+                DelayedJob delayedJob = QuartzUtils.createDelayedJob(jobRequest);
+                if (!delayedJobEngine.schedule(Collections.singletonList(delayedJob))[0]) {
+                    log.warn("Delayed job {} already exists in scheduler {}", delayedJob.getKey(), scheduler.getSchedulerName());
+                    return false;
+                }
+            } else {
+                JobDetail jobDetail = createJob(jobRequest, jobClass, context);
+                Trigger trigger = createTrigger(jobRequest);
 
-            scheduler.scheduleJob(jobDetail, trigger);
+                scheduler.scheduleJob(jobDetail, trigger);
+                wakeUp(scheduler, trigger.getNextFireTime());
+            }
 
             jobRequest.setSchedName(scheduler.getSchedulerName());
 
@@ -63,16 +93,196 @@ public class DefaultQuartzPlusBaseServiceImpl implements QuartzPlusBaseService {
         }
     }
 
+    @Override
+    public List<Boolean> addScheduleJobs(Collection<JobRequest> jobRequests) {
+        List<JobRequest> requests = new ArrayList<>(jobRequests);
+        Boolean[] results = new Boolean[requests.size()];
+        Arrays.fill(results, Boolean.FALSE);
+
+        // Group requests by target scheduler, each scheduler stores its chunks through its own job store
+        Map<Scheduler, List<Integer>> requestsByScheduler = new LinkedHashMap<>();
+        for (int i = 0; i < requests.size(); i++) {
+            try {
+                requestsByScheduler.computeIfAbsent(getScheduler(requests.get(i)), k -> new ArrayList<>()).add(i);
+            } catch (SchedulerException e) {
+                log.error(e.getMessage(), e);
+            }
+        }
+
+        TransactionTemplate transactionTemplate = createTransactionTemplate();
+        requestsByScheduler.forEach((scheduler, indexes) -> {
+            for (List<Integer> chunk : ListUtils.partition(indexes, ADD_SCHEDULE_JOBS_CHUNK_SIZE)) {
+                addScheduleJobChunk(scheduler, requests, chunk, results, transactionTemplate);
+            }
+        });
+        return Arrays.asList(results);
+    }
+
+    @SuppressWarnings("unchecked")
+    private void addScheduleJobChunk(Scheduler scheduler, List<JobRequest> requests, List<Integer> chunk,
+                                     Boolean[] results, TransactionTemplate transactionTemplate) {
+        Map<JobDetail, Set<? extends Trigger>> triggersAndJobs = new LinkedHashMap<>();
+        List<Integer> prepared = new ArrayList<>(chunk.size());
+        List<DelayedJob> delayedJobs = new ArrayList<>();
+        List<Integer> delayed = new ArrayList<>();
+        for (Integer index : chunk) {
+            JobRequest jobRequest = requests.get(index);
+            try {
+                Class<? extends Job> jobClass = QuartzUtils.getJobClass(jobRequest.getJobClass());
+                if (getDelayedJobEngine(scheduler, jobRequest) != null) {
+                    delayedJobs.add(QuartzUtils.createDelayedJob(jobRequest));
+                    delayed.add(index);
+                    continue;
+                }
+                JobDetail jobDetail = createJob(jobRequest, jobClass, context);
+                if (triggersAndJobs.containsKey(jobDetail)) {
+                    log.warn("Duplicate job {} in bulk request, skipped", jobDetail.getKey());
+                    continue;
+                }
+                triggersAndJobs.put(jobDetail, Collections.singleton(createTrigger(jobRequest)));
+                prepared.add(index);
+            } catch (Exception e) {
+                log.error(e.getMessage(), e);
+            }
+        }
+        if (!delayedJobs.isEmpty()) {
+            addDelayedJobs(scheduler, delayedJobs, requests, delayed, results);
+        }
+        if (prepared.isEmpty()) {
+            return;
+        }
+
+        try {
+            String schedulerName = scheduler.getSchedulerName();
+            if (transactionTemplate != null) {
+                // Quartz statements join the surrounding transaction, so the whole chunk is committed once
+                transactionTemplate.executeWithoutResult(status -> scheduleJobs(scheduler, triggersAndJobs));
+            } else {
+                scheduler.scheduleJobs(triggersAndJobs, false);
+            }
+            wakeUp(scheduler, triggersAndJobs.values().stream()
+                .flatMap(Set::stream)
+                .map(Trigger::getNextFireTime)
+                .filter(Objects::nonNull)
+                .min(Date::compareTo)
+                .orElse(null));
+            for (Integer index : prepared) {
+                requests.get(index).setSchedName(schedulerName);
+                results[index] = Boolean.TRUE;
+            }
+            log.info("Successfully added {} jobs to scheduler {}", prepared.size(), schedulerName);
+        } catch (Exception e) {
+            // The chunk has been rolled back as a whole, fall back to one by one to get per job results
+            log.warn("Bulk adding {} jobs failed, falling back to one by one: {}", prepared.size(), e.getMessage());
+            for (Integer index : prepared) {
+                results[index] = addScheduleJob(requests.get(index));
+            }
+        }
+    }
+
+    /**
+     * Delayed jobs are stored by the engine in a batch of their own, outside of the chunk's transaction but within
+     * the caller's one if there is
+     */
+    private void addDelayedJobs(Scheduler scheduler, List<DelayedJob> delayedJobs, List<JobRequest> requests,
+                                List<Integer> delayed, Boolean[] results) {
+        try {
+            String schedulerName = scheduler.getSchedulerName();
+            boolean[] stored = DelayedJobEngine.get(scheduler).schedule(delayedJobs);
+            for (int i = 0; i < stored.length; i++) {
+                if (stored[i]) {
+                    requests.get(delayed.get(i)).setSchedName(schedulerName);
+                    results[delayed.get(i)] = Boolean.TRUE;
+                } else {
+                    log.warn("Delayed job {} already exists in scheduler {}", delayedJobs.get(i).getKey(), schedulerName);
+                }
+            }
+            log.info("Successfully added {} delayed jobs to scheduler {}", delayedJobs.size(), schedulerName);
+        } catch (SchedulerException e) {
+            log.error(e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Engine of the scheduler if the request is a one shot job and delayed jobs are enabled, otherwise null
+     */
+    private DelayedJobEngine getDelayedJobEngine(Scheduler scheduler, JobRequest jobRequest) throws SchedulerException {
+        return QuartzUtils.isOneShot(jobRequest) ? DelayedJobEngine.get(scheduler) : null;
+    }
+
+    private boolean isDelayedJob(Scheduler scheduler, JobKey jobKey) throws SchedulerException {
+        DelayedJobEngine delayedJobEngine = DelayedJobEngine.get(scheduler);
+        return delayedJobEngine != null && delayedJobEngine.getFireTime(jobKey) != null;
+    }
+
+    @SneakyThrows
+    private void scheduleJobs(Scheduler scheduler, Map<JobDetail, Set<? extends Trigger>> triggersAndJobs) {
+        scheduler.scheduleJobs(triggersAndJobs, false);
+    }
+
+    /**
+     * Announces a trigger due soon, so idle scheduler threads of other nodes pick it up without waiting out their
+     * idle wait; the scheduler thread of this node is already signalled by Quartz
+     */
+    @SneakyThrows
+    private void wakeUp(Scheduler scheduler, Date fireTime) {
+        if (fireTime == null || fireTime.getTime() > System.currentTimeMillis() + WAKE_UP_AHEAD_MILLIS) {
+            return;
+        }
+        WakeUpChannel wakeUpChannel = context.getBeanProvider(WakeUpChannel.class).getIfUnique();
+        if (wakeUpChannel == null) {
+            return;
+        }
+        String schedulerName = scheduler.getSchedulerName();
+        Runnable publish = () -> {
+            try {
+                wakeUpChannel.publish(schedulerName, fireTime.getTime());
+            } catch (Exception e) {
+                log.warn("Failed to publish wake up for scheduler {}: {}", schedulerName, e.getMessage());
+            }
+        };
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            // Other nodes only see the trigger once the caller's transaction commits
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    publish.run();
+                }
+            });
+        } else {
+            publish.run();
+        }
+    }
+
+    private TransactionTemplate createTransactionTemplate() {
+        PlatformTransactionManager transactionManager = context.getBeanProvider(PlatformTransactionManager.class).getIfUnique();
+        return transactionManager != null ? new TransactionTemplate(transactionManager) : null;
+    }
+
     @Override
     @SneakyThrows
     public boolean updateScheduleJob(JobRequest jobRequest) {
         Scheduler scheduler = getScheduler(jobRequest);
         JobKey jobKey = JobKey.jobKey(jobRequest.getJobName(), jobRequest.getJobGroup());
+        if (isDelayedJob(scheduler, jobKey)) {
+            DelayedJobEngine delayedJobEngine = DelayedJobEngine.get(scheduler);
+            // Delayed jobs have no trigger to reschedule, the job is replaced
+            boolean updated = QuartzUtils.isOneShot(jobRequest)
+                ? delayedJobEngine.reschedule(QuartzUtils.createDelayedJob(jobRequest))
+                : delayedJobEngine.cancel(jobKey) && addScheduleJob(jobRequest);
+            log.info("Delayed job {} of scheduler {} updated: {}", jobKey, scheduler.getSchedulerName(), updated);
+            return updated;
+        }
         Trigger newTrigger = createTrigger(jobRequest);
         Date dt = scheduler.rescheduleJob(
             TriggerKey.triggerKey(jobRequest.getJobName().concat("Trigger"), jobRequest.getJobGroup()),
             newTrigger
         );
+        if (dt == null) {
+            log.warn("Job {} has no trigger to reschedule in scheduler {}", jobKey, scheduler.getSchedulerName());
+            return false;
+        }
+        wakeUp(scheduler, dt);
         log.debug("Job {} rescheduled successfully at date: {}", jobKey, dt);
         return true;
     }
@@ -82,7 +292,8 @@ public class DefaultQuartzPlusBaseServiceImpl implements QuartzPlusBaseService {
     public boolean deleteScheduleJob(JobRequest jobRequest) {
         Scheduler scheduler = getScheduler(jobRequest);
         JobKey jobKey = JobKey.jobKey(jobRequest.getJobName(), jobRequest.getJobGroup());
-        boolean deleted = scheduler.deleteJob(jobKey);
+        DelayedJobEngine delayedJobEngine = DelayedJobEngine.get(scheduler);
+        boolean deleted = (delayedJobEngine != null && delayedJobEngine.cancel(jobKey)) || scheduler.deleteJob(jobKey);
         log.info("Job {} deleted from scheduler {}: {}", jobRequest.getJobName(), scheduler.getSchedulerName(), deleted);
         return deleted;
     }
@@ -92,6 +303,10 @@ public class DefaultQuartzPlusBaseServiceImpl implements QuartzPlusBaseService {
     public boolean pauseScheduleJob(JobRequest jobRequest) {
         Scheduler scheduler = getScheduler(jobRequest);
         JobKey jobKey = JobKey.jobKey(jobRequest.getJobName(), jobRequest.getJobGroup());
+        if (isDelayedJob(scheduler, jobKey)) {
+            log.warn("Delayed job {} of scheduler {} cannot be paused", jobKey, scheduler.getSchedulerName());
+            return false;
+        }
         scheduler.pauseJob(jobKey);
         log.info("Job {} paused in scheduler {}", jobRequest.getJobName(), scheduler.getSchedulerName());
         return true;
@@ -102,6 +317,10 @@ public class DefaultQuartzPlusBaseServiceImpl implements QuartzPlusBaseService {
     public boolean resumeScheduleJob(JobRequest jobRequest) {
         Scheduler scheduler = getScheduler(jobRequest);
         JobKey jobKey = JobKey.jobKey(jobRequest.getJobName(), jobRequest.getJobGroup());
+        if (isDelayedJob(scheduler, jobKey)) {
+            log.warn("Delayed job {} of scheduler {} cannot be resumed", jobKey, scheduler.getSchedulerName());
+            return false;
+        }
         scheduler.resumeJob(jobKey);
         log.info("Job {} resumed in scheduler {}", jobRequest.getJobName(), scheduler.getSchedulerName());
         return true;
@@ -112,8 +331,28 @@ public class DefaultQuartzPlusBaseServiceImpl implements QuartzPlusBaseService {
     public boolean immediatelyJob(JobRequest jobRequest) {
         Scheduler scheduler = getScheduler(jobRequest);
         JobKey jobKey = JobKey.jobKey(jobRequest.getJobName(), jobRequest.getJobGroup());
+        DelayedJobEngine delayedJobEngine = DelayedJobEngine.get(scheduler);
+        DelayedJob delayedJob = delayedJobEngine != null ? delayedJobEngine.getJob(jobKey) : null;
+        if (delayedJob != null) {
+            // A delayed job runs once, it is moved to now with the request's data on top of its own
+            JobDataMap jobDataMap = new JobDataMap(delayedJob.getJobDataMap());
+            if (jobRequest.getJobDataMap() != null) {
+                jobDataMap.putAll(jobRequest.getJobDataMap());
+            }
+            boolean triggered = delayedJobEngine.reschedule(new DelayedJob(delayedJob.getJobName(),
+                delayedJob.getJobGroup(), delayedJob.getJobClassName(), delayedJob.getDescription(),
+                System.currentTimeMillis(), jobDataMap));
+            log.info("Delayed job {} triggered immediately in scheduler {}: {}", jobKey, scheduler.getSchedulerName(),
+                triggered);
+            return triggered;
+        }
+        if (!scheduler.checkExists(jobKey)) {
+            log.warn("Job {} does not exist in scheduler {}", jobKey, scheduler.getSchedulerName());
+            return false;
+        }
         JobDataMap jobDataMap = new JobDataMap(jobRequest.getJobDataMap());
         scheduler.triggerJob(jobKey, jobDataMap);
+        wakeUp(scheduler, new Date());
         log.info("Job {} triggered immediately in scheduler {}", jobRequest.getJobName(), scheduler.getSchedulerName());
         return true;
     }
@@ -122,10 +361,16 @@ public class DefaultQuartzPlusBaseServiceImpl implements QuartzPlusBaseService {
     @SneakyThrows
     public boolean isJobRunning(JobRequest jobRequest) {
         Scheduler scheduler = getScheduler(jobRequest);
+        JobKey jobKey = JobKey.jobKey(jobRequest.getJobName(), jobRequest.getJobGroup());
+        JobListener runningJobIndex = scheduler.getListenerManager().getJobListener(RunningJobIndex.NAME);
+        if (runningJobIndex instanceof RunningJobIndex) {
+            return ((RunningJobIndex) runningJobIndex).isRunning(jobKey);
+        }
+        // Scheduler not created by QuartzPlusJobFactoryBean
         List<JobExecutionContext> currentJobs = scheduler.getCurrentlyExecutingJobs();
         if (currentJobs != null) {
             for (JobExecutionContext jobCtx : currentJobs) {
-                if (jobRequest.getJobName().equals(jobCtx.getJobDetail().getKey().getName())) {
+                if (jobKey.equals(jobCtx.getJobDetail().getKey())) {
                     return true;
                 }
             }
@@ -138,6 +383,10 @@ public class DefaultQuartzPlusBaseServiceImpl implements QuartzPlusBaseService {
     public boolean isJobExists(JobRequest jobRequest) {
         Scheduler scheduler = getScheduler(jobRequest);
         JobKey jobKey = JobKey.jobKey(jobRequest.getJobName(), jobRequest.getJobGroup());
+        DelayedJobEngine delayedJobEngine = DelayedJobEngine.get(scheduler);
+        if (delayedJobEngine != null && delayedJobEngine.getFireTime(jobKey) != null) {
+            return true;
+        }
         return scheduler.checkExists(jobKey);
     }
 
@@ -146,6 +395,10 @@ public class DefaultQuartzPlusBaseServiceImpl implements QuartzPlusBaseService {
     public String getScheduleState(JobRequest jobRequest) {
         Scheduler scheduler = getScheduler(jobRequest);
         JobKey jobKey = JobKey.jobKey(jobRequest.getJobName(), jobRequest.getJobGroup());
+        DelayedJobEngine delayedJobEngine = DelayedJobEngine.get(scheduler);
+        if (delayedJobEngine != null && delayedJobEngine.getFireTime(jobKey) != null) {
+            return "SCHEDULED";
+        }
         JobDetail jobDetail = scheduler.getJobDetail(jobKey);
         List<? extends Trigger> triggers = scheduler.getTriggersOfJob(jobDetail.getKey());
 
@@ -175,8 +428,9 @@ public class DefaultQuartzPlusBaseServiceImpl implements QuartzPlusBaseService {
     @SneakyThrows
     public boolean pauseGroup(GroupRequest groupRequest) {
         log.info("Pausing group, jobGroup={}, jobClass={}", groupRequest.getJobGroup(), groupRequest.getJobClass());
-        Scheduler scheduler = getScheduler(groupRequest);
-        scheduler.pauseTriggers(GroupMatcher.groupEquals(groupRequest.getJobGroup()));
+        for (Scheduler scheduler : getSchedulers(groupRequest)) {
+            scheduler.pauseTriggers(GroupMatcher.groupEquals(groupRequest.getJobGroup()));
+        }
         return true;
     }
 
@@ -184,8 +438,9 @@ public class DefaultQuartzPlusBaseServiceImpl implements QuartzPlusBaseService {
     @SneakyThrows
     public boolean resumeGroup(GroupRequest groupRequest) {
         log.info("Resuming group, jobGroup={}, jobClass={}", groupRequest.getJobGroup(), groupRequest.getJobClass());
-        Scheduler scheduler = getScheduler(groupRequest);
-        scheduler.resumeTriggers(GroupMatcher.groupEquals(groupRequest.getJobGroup()));
+        for (Scheduler scheduler : getSchedulers(groupRequest)) {
+            scheduler.resumeTriggers(GroupMatcher.groupEquals(groupRequest.getJobGroup()));
+        }
         return true;
     }
 
@@ -195,6 +450,8 @@ public class DefaultQuartzPlusBaseServiceImpl implements QuartzPlusBaseService {
         log.info("Stopping running job, jobGroup={}, jobClass={}, jobName={}", jobRequest.getJobGroup(), jobRequest.getJobClass(), jobRequest.getJobName());
         Scheduler scheduler = getScheduler(jobRequest);
         JobKey jobKey = JobKey.jobKey(jobRequest.getJobName(), jobRequest.getJobGroup());
-        return scheduler.interrupt(jobKey);
+        DelayedJobEngine delayedJobEngine = DelayedJobEngine.get(scheduler);
+        boolean interrupted = delayedJobEngine != null && delayedJobEngine.interrupt(jobKey);
+        return scheduler.interrupt(jobKey) || interrupted;
     }
 }
@@ -18,24 +18,170 @@ package quartzplus.core.spring;
 
 import org.quartz.spi.TriggerFiredBundle;
 import org.springframework.beans.BeansException;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.AutowiredAnnotationBeanPostProcessor;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.beans.factory.config.AutowireCapableBeanFactory;
+import org.springframework.beans.factory.support.AbstractBeanFactory;
 import org.springframework.context.ApplicationContext;
 import org.springframework.context.ApplicationContextAware;
+import org.springframework.core.annotation.AnnotatedElementUtils;
+import org.springframework.scheduling.quartz.QuartzJobBean;
 import org.springframework.scheduling.quartz.SpringBeanJobFactory;
+import org.springframework.util.ReflectionUtils;
 
+import java.lang.annotation.Annotation;
+import java.lang.reflect.AnnotatedElement;
+import java.lang.reflect.Constructor;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Job factory injecting Spring beans into job instances.
+ * <p>
+ * What each job class needs is worked out once and cached: its constructor, whether it has injection points at all,
+ * and whether they are all {@code @Autowired}/{@code @Value}/{@code @Inject} ones that the
+ * AutowiredAnnotationBeanPostProcessor can inject from its cached metadata without a full autowireBean pass.
+ * Job classes annotated with {@code @QuartzPlusJob(reusable = true)} get a single instance, injected once.
+ */
 public class AutowiringSpringBeanJobFactory extends SpringBeanJobFactory implements ApplicationContextAware {
+
+    private static final String INJECT_ANNOTATION = "javax.inject.Inject";
+
     private transient AutowireCapableBeanFactory beanFactory;
+    private transient AutowiredAnnotationBeanPostProcessor autowiredProcessor;
+
+    private final Map<Class<?>, JobClassMetadata> jobClassMetadata = new ConcurrentHashMap<>();
 
     @Override
     public void setApplicationContext(ApplicationContext applicationContext) throws BeansException {
         beanFactory = applicationContext.getAutowireCapableBeanFactory();
+        autowiredProcessor = findAutowiredProcessor(beanFactory);
+        jobClassMetadata.clear();
     }
 
     @Override
     protected Object createJobInstance(TriggerFiredBundle bundle) throws Exception {
-        final Object job = super.createJobInstance(bundle);
-        beanFactory.autowireBean(job);
+        JobClassMetadata metadata = jobClassMetadata.computeIfAbsent(bundle.getJobDetail().getJobClass(),
+            this::resolveMetadata);
+        if (metadata.reusable) {
+            return metadata.getSharedInstance(bundle);
+        }
+        return newJobInstance(bundle, metadata);
+    }
+
+    private Object newJobInstance(TriggerFiredBundle bundle, JobClassMetadata metadata) throws Exception {
+        // Property population from the JobDataMap is done by QuartzJobBean itself, only other jobs need the
+        // SpringBeanJobFactory path
+        final Object job = metadata.constructor != null ?
+            metadata.constructor.newInstance() : super.createJobInstance(bundle);
+        switch (metadata.injection) {
+            case AUTOWIRED:
+                autowiredProcessor.processInjection(job);
+                break;
+            case FULL:
+                beanFactory.autowireBean(job);
+                break;
+            default:
+                break;
+        }
         return job;
     }
 
+    private JobClassMetadata resolveMetadata(Class<?> jobClass) {
+        QuartzPlusJob annotation = AnnotatedElementUtils.findMergedAnnotation(jobClass, QuartzPlusJob.class);
+        boolean reusable = annotation != null && annotation.reusable();
+        boolean autowire = annotation == null || annotation.autowire();
+
+        Constructor<?> constructor = null;
+        if (QuartzJobBean.class.isAssignableFrom(jobClass)) {
+            try {
+                constructor = ReflectionUtils.accessibleConstructor(jobClass);
+            } catch (NoSuchMethodException e) {
+                // let SpringBeanJobFactory report it on instantiation
+            }
+        }
+        return new JobClassMetadata(constructor, autowire ? resolveInjection(jobClass) : Injection.NONE, reusable);
+    }
+
+    private Injection resolveInjection(Class<?> jobClass) {
+        AtomicBoolean annotated = new AtomicBoolean();
+        AtomicBoolean autowiredOnly = new AtomicBoolean(true);
+        ReflectionUtils.FieldCallback fieldCallback = field -> inspect(field, annotated, autowiredOnly);
+        ReflectionUtils.MethodCallback methodCallback = method -> inspect(method, annotated, autowiredOnly);
+        for (Class<?> type = jobClass; type != null && type != Object.class && type != QuartzJobBean.class;
+             type = type.getSuperclass()) {
+            ReflectionUtils.doWithLocalFields(type, fieldCallback);
+            ReflectionUtils.doWithLocalMethods(type, methodCallback);
+        }
+        if (!annotated.get()) {
+            return Injection.NONE;
+        }
+        return autowiredOnly.get() && autowiredProcessor != null ? Injection.AUTOWIRED : Injection.FULL;
+    }
+
+    private void inspect(AnnotatedElement element, AtomicBoolean annotated, AtomicBoolean autowiredOnly) {
+        for (Annotation annotation : element.getAnnotations()) {
+            annotated.set(true);
+            Class<? extends Annotation> type = annotation.annotationType();
+            if (type != Autowired.class && type != Value.class && !INJECT_ANNOTATION.equals(type.getName())) {
+                autowiredOnly.set(false);
+            }
+        }
+    }
+
+    private static AutowiredAnnotationBeanPostProcessor findAutowiredProcessor(AutowireCapableBeanFactory beanFactory) {
+        if (beanFactory instanceof AbstractBeanFactory) {
+            return ((AbstractBeanFactory) beanFactory).getBeanPostProcessors().stream()
+                .filter(AutowiredAnnotationBeanPostProcessor.class::isInstance)
+                .map(AutowiredAnnotationBeanPostProcessor.class::cast)
+                .findFirst()
+                .orElse(null);
+        }
+        return null;
+    }
+
+    private enum Injection {
+        /**
+         * No injection points, nothing to do
+         */
+        NONE,
+        /**
+         * Only @Autowired, @Value or @Inject members, injected by the AutowiredAnnotationBeanPostProcessor
+         */
+        AUTOWIRED,
+        /**
+         * Anything else, e.g. @Resource, goes through every bean post processor
+         */
+        FULL
+    }
+
+    private class JobClassMetadata {
+
+        private final Constructor<?> constructor;
+        private final Injection injection;
+        private final boolean reusable;
+        private volatile Object sharedInstance;
+
+        JobClassMetadata(Constructor<?> constructor, Injection injection, boolean reusable) {
+            this.constructor = constructor;
+            this.injection = injection;
+            this.reusable = reusable;
+        }
+
+        Object getSharedInstance(TriggerFiredBundle bundle) throws Exception {
+            Object instance = sharedInstance;
+            if (instance == null) {
+                synchronized (this) {
+                    instance = sharedInstance;
+                    if (instance == null) {
+                        instance = newJobInstance(bundle, this);
+                        sharedInstance = instance;
+                    }
+                }
+            }
+            return instance;
+        }
+    }
 }
@@ -26,4 +26,27 @@ public @interface QuartzPlusJob {
     String value() default "";
 
     boolean enableTrace() default false;
+
+    /**
+     * Share of the executions traced when enableTrace is set, from 0 to 1
+     */
+    double traceSamplingRatio() default 1.0;
+
+    /**
+     * When not negative, only executions running at least this many milliseconds or failing are traced, with a span
+     * recorded once they finished, and traceSamplingRatio is ignored
+     */
+    long traceSlowThresholdMillis() default -1;
+
+    /**
+     * Whether one instance of the job class is created, injected once and reused by every fire. Only for stateless,
+     * thread-safe jobs: the instance runs concurrently and, being a QuartzJobBean, gets its bean properties set from
+     * the JobDataMap of every fire, so read job data from the JobExecutionContext instead.
+     */
+    boolean reusable() default false;
+
+    /**
+     * Whether job instances get their dependencies injected, set to false for jobs without any
+     */
+    boolean autowire() default true;
 }
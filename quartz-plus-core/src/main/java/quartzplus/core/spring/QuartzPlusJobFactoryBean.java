@@ -17,31 +17,92 @@
 package quartzplus.core.spring;
 
 import io.opentelemetry.api.OpenTelemetry;
-import io.opentelemetry.instrumentation.quartz.v2_0.QuartzTelemetry;
+import cn.hutool.core.util.StrUtil;
+import lombok.SneakyThrows;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.lang3.StringUtils;
+import org.quartz.InterruptableJob;
+import org.quartz.JobExecutionContext;
 import org.quartz.JobListener;
+import org.quartz.Scheduler;
+import org.quartz.SchedulerException;
+import org.quartz.impl.matchers.EverythingMatcher;
+import org.quartz.simpl.RAMJobStore;
+import org.quartz.utils.ConnectionProvider;
+import org.quartz.utils.DBConnectionManager;
 import org.quartz.TriggerListener;
 import org.springframework.beans.factory.DisposableBean;
 import org.springframework.beans.factory.FactoryBean;
 import org.springframework.beans.factory.InitializingBean;
 import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.SmartInitializingSingleton;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.autoconfigure.quartz.QuartzProperties;
 import org.springframework.boot.autoconfigure.quartz.SchedulerFactoryBeanCustomizer;
+import org.springframework.boot.context.properties.bind.Bindable;
+import org.springframework.boot.context.properties.bind.Binder;
 import org.springframework.context.ApplicationContext;
 import org.springframework.context.SmartLifecycle;
 import org.springframework.core.env.Environment;
+import org.springframework.scheduling.quartz.LocalDataSourceJobStore;
 import org.springframework.scheduling.quartz.SchedulerFactoryBean;
 import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.util.ClassUtils;
+import quartzplus.core.delay.DelayedJobEngine;
+import quartzplus.core.history.JobHistoryListener;
+import quartzplus.core.metrics.QuartzPlusMetricsBinder;
+import quartzplus.core.quartz.GroupBalanceTriggerDelegate;
+import quartzplus.core.quartz.QuartzPlusJobStore;
 import quartzplus.core.quartz.QuartzUtils;
+import quartzplus.core.quartz.RunningJobIndex;
+import quartzplus.core.quartz.SharedTriggerPoller;
+import quartzplus.core.quartz.SkipLockedTriggerDelegate;
+import quartzplus.core.tracing.JobTracing;
+import quartzplus.core.wakeup.LocalWakeUpChannel;
+import quartzplus.core.wakeup.WakeUpChannel;
 
 import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Objects;
 import java.util.Properties;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
 
 @Slf4j
-public class QuartzPlusJobFactoryBean implements FactoryBean, InitializingBean, DisposableBean, SmartLifecycle {
+public class QuartzPlusJobFactoryBean implements FactoryBean, InitializingBean, SmartInitializingSingleton, DisposableBean, SmartLifecycle {
+
+    /**
+     * Shared by all job classes, so that their schedulers are initialized side by side while the context starts
+     */
+    private static final ThreadPoolExecutor INIT_EXECUTOR = createInitExecutor();
+
+    /**
+     * When the context started stopping the schedulers, 0 while running, drain deadlines of all job classes count from it
+     */
+    private static final AtomicLong SHUTDOWN_STARTED = new AtomicLong();
+
+    /**
+     * Micrometer is optional, MeterRegistry is only referred to by QuartzPlusMetricsBinder
+     */
+    private static final boolean MICROMETER_PRESENT = ClassUtils.isPresent(QuartzPlusMetricsBinder.METER_REGISTRY_CLASS,
+        QuartzPlusJobFactoryBean.class.getClassLoader());
+
+    /**
+     * Time given to interrupted jobs to return before they are reported as abandoned
+     */
+    private static final long INTERRUPT_GRACE_MILLIS = 1000;
 
     private Class jobBeanClass;
 
@@ -65,6 +126,39 @@ public class QuartzPlusJobFactoryBean implements FactoryBean, InitializingBean,
     private OpenTelemetry openTelemetry;
 
     private SchedulerFactoryBean schedulerFactoryBean;
+    /**
+     * Scheduler of each shard with its table prefix, a single one unless shards is configured
+     */
+    private final Map<SchedulerFactoryBean, String> shards = new LinkedHashMap<>();
+    private final List<AutoCloseable> metrics = new ArrayList<>();
+    private final List<JobHistoryListener> histories = new ArrayList<>();
+    private final List<DelayedJobEngine> delayedJobEngines = new ArrayList<>();
+    /**
+     * Shards whose job store registers a connection provider with Quartz's DBConnectionManager, with whether it is a
+     * QuartzPlusJobStore, which registers it under the DBConnectionManager lock
+     */
+    private final Map<SchedulerFactoryBean, Boolean> jdbcShards = new LinkedHashMap<>();
+    /**
+     * JDBC shards whose job store is a LocalDataSourceJobStore, with their scheduler name, which names their
+     * connection providers
+     */
+    private final Map<SchedulerFactoryBean, String> localDataSourceShards = new LinkedHashMap<>();
+    /**
+     * Shared by the shards and their delayed job engines
+     */
+    private AutowiringSpringBeanJobFactory jobFactory;
+    /**
+     * Initialization of the shards, run in the background, on first use or right away
+     */
+    private FutureTask<Void> initialization;
+    private boolean lazyInit;
+    private String schedulerName;
+    private long shutdownTimeoutMillis;
+    /**
+     * Guarded by this, a lazy scheduler initialized after the context started is started by its initialization
+     */
+    private boolean started;
+    private boolean shardsInitialized;
 
     public QuartzPlusJobFactoryBean(Class jobBeanClass) {
         this.jobBeanClass = jobBeanClass;
@@ -72,22 +166,196 @@ public class QuartzPlusJobFactoryBean implements FactoryBean, InitializingBean,
 
     @Override
     public void afterPropertiesSet() throws Exception {
-        schedulerFactoryBean = createSchedulerFactoryBean(jobBeanClass, applicationContext);
-        if (Objects.isNull(schedulerFactoryBean)) {
+        SchedulerConfig config = loadSchedulerConfig(jobBeanClass);
+        if (!config.getEnabled()) {
             return;
         }
-        QuartzUtils.addSchedulerFactoryBean(jobBeanClass.getName(), schedulerFactoryBean);
 
-        schedulerFactoryBean.afterPropertiesSet();
+        // Use default value if instance name is not configured
+        String schedulerName = config.getInstanceName() != null ? config.getInstanceName() : jobBeanClass.getSimpleName() + "Scheduler";
+        String threadNamePrefix = config.getThreadNamePrefix() != null ? config.getThreadNamePrefix() : schedulerName + "_";
+
+        jobFactory = new AutowiringSpringBeanJobFactory();
+        jobFactory.setApplicationContext(applicationContext);
+
+        // Each shard is a scheduler of its own: own SCHED_NAME, so own QRTZ_LOCKS rows and acquisition thread
+        int shardCount = Math.max(config.getShards(), 1);
+        for (int shard = 0; shard < shardCount; shard++) {
+            String tablePrefix = shardCount == 1 ?
+                getTablePrefix(config, schedulerName) : getShardTablePrefix(config, schedulerName, shard);
+            SchedulerFactoryBean shardFactoryBean = shardCount == 1 ?
+                createSchedulerFactoryBean(config, schedulerName, tablePrefix, threadNamePrefix, applicationContext) :
+                createSchedulerFactoryBean(config, schedulerName + "_" + shard, tablePrefix, threadNamePrefix + shard + "_", applicationContext);
+            shards.put(shardFactoryBean, tablePrefix);
+        }
+        List<SchedulerFactoryBean> shardFactoryBeans = Collections.unmodifiableList(new ArrayList<>(shards.keySet()));
+        schedulerFactoryBean = shardFactoryBeans.get(0);
+
+        // Running schedulers read the connection providers without locking, all of them are registered before any starts
+        lazyInit = config.getLazyInit() && localDataSourceShards.keySet().containsAll(jdbcShards.keySet());
+        if (config.getLazyInit() && !lazyInit) {
+            log.warn("Scheduler {} uses a JDBC job store with Quartz data sources, it is created at startup instead of on first use",
+                schedulerName);
+        }
+        if (lazyInit) {
+            registerConnectionProviders();
+        }
+        this.schedulerName = schedulerName;
+        shutdownTimeoutMillis = TimeUnit.SECONDS.toMillis(config.getShutdownTimeoutSeconds());
+        initialization = new FutureTask<>(() -> {
+            initializeShards(config, schedulerName);
+            return null;
+        });
+        QuartzUtils.addSchedulerFactoryBeans(jobBeanClass.getName(), () -> {
+            awaitInitialization();
+            return shardFactoryBeans;
+        });
+
+        if (lazyInit) {
+            log.info("Scheduler {} is created on first use", schedulerName);
+        } else if (config.getParallelInit() && canInitializeInParallel()) {
+            INIT_EXECUTOR.execute(initialization);
+        } else {
+            awaitInitialization();
+        }
+    }
+
+    /**
+     * Registers placeholders for the connection providers of the lazy shards, so that the job stores created on first
+     * use only replace map entries instead of adding them while other schedulers run
+     */
+    private void registerConnectionProviders() {
+        ConnectionProvider placeholder = new ConnectionProvider() {
+            @Override
+            public Connection getConnection() throws SQLException {
+                throw new SQLException("Scheduler " + schedulerName + " is not initialized yet");
+            }
+
+            @Override
+            public void shutdown() {
+            }
+
+            @Override
+            public void initialize() {
+            }
+        };
+        synchronized (DBConnectionManager.class) {
+            for (String shardName : localDataSourceShards.values()) {
+                DBConnectionManager.getInstance().addConnectionProvider(
+                    LocalDataSourceJobStore.TX_DATA_SOURCE_PREFIX + shardName, placeholder);
+                DBConnectionManager.getInstance().addConnectionProvider(
+                    LocalDataSourceJobStore.NON_TX_DATA_SOURCE_PREFIX + shardName, placeholder);
+            }
+        }
+    }
+
+    private void initializeShards(SchedulerConfig config, String schedulerName) throws Exception {
+        long start = System.nanoTime();
+        for (Map.Entry<SchedulerFactoryBean, String> shard : shards.entrySet()) {
+            if (Boolean.FALSE.equals(jdbcShards.get(shard.getKey()))) {
+                // Not registered under the lock by the job store itself, other schedulers may initialize meanwhile
+                synchronized (DBConnectionManager.class) {
+                    shard.getKey().afterPropertiesSet();
+                }
+            } else {
+                shard.getKey().afterPropertiesSet();
+            }
+            configureScheduler(config, shard.getKey().getScheduler(), shard.getValue());
+        }
+        synchronized (this) {
+            shardsInitialized = true;
+            // Created on first use after the context started, start it as the context would have
+            if (started) {
+                startShards();
+            }
+        }
+        log.info("Initialized scheduler {} ({} shard(s)) in {} ms on thread {}", schedulerName, shards.size(),
+            TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start), Thread.currentThread().getName());
+    }
+
+    /**
+     * Runs the initialization in the calling thread unless it already ran or is running, and waits for it
+     */
+    @SneakyThrows
+    private void awaitInitialization() {
+        if (initialization == null) {
+            return;
+        }
+        initialization.run();
+        try {
+            initialization.get();
+        } catch (ExecutionException e) {
+            throw e.getCause();
+        }
+    }
+
+    private boolean isInitialized() {
+        return initialization != null && initialization.isDone() && !initialization.isCancelled();
+    }
+
+    /**
+     * Quartz keeps the connection providers of all job stores in an unsynchronized map, job stores using the Spring
+     * DataSource register theirs under the DBConnectionManager lock, shards with other JDBC job stores are initialized
+     * in the context thread
+     */
+    private boolean canInitializeInParallel() {
+        return localDataSourceShards.keySet().containsAll(jdbcShards.keySet());
+    }
+
+    @Override
+    public void afterSingletonsInstantiated() {
+        // Initialization errors fail the context start, unless the scheduler is created on first use
+        if (initialization != null && !lazyInit) {
+            awaitInitialization();
+        }
+    }
+
+    private void configureScheduler(SchedulerConfig config, Scheduler scheduler, String tablePrefix) throws Exception {
+        scheduler.getListenerManager().addJobListener(createRunningJobIndex(config, scheduler.getSchedulerName(), tablePrefix),
+            EverythingMatcher.allJobs());
 
         if (Objects.nonNull(openTelemetry) && enableTrace(jobBeanClass)) {
-            QuartzTelemetry quartzTelemetry = QuartzTelemetry.builder(openTelemetry).setCaptureExperimentalSpanAttributes(true).build();
-            quartzTelemetry.configure(schedulerFactoryBean.getScheduler());
+            QuartzPlusJob annotation = (QuartzPlusJob) jobBeanClass.getAnnotation(QuartzPlusJob.class);
+            double samplingRatio = Objects.nonNull(config.getTraceSamplingRatio()) ? config.getTraceSamplingRatio()
+                : annotation.traceSamplingRatio();
+            long slowThresholdMillis = Objects.nonNull(config.getTraceSlowThresholdMillis()) ? config.getTraceSlowThresholdMillis()
+                : annotation.traceSlowThresholdMillis();
+            JobTracing.configure(scheduler, openTelemetry, samplingRatio, slowThresholdMillis);
+        }
+
+        if (MICROMETER_PRESENT && config.getMetricsEnabled()) {
+            AutoCloseable shardMetrics = QuartzPlusMetricsBinder.bind(applicationContext, scheduler, dataSource, tablePrefix,
+                config.getBacklogRefreshSeconds());
+            if (Objects.nonNull(shardMetrics)) {
+                metrics.add(shardMetrics);
+            }
+        }
+
+        if (config.getHistoryEnabled()) {
+            if (Objects.isNull(dataSource)) {
+                log.warn("Scheduler {} has no DataSource, execution history is disabled for it", scheduler.getSchedulerName());
+            } else {
+                JobHistoryListener history = JobHistoryListener.open(dataSource, tablePrefix, scheduler.getSchedulerName(),
+                    scheduler.getSchedulerInstanceId(), config.getHistoryRetentionDays());
+                histories.add(history);
+                scheduler.getListenerManager().addJobListener(history, EverythingMatcher.allJobs());
+            }
+        }
+
+        if (config.getDelayedJobsEnabled()) {
+            if (Objects.isNull(dataSource)) {
+                log.warn("Scheduler {} has no DataSource, delayed jobs are scheduled as triggers", scheduler.getSchedulerName());
+            } else {
+                delayedJobEngines.add(DelayedJobEngine.open(scheduler, jobFactory, dataSource, tablePrefix,
+                    config.getClustered(), config.getDelayedJobsTickMillis(), config.getDelayedJobsLoadAheadMillis(),
+                    Objects.nonNull(config.getDelayedJobsThreads()) ? config.getDelayedJobsThreads() : config.getThreadCount()));
+            }
         }
     }
 
     @Override
     public Object getObject() throws Exception {
+        awaitInitialization();
         return schedulerFactoryBean;
     }
 
@@ -96,6 +364,14 @@ public class QuartzPlusJobFactoryBean implements FactoryBean, InitializingBean,
         return SchedulerFactoryBean.class;
     }
 
+    private boolean isLocalDataSourceJobStore(String jobStoreClass) {
+        try {
+            return LocalDataSourceJobStore.class.isAssignableFrom(ClassUtils.forName(jobStoreClass, applicationContext.getClassLoader()));
+        } catch (ClassNotFoundException | LinkageError e) {
+            return false;
+        }
+    }
+
     private boolean enableTrace(Class jobBeanClass) {
         if (jobBeanClass.isAnnotationPresent(QuartzPlusJob.class)) {
             QuartzPlusJob annotation = (QuartzPlusJob) jobBeanClass.getAnnotation(QuartzPlusJob.class);
@@ -104,15 +380,8 @@ public class QuartzPlusJobFactoryBean implements FactoryBean, InitializingBean,
         return false;
     }
 
-    private SchedulerFactoryBean createSchedulerFactoryBean(Class jobBeanClass, ApplicationContext applicationContext) throws Exception {
-        SchedulerConfig config = loadSchedulerConfig(jobBeanClass);
-        if (!config.getEnabled()) {
-            return null;
-        }
-
-        // Use default value if instance name is not configured
-        String schedulerName = config.getInstanceName() != null ? config.getInstanceName() : jobBeanClass.getSimpleName() + "Scheduler";
-
+    private SchedulerFactoryBean createSchedulerFactoryBean(SchedulerConfig config, String schedulerName, String tablePrefix,
+                                                            String threadNamePrefix, ApplicationContext applicationContext) throws Exception {
         SchedulerFactoryBean schedulerFactoryBean = new SchedulerFactoryBean();
 
         // Basic configuration
@@ -122,8 +391,6 @@ public class QuartzPlusJobFactoryBean implements FactoryBean, InitializingBean,
         schedulerFactoryBean.setWaitForJobsToCompleteOnShutdown(true);
 
         // Job factory configuration
-        AutowiringSpringBeanJobFactory jobFactory = new AutowiringSpringBeanJobFactory();
-        jobFactory.setApplicationContext(applicationContext);
         schedulerFactoryBean.setJobFactory(jobFactory);
         schedulerFactoryBean.setApplicationContext(applicationContext);
 
@@ -150,28 +417,72 @@ public class QuartzPlusJobFactoryBean implements FactoryBean, InitializingBean,
         properties.putAll(quartzProperties.getProperties());
 
         // Thread pool configuration
-        String threadNamePrefix = config.getThreadNamePrefix() != null ?
-            config.getThreadNamePrefix() : schedulerName + "_";
         properties.setProperty("org.quartz.threadPool.threadNamePrefix", threadNamePrefix);
         properties.setProperty("org.quartz.threadPool.threadCount", String.valueOf(config.getThreadCount()));
 
+        // Trigger acquisition batching
+        if (Objects.nonNull(config.getBatchTriggerAcquisitionMaxCount())) {
+            properties.setProperty("org.quartz.scheduler.batchTriggerAcquisitionMaxCount",
+                String.valueOf(config.getBatchTriggerAcquisitionMaxCount()));
+        }
+        if (Objects.nonNull(config.getBatchTriggerAcquisitionFireAheadTimeWindow())) {
+            properties.setProperty("org.quartz.scheduler.batchTriggerAcquisitionFireAheadTimeWindow",
+                String.valueOf(config.getBatchTriggerAcquisitionFireAheadTimeWindow()));
+        }
+
         // Scheduler instance configuration
         properties.setProperty("org.quartz.scheduler.instanceName", schedulerName);
         properties.setProperty("org.quartz.scheduler.instanceId", "AUTO");
 
         // JobStore configuration (use independent table prefix)
-        String tablePrefix = config.getTablePrefix() != null ?
-            config.getTablePrefix() : "QRTZ_" + schedulerName.toUpperCase().replace("SCHEDULER", "") + "_";
         properties.setProperty("org.quartz.jobStore.tablePrefix", tablePrefix);
         properties.setProperty("org.quartz.jobStore.isClustered", String.valueOf(config.getClustered()));
+        if (Objects.nonNull(dataSource) && needsQuartzPlusJobStore(config, properties)) {
+            properties.putIfAbsent("org.quartz.jobStore.class", QuartzPlusJobStore.class.getName());
+            if (QuartzPlusJobStore.class.getName().equals(properties.getProperty("org.quartz.jobStore.class"))) {
+                properties.setProperty("org.quartz.jobStore.adaptiveBatchAcquisition", String.valueOf(config.getAdaptiveBatchAcquisition()));
+                properties.setProperty("org.quartz.jobStore.adaptiveBatchLowLagMillis", String.valueOf(config.getAdaptiveBatchLowLagMillis()));
+                properties.setProperty("org.quartz.jobStore.sharedPolling", String.valueOf(config.getSharedPolling()));
+                // Polling more often than the scheduler threads would defeat its purpose, it follows idleWaitTime by default
+                properties.setProperty("org.quartz.jobStore.sharedPollingIntervalMillis", Objects.nonNull(config.getSharedPollingIntervalMillis()) ?
+                    String.valueOf(config.getSharedPollingIntervalMillis()) :
+                    properties.getProperty("org.quartz.scheduler.idleWaitTime", String.valueOf(SharedTriggerPoller.DEFAULT_INTERVAL_MILLIS)));
+                properties.setProperty("org.quartz.jobStore.sharedClusterHeartbeat", String.valueOf(config.getSharedClusterHeartbeat()));
+                if (Objects.nonNull(config.getRateLimitPermitsPerSecond())) {
+                    properties.setProperty("org.quartz.jobStore.rateLimitPermitsPerSecond", String.valueOf(config.getRateLimitPermitsPerSecond()));
+                }
+                if (!config.getRateLimitGroups().isEmpty()) {
+                    properties.setProperty("org.quartz.jobStore.rateLimitGroups", joinGroupValues(config.getRateLimitGroups()));
+                }
+                properties.setProperty("org.quartz.jobStore.rateLimitBurstSeconds", String.valueOf(config.getRateLimitBurstSeconds()));
+                properties.setProperty("org.quartz.jobStore.rateLimitClustered", String.valueOf(config.getRateLimitClustered()));
+            }
+        }
+        if (!QuartzPlusJobStore.class.getName().equals(properties.getProperty("org.quartz.jobStore.class"))
+            && (Objects.nonNull(config.getRateLimitPermitsPerSecond()) || !config.getRateLimitGroups().isEmpty())) {
+            log.warn("Rate limits of scheduler {} are ignored, they need a DataSource and QuartzPlusJobStore", schedulerName);
+        }
 
         if (StringUtils.isNotBlank(config.getDriverDelegateClass())) {
             properties.setProperty("org.quartz.jobStore.driverDelegateClass", config.getDriverDelegateClass());
         }
+        if (isGroupBalanceDelegate(properties.getProperty("org.quartz.jobStore.driverDelegateClass"))) {
+            properties.setProperty("org.quartz.jobStore.driverDelegateInitString",
+                buildDelegateInitString(config, properties.getProperty("org.quartz.jobStore.driverDelegateInitString")));
+        }
 
         schedulerFactoryBean.setQuartzProperties(properties);
         customizers.orderedStream().forEach((customizer) -> customizer.customize(schedulerFactoryBean));
 
+        // Without a job store class, SchedulerFactoryBean uses LocalDataSourceJobStore when given a DataSource
+        String jobStoreClass = properties.getProperty("org.quartz.jobStore.class");
+        if (Objects.nonNull(jobStoreClass) ? !RAMJobStore.class.getName().equals(jobStoreClass) : Objects.nonNull(dataSource)) {
+            jdbcShards.put(schedulerFactoryBean, QuartzPlusJobStore.class.getName().equals(jobStoreClass));
+            if (Objects.isNull(jobStoreClass) || isLocalDataSourceJobStore(jobStoreClass)) {
+                localDataSourceShards.put(schedulerFactoryBean, schedulerName);
+            }
+        }
+
         log.info("Created scheduler: {} - type: {}, thread count: {}, table prefix: {}, clustered: {}, auto startup: {}",
             schedulerName, config.getDescription(), config.getThreadCount(),
             tablePrefix, config.getClustered(), config.getAutoStartup());
@@ -179,6 +490,114 @@ public class QuartzPlusJobFactoryBean implements FactoryBean, InitializingBean,
         return schedulerFactoryBean;
     }
 
+    private RunningJobIndex createRunningJobIndex(SchedulerConfig config, String schedulerName, String tablePrefix) {
+        if (!config.getClusterWideRunningCheck()) {
+            return new RunningJobIndex();
+        }
+        if (!config.getClustered() || Objects.isNull(dataSource)) {
+            log.warn("Cluster wide running job check of scheduler {} needs clustered mode and a DataSource, checking this node only", schedulerName);
+            return new RunningJobIndex();
+        }
+        return new RunningJobIndex(schedulerName, dataSource, tablePrefix, config.getDelayedJobsEnabled());
+    }
+
+    private String getTablePrefix(SchedulerConfig config, String schedulerName) {
+        return config.getTablePrefix() != null ?
+            config.getTablePrefix() : "QRTZ_" + schedulerName.toUpperCase().replace("SCHEDULER", "") + "_";
+    }
+
+    /**
+     * Shards share the tables of the scheduler unless shard-table-prefixes lists one prefix per shard
+     */
+    private String getShardTablePrefix(SchedulerConfig config, String schedulerName, int shard) {
+        List<String> shardTablePrefixes = config.getShardTablePrefixes();
+        if (shardTablePrefixes.isEmpty()) {
+            return getTablePrefix(config, schedulerName);
+        }
+        if (shardTablePrefixes.size() != config.getShards()) {
+            throw new IllegalStateException(StrUtil.format("Scheduler {} has {} shards but {} shard table prefixes",
+                schedulerName, config.getShards(), shardTablePrefixes.size()));
+        }
+        return shardTablePrefixes.get(shard);
+    }
+
+    private boolean isGroupBalanceDelegate(String driverDelegateClass) {
+        return isDelegate(driverDelegateClass, GroupBalanceTriggerDelegate.class);
+    }
+
+    private boolean isDelegate(String driverDelegateClass, Class<?> delegateClass) {
+        if (StringUtils.isBlank(driverDelegateClass)) {
+            return false;
+        }
+        try {
+            return delegateClass.isAssignableFrom(ClassUtils.forName(driverDelegateClass, applicationContext.getClassLoader()));
+        } catch (ClassNotFoundException | LinkageError e) {
+            return false;
+        }
+    }
+
+    /**
+     * Whether a feature of QuartzPlusJobStore is configured, Spring's LocalDataSourceJobStore is used otherwise
+     */
+    private boolean needsQuartzPlusJobStore(SchedulerConfig config, Properties properties) {
+        String driverDelegateClass = StringUtils.isNotBlank(config.getDriverDelegateClass()) ?
+            config.getDriverDelegateClass() : properties.getProperty("org.quartz.jobStore.driverDelegateClass");
+        WakeUpChannel wakeUpChannel = applicationContext.getBeanProvider(WakeUpChannel.class).getIfUnique();
+        return config.getAdaptiveBatchAcquisition() || config.getSharedPolling() || config.getSharedClusterHeartbeat()
+            || Objects.nonNull(config.getRateLimitPermitsPerSecond()) || !config.getRateLimitGroups().isEmpty()
+            || isDelegate(driverDelegateClass, SkipLockedTriggerDelegate.class)
+            // The default channel only reaches this JVM, where Quartz already wakes up the scheduler of a change
+            || (Objects.nonNull(wakeUpChannel) && !(wakeUpChannel instanceof LocalWakeUpChannel));
+    }
+
+    private String buildDelegateInitString(SchedulerConfig config, String initString) {
+        List<String> settings = new ArrayList<>();
+        if (StringUtils.isNotBlank(initString)) {
+            settings.add(initString);
+        }
+        settings.add(GroupBalanceTriggerDelegate.SETTING_MAX_CONCURRENT_PER_GROUP + "=" + config.getMaxConcurrentPerGroup());
+        if (!config.getGroupMaxConcurrent().isEmpty()) {
+            settings.add(GroupBalanceTriggerDelegate.SETTING_GROUP_MAX_CONCURRENT + "=" + joinGroupValues(config.getGroupMaxConcurrent()));
+        }
+        settings.add(GroupBalanceTriggerDelegate.SETTING_STRICT_GROUP_CONCURRENCY + "=" + config.getStrictGroupConcurrency());
+        settings.add(GroupBalanceTriggerDelegate.SETTING_SCAN_WINDOW + "=" + config.getAcquireScanWindow());
+        settings.add(GroupBalanceTriggerDelegate.SETTING_FAIR_GROUP_ACQUISITION + "=" + config.getFairGroupAcquisition());
+        if (!config.getGroupWeights().isEmpty()) {
+            settings.add(GroupBalanceTriggerDelegate.SETTING_GROUP_WEIGHTS + "=" + joinGroupValues(config.getGroupWeights()));
+        }
+        if (Objects.nonNull(config.getGroupBalance())) {
+            settings.add(GroupBalanceTriggerDelegate.SETTING_GROUP_BALANCE + "=" + config.getGroupBalance());
+        }
+        if (StringUtils.isNotBlank(config.getJobDataCodec())) {
+            settings.add(GroupBalanceTriggerDelegate.SETTING_JOB_DATA_CODEC + "=" + config.getJobDataCodec());
+            settings.add(GroupBalanceTriggerDelegate.SETTING_JOB_DATA_COMPRESS_THRESHOLD + "=" + config.getJobDataCompressThreshold());
+        }
+        if (config.getPriorityAgingMillis() > 0) {
+            settings.add(GroupBalanceTriggerDelegate.SETTING_PRIORITY_AGING_MILLIS + "=" + config.getPriorityAgingMillis());
+        }
+        return String.join("|", settings);
+    }
+
+    private String joinGroupValues(Map<String, ? extends Number> groupValues) {
+        return groupValues.entrySet().stream()
+            .map(entry -> entry.getKey() + ":" + entry.getValue())
+            .collect(Collectors.joining(","));
+    }
+
+    private static ThreadPoolExecutor createInitExecutor() {
+        AtomicInteger threadNumber = new AtomicInteger();
+        int threads = Runtime.getRuntime().availableProcessors();
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(threads, threads, 10, TimeUnit.SECONDS,
+            new LinkedBlockingQueue<>(), runnable -> {
+            Thread thread = new Thread(runnable, "quartz-plus-init-" + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        // No threads are left behind once the context started
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
     private SchedulerConfig loadSchedulerConfig(Class jobBeanClass) {
         SchedulerConfig config = new SchedulerConfig();
 
@@ -210,6 +629,47 @@ public class QuartzPlusJobFactoryBean implements FactoryBean, InitializingBean,
         config.setDescription(environment.getProperty(configPrefix + ".description", config.getDescription()));
         config.setAutoStartup(environment.getProperty(configPrefix + ".auto-startup", Boolean.class, config.getAutoStartup()));
         config.setDriverDelegateClass(environment.getProperty(configPrefix + ".driver-delegate-class", String.class, config.getDriverDelegateClass()));
+        config.setMaxConcurrentPerGroup(environment.getProperty(configPrefix + ".max-concurrent-per-group", Integer.class, config.getMaxConcurrentPerGroup()));
+        config.setGroupMaxConcurrent(Binder.get(environment).bind(configPrefix + ".group-max-concurrent",
+            Bindable.mapOf(String.class, Integer.class)).orElse(config.getGroupMaxConcurrent()));
+        config.setStrictGroupConcurrency(environment.getProperty(configPrefix + ".strict-group-concurrency", Boolean.class, config.getStrictGroupConcurrency()));
+        config.setAcquireScanWindow(environment.getProperty(configPrefix + ".acquire-scan-window", Integer.class, config.getAcquireScanWindow()));
+        config.setFairGroupAcquisition(environment.getProperty(configPrefix + ".fair-group-acquisition", Boolean.class, config.getFairGroupAcquisition()));
+        config.setGroupWeights(Binder.get(environment).bind(configPrefix + ".group-weights",
+            Bindable.mapOf(String.class, Integer.class)).orElse(config.getGroupWeights()));
+        config.setGroupBalance(environment.getProperty(configPrefix + ".group-balance", Boolean.class, config.getGroupBalance()));
+        config.setJobDataCodec(environment.getProperty(configPrefix + ".job-data-codec", String.class, config.getJobDataCodec()));
+        config.setJobDataCompressThreshold(environment.getProperty(configPrefix + ".job-data-compress-threshold", Integer.class, config.getJobDataCompressThreshold()));
+        config.setPriorityAgingMillis(environment.getProperty(configPrefix + ".priority-aging-millis", Long.class, config.getPriorityAgingMillis()));
+        config.setBatchTriggerAcquisitionMaxCount(environment.getProperty(configPrefix + ".batch-trigger-acquisition-max-count", Integer.class, config.getBatchTriggerAcquisitionMaxCount()));
+        config.setBatchTriggerAcquisitionFireAheadTimeWindow(environment.getProperty(configPrefix + ".batch-trigger-acquisition-fire-ahead-time-window", Long.class, config.getBatchTriggerAcquisitionFireAheadTimeWindow()));
+        config.setAdaptiveBatchAcquisition(environment.getProperty(configPrefix + ".adaptive-batch-acquisition", Boolean.class, config.getAdaptiveBatchAcquisition()));
+        config.setAdaptiveBatchLowLagMillis(environment.getProperty(configPrefix + ".adaptive-batch-low-lag-millis", Long.class, config.getAdaptiveBatchLowLagMillis()));
+        config.setSharedPolling(environment.getProperty(configPrefix + ".shared-polling", Boolean.class, config.getSharedPolling()));
+        config.setSharedPollingIntervalMillis(environment.getProperty(configPrefix + ".shared-polling-interval-millis", Long.class, config.getSharedPollingIntervalMillis()));
+        config.setSharedClusterHeartbeat(environment.getProperty(configPrefix + ".shared-cluster-heartbeat", Boolean.class, config.getSharedClusterHeartbeat()));
+        config.setRateLimitPermitsPerSecond(environment.getProperty(configPrefix + ".rate-limit.permits-per-second", Double.class, config.getRateLimitPermitsPerSecond()));
+        config.setRateLimitGroups(Binder.get(environment).bind(configPrefix + ".rate-limit.groups",
+            Bindable.mapOf(String.class, Double.class)).orElse(config.getRateLimitGroups()));
+        config.setRateLimitBurstSeconds(environment.getProperty(configPrefix + ".rate-limit.burst-seconds", Double.class, config.getRateLimitBurstSeconds()));
+        config.setRateLimitClustered(environment.getProperty(configPrefix + ".rate-limit.clustered", Boolean.class, config.getRateLimitClustered()));
+        config.setParallelInit(environment.getProperty(configPrefix + ".parallel-init", Boolean.class, config.getParallelInit()));
+        config.setLazyInit(environment.getProperty(configPrefix + ".lazy-init", Boolean.class, config.getLazyInit()));
+        config.setShutdownTimeoutSeconds(environment.getProperty(configPrefix + ".shutdown-timeout-seconds", Long.class, config.getShutdownTimeoutSeconds()));
+        config.setTraceSamplingRatio(environment.getProperty(configPrefix + ".trace-sampling-ratio", Double.class, config.getTraceSamplingRatio()));
+        config.setTraceSlowThresholdMillis(environment.getProperty(configPrefix + ".trace-slow-threshold-millis", Long.class, config.getTraceSlowThresholdMillis()));
+        config.setMetricsEnabled(environment.getProperty(configPrefix + ".metrics-enabled", Boolean.class, config.getMetricsEnabled()));
+        config.setHistoryEnabled(environment.getProperty(configPrefix + ".history-enabled", Boolean.class, config.getHistoryEnabled()));
+        config.setHistoryRetentionDays(environment.getProperty(configPrefix + ".history-retention-days", Integer.class, config.getHistoryRetentionDays()));
+        config.setDelayedJobsEnabled(environment.getProperty(configPrefix + ".delayed-jobs.enabled", Boolean.class, config.getDelayedJobsEnabled()));
+        config.setDelayedJobsTickMillis(environment.getProperty(configPrefix + ".delayed-jobs.tick-millis", Long.class, config.getDelayedJobsTickMillis()));
+        config.setDelayedJobsLoadAheadMillis(environment.getProperty(configPrefix + ".delayed-jobs.load-ahead-millis", Long.class, config.getDelayedJobsLoadAheadMillis()));
+        config.setDelayedJobsThreads(environment.getProperty(configPrefix + ".delayed-jobs.threads", Integer.class, config.getDelayedJobsThreads()));
+        config.setBacklogRefreshSeconds(environment.getProperty(configPrefix + ".backlog-refresh-seconds", Integer.class, config.getBacklogRefreshSeconds()));
+        config.setShards(environment.getProperty(configPrefix + ".shards", Integer.class, config.getShards()));
+        config.setShardTablePrefixes(Binder.get(environment).bind(configPrefix + ".shard-table-prefixes",
+            Bindable.listOf(String.class)).orElse(config.getShardTablePrefixes()));
+        config.setClusterWideRunningCheck(environment.getProperty(configPrefix + ".cluster-wide-running-check", Boolean.class, config.getClusterWideRunningCheck()));
 
         return config;
     }
@@ -235,31 +695,167 @@ public class QuartzPlusJobFactoryBean implements FactoryBean, InitializingBean,
 
     @Override
     public void destroy() throws Exception {
-        if (schedulerFactoryBean != null) {
-            schedulerFactoryBean.destroy();
+        if (initialization != null && !initialization.isDone()) {
+            // Never used lazy scheduler, or context closed while initializing
+            initialization.cancel(false);
+        }
+        if (initialization == null || !isInitialized()) {
+            return;
+        }
+        for (AutoCloseable shardMetrics : metrics) {
+            shardMetrics.close();
+        }
+        // Before the shards, so that running delayed jobs complete while the scheduler's listeners are in place.
+        // The engines are drained together, within the deadline of the shards' own drain if stop() started it.
+        long shutdownStarted = SHUTDOWN_STARTED.get();
+        long deadline = (shutdownStarted > 0 ? shutdownStarted : System.currentTimeMillis()) + shutdownTimeoutMillis;
+        for (DelayedJobEngine engine : delayedJobEngines) {
+            engine.shutdown();
+        }
+        for (DelayedJobEngine engine : delayedJobEngines) {
+            engine.awaitTermination(deadline);
+        }
+        for (SchedulerFactoryBean shard : shards.keySet()) {
+            shard.destroy();
+        }
+        // After the shards, so that the executions of the jobs drained on shutdown are written
+        for (JobHistoryListener history : histories) {
+            history.close();
         }
     }
 
     @Override
     public void start() {
-        if (schedulerFactoryBean != null) {
-            if (schedulerFactoryBean.isAutoStartup()) {
-                schedulerFactoryBean.start();
+        SHUTDOWN_STARTED.set(0);
+        synchronized (this) {
+            started = true;
+            if (lazyInit && !shardsInitialized) {
+                return;
+            }
+        }
+        awaitInitialization();
+        startShards();
+    }
+
+    private void startShards() {
+        for (SchedulerFactoryBean shard : shards.keySet()) {
+            if (shard.isAutoStartup()) {
+                shard.start();
             }
         }
     }
 
     @Override
     public void stop() {
-        if (schedulerFactoryBean != null) {
-            schedulerFactoryBean.stop();
+        synchronized (this) {
+            started = false;
+        }
+        if (!isInitialized()) {
+            return;
+        }
+        for (SchedulerFactoryBean shard : shards.keySet()) {
+            shard.stop();
+        }
+    }
+
+    /**
+     * Stops acquisition right away and drains the executing jobs in the background, the lifecycle processor stops
+     * all job classes of a phase this way at once. Jobs still running at the deadline are interrupted if they are
+     * {@link InterruptableJob}s and reported, and the scheduler shutdown no longer waits for them. Delayed jobs are
+     * drained alike, their threads are interrupted too.
+     */
+    @Override
+    public void stop(Runnable callback) {
+        synchronized (this) {
+            started = false;
+        }
+        if (!isInitialized()) {
+            callback.run();
+            return;
+        }
+        SHUTDOWN_STARTED.compareAndSet(0, System.currentTimeMillis());
+        long deadline = SHUTDOWN_STARTED.get() + shutdownTimeoutMillis;
+        for (SchedulerFactoryBean shard : shards.keySet()) {
+            shard.stop();
+        }
+        Thread drainThread = new Thread(() -> {
+            try {
+                drain(deadline);
+            } catch (Exception e) {
+                log.warn("Draining scheduler {} failed", schedulerName, e);
+            } finally {
+                callback.run();
+            }
+        }, "quartz-plus-shutdown-" + schedulerName);
+        drainThread.setDaemon(true);
+        drainThread.start();
+    }
+
+    private void drain(long deadline) throws SchedulerException, InterruptedException {
+        long start = System.currentTimeMillis();
+        Map<SchedulerFactoryBean, List<JobExecutionContext>> executing = getExecutingJobs();
+        while (!executing.isEmpty() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(100);
+            executing = getExecutingJobs();
+        }
+        if (executing.isEmpty()) {
+            log.info("Scheduler {} drained in {} ms", schedulerName, System.currentTimeMillis() - start);
+            return;
+        }
+
+        for (Map.Entry<SchedulerFactoryBean, List<JobExecutionContext>> shard : executing.entrySet()) {
+            Scheduler scheduler = shard.getKey().getScheduler();
+            DelayedJobEngine engine = DelayedJobEngine.get(scheduler);
+            for (JobExecutionContext context : shard.getValue()) {
+                if (engine != null && engine.interrupt(context.getFireInstanceId())) {
+                    continue;
+                }
+                if (context.getJobInstance() instanceof InterruptableJob) {
+                    scheduler.interrupt(context.getFireInstanceId());
+                }
+            }
+        }
+        long graceDeadline = System.currentTimeMillis() + INTERRUPT_GRACE_MILLIS;
+        while (!executing.isEmpty() && System.currentTimeMillis() < graceDeadline) {
+            Thread.sleep(50);
+            executing = getExecutingJobs();
         }
+
+        for (Map.Entry<SchedulerFactoryBean, List<JobExecutionContext>> shard : executing.entrySet()) {
+            // Do not block the scheduler shutdown on jobs that are given up
+            shard.getKey().setWaitForJobsToCompleteOnShutdown(false);
+            log.warn("Scheduler {} abandoned {} running job(s) at the shutdown deadline: {}",
+                shard.getKey().getScheduler().getSchedulerName(), shard.getValue().size(),
+                shard.getValue().stream()
+                    .map(context -> context.getJobDetail().getKey() + " (fired " + context.getFireTime() + ")")
+                    .collect(Collectors.joining(", ")));
+        }
+    }
+
+    private Map<SchedulerFactoryBean, List<JobExecutionContext>> getExecutingJobs() throws SchedulerException {
+        Map<SchedulerFactoryBean, List<JobExecutionContext>> executing = new LinkedHashMap<>();
+        for (SchedulerFactoryBean shard : shards.keySet()) {
+            List<JobExecutionContext> jobs = new ArrayList<>(shard.getScheduler().getCurrentlyExecutingJobs());
+            DelayedJobEngine engine = DelayedJobEngine.get(shard.getScheduler());
+            if (engine != null) {
+                jobs.addAll(engine.getCurrentlyExecutingJobs());
+            }
+            if (!jobs.isEmpty()) {
+                executing.put(shard, jobs);
+            }
+        }
+        return executing;
     }
 
     @Override
     public boolean isRunning() {
-        if (schedulerFactoryBean != null) {
-            return schedulerFactoryBean.isRunning();
+        if (!isInitialized()) {
+            return false;
+        }
+        for (SchedulerFactoryBean shard : shards.keySet()) {
+            if (shard.isRunning()) {
+                return true;
+            }
         }
         return false;
     }
@@ -16,19 +16,71 @@
  */
 package quartzplus.core.spring;
 
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.config.BeanDefinition;
+import org.springframework.beans.factory.config.ConstructorArgumentValues;
 import org.springframework.beans.factory.support.BeanDefinitionRegistry;
 import org.springframework.beans.factory.support.BeanNameGenerator;
+import org.springframework.beans.factory.support.GenericBeanDefinition;
+import org.springframework.context.EnvironmentAware;
+import org.springframework.context.ResourceLoaderAware;
 import org.springframework.context.annotation.ImportBeanDefinitionRegistrar;
 import org.springframework.core.annotation.AnnotationAttributes;
+import org.springframework.core.env.Environment;
+import org.springframework.core.io.ResourceLoader;
+import org.springframework.core.io.UrlResource;
+import org.springframework.core.io.support.PropertiesLoaderUtils;
 import org.springframework.core.type.AnnotationMetadata;
 import org.springframework.core.type.filter.AnnotationTypeFilter;
 import org.springframework.util.ClassUtils;
 import org.springframework.util.StringUtils;
 
+import java.beans.Introspector;
+import java.io.IOException;
+import java.net.URL;
 import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.TreeMap;
 
-public class QuartzPlusJobScannerRegistrar implements ImportBeanDefinitionRegistrar {
+/**
+ * Registers a {@link QuartzPlusJobFactoryBean} for each {@link QuartzPlusJob} class of the packages given to
+ * {@link QuartzPlusJobScan}.
+ * <p>
+ * Job classes are read from the {@value #INDEX_LOCATION} files written at compile time by the quartz-plus-indexer
+ * annotation processor. A package is scanned on the classpath as before unless every classpath root holding it
+ * has an index, e.g. when a jar built without the processor adds job classes to it, and
+ * {@code quartz-plus.index.ignore=true} disables the index altogether.
+ */
+@Slf4j
+public class QuartzPlusJobScannerRegistrar implements ImportBeanDefinitionRegistrar, EnvironmentAware, ResourceLoaderAware {
+
+    public static final String INDEX_LOCATION = "META-INF/quartz-plus.jobs";
+
+    public static final String IGNORE_INDEX_PROPERTY = "quartz-plus.index.ignore";
+
+    private Environment environment;
+
+    private ResourceLoader resourceLoader;
+
+    /**
+     * Classpath roots holding an index, as URLs ending with a slash
+     */
+    private final Set<String> indexedRoots = new HashSet<String>();
+
+    @Override
+    public void setEnvironment(Environment environment) {
+        this.environment = environment;
+    }
+
+    @Override
+    public void setResourceLoader(ResourceLoader resourceLoader) {
+        this.resourceLoader = resourceLoader;
+    }
 
     @Override
     public void registerBeanDefinitions(AnnotationMetadata importingClassMetadata, BeanDefinitionRegistry registry, BeanNameGenerator importBeanNameGenerator) {
@@ -48,10 +100,137 @@ public class QuartzPlusJobScannerRegistrar implements ImportBeanDefinitionRegist
             basePackages.add(ClassUtils.getPackageName(clazz));
         }
 
+        Map<String, String> index = loadIndex();
+        List<String> scanPackages = new ArrayList<String>();
+        for (String basePackage : basePackages) {
+            if (!isIndexed(basePackage)) {
+                scanPackages.add(basePackage);
+                continue;
+            }
+            for (Map.Entry<String, String> job : index.entrySet()) {
+                if (job.getKey().startsWith(basePackage + ".")) {
+                    registerIndexedJob(job.getKey(), job.getValue(), registry);
+                }
+            }
+        }
+        if (scanPackages.isEmpty()) {
+            return;
+        }
+
         QuartzPlusJobBeanDefinitionScanner scanner = new QuartzPlusJobBeanDefinitionScanner(registry);
 
         scanner.addIncludeFilter(new AnnotationTypeFilter(QuartzPlusJob.class));
 
-        scanner.scan(StringUtils.toStringArray(basePackages));
+        scanner.scan(StringUtils.toStringArray(scanPackages));
+    }
+
+    /**
+     * Job class names mapped to their config keys, merged from every index on the classpath
+     */
+    private Map<String, String> loadIndex() {
+        Map<String, String> index = new TreeMap<String, String>();
+        if (environment != null && environment.getProperty(IGNORE_INDEX_PROPERTY, Boolean.class, false)) {
+            return index;
+        }
+        try {
+            Enumeration<URL> urls = getClassLoader().getResources(INDEX_LOCATION);
+            while (urls.hasMoreElements()) {
+                URL url = urls.nextElement();
+                Properties properties = PropertiesLoaderUtils.loadProperties(new UrlResource(url));
+                for (String className : properties.stringPropertyNames()) {
+                    index.put(className, properties.getProperty(className));
+                }
+                indexedRoots.add(getRoot(url, INDEX_LOCATION));
+            }
+        } catch (IOException e) {
+            log.warn("Failed to read {}, falling back to classpath scanning", INDEX_LOCATION, e);
+            index.clear();
+            indexedRoots.clear();
+        }
+        return index;
+    }
+
+    /**
+     * Whether every classpath root holding the package has an index, so that no job class of it can be missed
+     */
+    private boolean isIndexed(String basePackage) {
+        if (indexedRoots.isEmpty()) {
+            return false;
+        }
+        String packagePath = ClassUtils.convertClassNameToResourcePath(basePackage);
+        try {
+            Enumeration<URL> urls = getClassLoader().getResources(packagePath);
+            while (urls.hasMoreElements()) {
+                URL url = urls.nextElement();
+                if (!indexedRoots.contains(getRoot(url, packagePath))) {
+                    log.debug("{} has classes of package {} but no {}, scanning it", url, basePackage, INDEX_LOCATION);
+                    return false;
+                }
+            }
+            return true;
+        } catch (IOException e) {
+            log.warn("Failed to list the classpath roots of package {}, scanning it", basePackage, e);
+            return false;
+        }
+    }
+
+    private static String getRoot(URL url, String path) {
+        String location = url.toString();
+        if (location.endsWith("/")) {
+            location = location.substring(0, location.length() - 1);
+        }
+        return location.endsWith(path) ? location.substring(0, location.length() - path.length()) : location;
+    }
+
+    private void registerIndexedJob(String className, String configKey, BeanDefinitionRegistry registry) {
+        Class<?> jobClass;
+        try {
+            jobClass = ClassUtils.forName(className, getClassLoader());
+        } catch (ClassNotFoundException | LinkageError e) {
+            log.warn("Indexed job class {} can not be loaded, rebuild to refresh {}", className, INDEX_LOCATION);
+            return;
+        }
+        QuartzPlusJob quartzPlusJob = jobClass.getAnnotation(QuartzPlusJob.class);
+        if (quartzPlusJob == null) {
+            log.warn("Indexed job class {} is not annotated with @QuartzPlusJob, rebuild to refresh {}", className, INDEX_LOCATION);
+            return;
+        }
+        String beanName = StringUtils.hasText(quartzPlusJob.value()) ? quartzPlusJob.value()
+            : Introspector.decapitalize(ClassUtils.getShortName(className));
+        if (registry.containsBeanDefinition(beanName)) {
+            BeanDefinition existing = registry.getBeanDefinition(beanName);
+            if (isSameJob(existing, className)) {
+                // Already registered by another @QuartzPlusJobScan covering the same package
+                return;
+            }
+            // Same failure as ConflictingBeanDefinitionException of classpath scanning, which is not public
+            throw new IllegalStateException("Annotation-specified bean name '" + beanName +
+                "' for bean class [" + className + "] conflicts with existing, non-compatible bean definition of same name and class [" +
+                existing.getBeanClassName() + "]");
+        }
+
+        // Same definition as QuartzPlusJobBeanDefinitionScanner#doScan
+        GenericBeanDefinition beanDefinition = new GenericBeanDefinition();
+        beanDefinition.setBeanClass(QuartzPlusJobFactoryBean.class);
+        beanDefinition.getConstructorArgumentValues().addGenericArgumentValue(className);
+        beanDefinition.setLazyInit(false);
+        registry.registerBeanDefinition(beanName, beanDefinition);
+        log.debug("Registered job class {} configured by quartz.scheduler.{} from {}", className, configKey, INDEX_LOCATION);
+    }
+
+    private static boolean isSameJob(BeanDefinition beanDefinition, String className) {
+        if (!QuartzPlusJobFactoryBean.class.getName().equals(beanDefinition.getBeanClassName())) {
+            return false;
+        }
+        for (ConstructorArgumentValues.ValueHolder argument : beanDefinition.getConstructorArgumentValues().getGenericArgumentValues()) {
+            if (className.equals(argument.getValue())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private ClassLoader getClassLoader() {
+        return resourceLoader != null ? resourceLoader.getClassLoader() : ClassUtils.getDefaultClassLoader();
     }
 }
@@ -18,6 +18,11 @@ package quartzplus.core.spring;
 
 import lombok.Data;
 
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
 @Data
 public class SchedulerConfig {
 
@@ -63,4 +68,191 @@ public class SchedulerConfig {
 
     private String driverDelegateClass;
 
+    /**
+     * Max fired triggers per trigger group, honoured by GroupBalanceTriggerDelegate
+     */
+    private Integer maxConcurrentPerGroup = 1;
+
+    /**
+     * Per trigger group overrides of maxConcurrentPerGroup
+     */
+    private Map<String, Integer> groupMaxConcurrent = new LinkedHashMap<>();
+
+    /**
+     * Whether triggers of groups at their limit are never acquired, even if threads are idle
+     */
+    private Boolean strictGroupConcurrency = false;
+
+    /**
+     * Candidate triggers scanned per acquisition by GroupBalanceTriggerDelegate
+     */
+    private Integer acquireScanWindow = 32;
+
+    /**
+     * Whether GroupBalanceTriggerDelegate interleaves trigger groups by weighted fair queuing
+     */
+    private Boolean fairGroupAcquisition = false;
+
+    /**
+     * Weight of each trigger group in fair acquisition, default weight is 1
+     */
+    private Map<String, Integer> groupWeights = new LinkedHashMap<>();
+
+    /**
+     * Whether the delegate honours group limits, defaults to true for GroupBalanceTriggerDelegate and false for SkipLockedTriggerDelegate
+     */
+    private Boolean groupBalance;
+
+    /**
+     * Codec storing JobDataMaps with GroupBalanceTriggerDelegate, "compact" or a JobDataCodec class name, unset for Java serialization
+     */
+    private String jobDataCodec;
+
+    /**
+     * Encoded JobDataMaps larger than this many bytes are gzipped, negative to never compress
+     */
+    private Integer jobDataCompressThreshold = 1024;
+
+    /**
+     * Milliseconds of waiting worth one trigger priority level in GroupBalanceTriggerDelegate, 0 to only break ties by priority
+     */
+    private Long priorityAgingMillis = 0L;
+
+    /**
+     * Share of the executions traced, overrides @QuartzPlusJob(traceSamplingRatio)
+     */
+    private Double traceSamplingRatio;
+
+    /**
+     * Trace only executions at least this slow or failing, overrides @QuartzPlusJob(traceSlowThresholdMillis)
+     */
+    private Long traceSlowThresholdMillis;
+
+    /**
+     * Whether to register Micrometer meters, requires a MeterRegistry bean
+     */
+    private Boolean metricsEnabled = true;
+
+    /**
+     * Interval in seconds between two refreshes of the trigger backlog gauge, 0 disables it
+     */
+    private Integer backlogRefreshSeconds = 15;
+
+    /**
+     * Whether to record every execution in the JOB_HISTORY table, requires a DataSource
+     */
+    private Boolean historyEnabled = false;
+
+    /**
+     * Days execution history is kept before it is purged, 0 keeps it
+     */
+    private Integer historyRetentionDays = 30;
+
+    /**
+     * Whether isJobRunning looks up FIRED_TRIGGERS to see jobs executing on every node, only in cluster mode
+     */
+    private Boolean clusterWideRunningCheck = false;
+
+    /**
+     * Number of schedulers the jobs of this job class are spread over by a consistent hash of job group and name
+     */
+    private Integer shards = 1;
+
+    /**
+     * Table prefix of each shard, by default shards share the table prefix of the scheduler
+     */
+    private List<String> shardTablePrefixes = new ArrayList<>();
+
+    /**
+     * Max triggers acquired per acquisition, the upper bound in adaptive mode, unset keeps the Quartz property
+     */
+    private Integer batchTriggerAcquisitionMaxCount;
+
+    /**
+     * Milliseconds a trigger may be acquired and fired ahead of its scheduled time, unset keeps the Quartz property
+     */
+    private Long batchTriggerAcquisitionFireAheadTimeWindow;
+
+    /**
+     * Whether the batch grows under a due trigger backlog and shrinks when fire lag is low, needs a DataSource
+     */
+    private Boolean adaptiveBatchAcquisition = false;
+
+    /**
+     * Fire lag in milliseconds below which the adaptive batch shrinks and above which it may grow
+     */
+    private Long adaptiveBatchLowLagMillis = 100L;
+
+    /**
+     * Whether the node wide poller looks up due triggers for this scheduler instead of its own thread, needs a DataSource
+     */
+    private Boolean sharedPolling = false;
+
+    /**
+     * Interval in milliseconds of the node wide poller, the smallest one of all schedulers is used. Defaults to
+     * {@code org.quartz.scheduler.idleWaitTime}, 30 seconds unless set
+     */
+    private Long sharedPollingIntervalMillis;
+
+    /**
+     * Whether the node wide heartbeat checks this scheduler in, only in cluster mode, needs a DataSource
+     */
+    private Boolean sharedClusterHeartbeat = false;
+
+    /**
+     * Triggers acquired per second by the scheduler, unset for no limit, needs a DataSource
+     */
+    private Double rateLimitPermitsPerSecond;
+
+    /**
+     * Triggers acquired per second per job group
+     */
+    private Map<String, Double> rateLimitGroups = new LinkedHashMap<>();
+
+    /**
+     * Seconds of permits that can be used at once after a quiet period
+     */
+    private Double rateLimitBurstSeconds = 1.0;
+
+    /**
+     * Whether rate limit budgets are shared by all nodes through the RATE_LIMITS table
+     */
+    private Boolean rateLimitClustered = false;
+
+    /**
+     * Whether one shot jobs are run by a timing wheel from the DELAYED_JOBS table instead of Quartz triggers, requires a DataSource
+     */
+    private Boolean delayedJobsEnabled = false;
+
+    /**
+     * Resolution of the delayed job timing wheel in milliseconds
+     */
+    private Long delayedJobsTickMillis = 10L;
+
+    /**
+     * Delayed jobs due within this many milliseconds are kept in memory, later ones only in the DELAYED_JOBS table
+     */
+    private Long delayedJobsLoadAheadMillis = 60_000L;
+
+    /**
+     * Threads running delayed jobs, unset to use threadCount
+     */
+    private Integer delayedJobsThreads;
+
+    /**
+     * Whether the scheduler is initialized in the background while the other beans are created
+     */
+    private Boolean parallelInit = true;
+
+    /**
+     * Whether the scheduler is only created on first use, e.g. by QuartzPlusBaseService. Ignored with a JDBC job store
+     * using Quartz data sources instead of the Spring DataSource
+     */
+    private Boolean lazyInit = false;
+
+    /**
+     * Seconds from the start of the context shutdown that running jobs are given to complete
+     */
+    private Long shutdownTimeoutSeconds = 25L;
+
 }
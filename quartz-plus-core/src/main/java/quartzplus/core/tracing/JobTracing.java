@@ -0,0 +1,78 @@
+/*
+ * All content copyright unionj-cloud, unless otherwise indicated. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy
+ * of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package quartzplus.core.tracing;
+
+import io.opentelemetry.api.OpenTelemetry;
+import io.opentelemetry.instrumentation.quartz.v2_0.QuartzTelemetry;
+import org.quartz.JobListener;
+import org.quartz.ListenerManager;
+import org.quartz.Scheduler;
+import org.quartz.SchedulerException;
+import org.quartz.impl.matchers.EverythingMatcher;
+
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Enables tracing of the jobs of a scheduler in one of three modes:
+ * <ul>
+ *     <li>every execution, by the OpenTelemetry Quartz instrumentation</li>
+ *     <li>a sampled share of the executions, by the same instrumentation behind a {@link SampledJobListener}</li>
+ *     <li>slow or failed executions only, recorded after they finished by a {@link SlowJobSpanListener}</li>
+ * </ul>
+ */
+public final class JobTracing {
+
+    static final String INSTRUMENTATION_NAME = "quartzplus";
+
+    private JobTracing() {
+    }
+
+    /**
+     * @param samplingRatio       share of the executions traced, from 0 to 1
+     * @param slowThresholdMillis when not negative, only executions running at least that long or failing are traced,
+     *                            and samplingRatio is ignored
+     */
+    public static void configure(Scheduler scheduler, OpenTelemetry openTelemetry, double samplingRatio,
+                                 long slowThresholdMillis) throws SchedulerException {
+        ListenerManager listenerManager = scheduler.getListenerManager();
+        if (slowThresholdMillis >= 0) {
+            listenerManager.addJobListener(new SlowJobSpanListener(openTelemetry.getTracer(INSTRUMENTATION_NAME),
+                slowThresholdMillis), EverythingMatcher.allJobs());
+            return;
+        }
+        if (samplingRatio <= 0) {
+            return;
+        }
+
+        Set<String> existing = new HashSet<>();
+        for (JobListener listener : listenerManager.getJobListeners()) {
+            existing.add(listener.getName());
+        }
+        QuartzTelemetry.builder(openTelemetry).setCaptureExperimentalSpanAttributes(true).build().configure(scheduler);
+        if (samplingRatio >= 1) {
+            return;
+        }
+        // Puts the listener added by the instrumentation behind the sampling decision
+        for (JobListener listener : listenerManager.getJobListeners()) {
+            if (!existing.contains(listener.getName())) {
+                listenerManager.removeJobListener(listener.getName());
+                listenerManager.addJobListener(new SampledJobListener(listener, samplingRatio), EverythingMatcher.allJobs());
+            }
+        }
+    }
+}
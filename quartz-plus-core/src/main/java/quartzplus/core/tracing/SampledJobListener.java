@@ -0,0 +1,72 @@
+/*
+ * All content copyright unionj-cloud, unless otherwise indicated. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy
+ * of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package quartzplus.core.tracing;
+
+import org.quartz.JobExecutionContext;
+import org.quartz.JobExecutionException;
+import org.quartz.JobListener;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Hands a random share of the executions to the tracing listener, the others cost one random draw and create no span
+ */
+public class SampledJobListener implements JobListener {
+
+    private static final String SAMPLED = SampledJobListener.class.getName() + ".sampled";
+
+    private final JobListener delegate;
+
+    private final double samplingRatio;
+
+    public SampledJobListener(JobListener delegate, double samplingRatio) {
+        this.delegate = delegate;
+        this.samplingRatio = samplingRatio;
+    }
+
+    @Override
+    public String getName() {
+        return delegate.getName();
+    }
+
+    @Override
+    public void jobToBeExecuted(JobExecutionContext context) {
+        if (isSampled()) {
+            context.put(SAMPLED, Boolean.TRUE);
+            delegate.jobToBeExecuted(context);
+        }
+    }
+
+    @Override
+    public void jobExecutionVetoed(JobExecutionContext context) {
+        // Quartz does not call jobToBeExecuted for vetoed executions, they are sampled on their own
+        if (isSampled()) {
+            delegate.jobExecutionVetoed(context);
+        }
+    }
+
+    @Override
+    public void jobWasExecuted(JobExecutionContext context, JobExecutionException jobException) {
+        if (context.get(SAMPLED) != null) {
+            delegate.jobWasExecuted(context, jobException);
+        }
+    }
+
+    private boolean isSampled() {
+        return ThreadLocalRandom.current().nextDouble() < samplingRatio;
+    }
+}
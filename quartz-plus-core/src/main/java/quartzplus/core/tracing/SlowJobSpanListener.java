@@ -0,0 +1,80 @@
+/*
+ * All content copyright unionj-cloud, unless otherwise indicated. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy
+ * of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package quartzplus.core.tracing;
+
+import io.opentelemetry.api.trace.Span;
+import io.opentelemetry.api.trace.SpanKind;
+import io.opentelemetry.api.trace.StatusCode;
+import io.opentelemetry.api.trace.Tracer;
+import org.quartz.JobExecutionContext;
+import org.quartz.JobExecutionException;
+import org.quartz.JobKey;
+import org.quartz.JobListener;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Records a span for the executions running at least the threshold or failing, once they finished, with the fire
+ * time as start. Nothing is done while jobs run, so spans created by the job itself are not children of it.
+ */
+public class SlowJobSpanListener implements JobListener {
+
+    private final Tracer tracer;
+
+    private final long thresholdMillis;
+
+    public SlowJobSpanListener(Tracer tracer, long thresholdMillis) {
+        this.tracer = tracer;
+        this.thresholdMillis = thresholdMillis;
+    }
+
+    @Override
+    public String getName() {
+        return "QuartzPlusSlowJobTracing";
+    }
+
+    @Override
+    public void jobToBeExecuted(JobExecutionContext context) {
+    }
+
+    @Override
+    public void jobExecutionVetoed(JobExecutionContext context) {
+    }
+
+    @Override
+    public void jobWasExecuted(JobExecutionContext context, JobExecutionException jobException) {
+        long runTime = Math.max(context.getJobRunTime(), 0);
+        if (jobException == null && runTime < thresholdMillis) {
+            return;
+        }
+        JobKey jobKey = context.getJobDetail().getKey();
+        long startTime = context.getFireTime().getTime();
+        Span span = tracer.spanBuilder(jobKey.getGroup() + "." + jobKey.getName())
+            .setNoParent()
+            .setSpanKind(SpanKind.INTERNAL)
+            .setStartTimestamp(startTime, TimeUnit.MILLISECONDS)
+            .setAttribute("job.system", "quartz")
+            .setAttribute("code.namespace", context.getJobDetail().getJobClass().getName())
+            .setAttribute("code.function", "execute")
+            .startSpan();
+        if (jobException != null) {
+            span.recordException(jobException.getCause() != null ? jobException.getCause() : jobException);
+            span.setStatus(StatusCode.ERROR);
+        }
+        span.end(startTime + runTime, TimeUnit.MILLISECONDS);
+    }
+}
@@ -0,0 +1,48 @@
+/*
+ * All content copyright unionj-cloud, unless otherwise indicated. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy
+ * of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package quartzplus.core.wakeup;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * In-process {@link WakeUpChannel}, the default one. Signals only reach the schedulers of this JVM, sharing one
+ * instance between several application contexts makes it a loopback channel for tests.
+ */
+@Slf4j
+public class LocalWakeUpChannel implements WakeUpChannel {
+
+    private final List<WakeUpListener> listeners = new CopyOnWriteArrayList<>();
+
+    @Override
+    public void publish(String schedulerName, long fireTime) {
+        for (WakeUpListener listener : listeners) {
+            try {
+                listener.wakeUp(schedulerName, fireTime);
+            } catch (RuntimeException e) {
+                log.warn("Failed to wake up scheduler {}", schedulerName, e);
+            }
+        }
+    }
+
+    @Override
+    public void subscribe(WakeUpListener listener) {
+        listeners.add(listener);
+    }
+}
@@ -0,0 +1,35 @@
+/*
+ * All content copyright unionj-cloud, unless otherwise indicated. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy
+ * of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package quartzplus.core.wakeup;
+
+/**
+ * Carries wake up signals for scheduler threads between nodes, so that a trigger added on one node is picked up by
+ * the idle scheduler threads of every node well before their idle wait elapses.
+ * <p>
+ * Implementations deliver every published signal to the listeners subscribed on all nodes, including the publishing
+ * one, e.g. over Redis pub/sub or PostgreSQL LISTEN/NOTIFY. Delivery is best effort, a lost signal only means the
+ * trigger is picked up at the next regular poll.
+ */
+public interface WakeUpChannel {
+
+    /**
+     * Announces that a trigger of the scheduler becomes due at fireTime
+     */
+    void publish(String schedulerName, long fireTime);
+
+    void subscribe(WakeUpListener listener);
+}
@@ -0,0 +1,25 @@
+--
+-- One shot jobs of quartzplus.core.delay.DelayedJobEngine when delayed-jobs.enabled is set.
+--
+-- Run it once per table prefix in use, replacing QRTZ_ with the scheduler's table prefix, and BLOB with the type of
+-- JOB_DETAILS.JOB_DATA in the Quartz script of your database (BYTEA on PostgreSQL, IMAGE on SQL Server). STATE is
+-- WAITING, LOADED or EXECUTING, INSTANCE_NAME is the node that loaded the job, FIRE_TIME is in epoch milliseconds
+-- like in the Quartz tables. Rows are deleted once their job ran.
+--
+
+CREATE TABLE QRTZ_DELAYED_JOBS (
+  SCHED_NAME VARCHAR(120) NOT NULL,
+  JOB_NAME VARCHAR(200) NOT NULL,
+  JOB_GROUP VARCHAR(200) NOT NULL,
+  JOB_CLASS_NAME VARCHAR(250) NOT NULL,
+  DESCRIPTION VARCHAR(250) NULL,
+  FIRE_TIME BIGINT NOT NULL,
+  STATE VARCHAR(16) NOT NULL,
+  INSTANCE_NAME VARCHAR(200) NULL,
+  LOAD_ID BIGINT NULL,
+  JOB_DATA BLOB NULL,
+  PRIMARY KEY (SCHED_NAME,JOB_NAME,JOB_GROUP)
+);
+
+CREATE INDEX IDX_QRTZ_DJ_S_FT ON QRTZ_DELAYED_JOBS(SCHED_NAME,STATE,FIRE_TIME);
+CREATE INDEX IDX_QRTZ_DJ_INST ON QRTZ_DELAYED_JOBS(SCHED_NAME,INSTANCE_NAME,LOAD_ID);
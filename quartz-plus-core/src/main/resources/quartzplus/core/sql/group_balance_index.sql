@@ -0,0 +1,9 @@
+--
+-- Index backing the fired trigger count lookup of quartzplus.core.quartz.GroupBalanceTriggerDelegate.
+--
+-- The stock Quartz scripts for MySQL InnoDB, PostgreSQL, Oracle and CUBRID already create it, run this
+-- for the other databases (e.g. H2, SQL Server) once per table prefix in use, replacing QRTZ_ with the
+-- scheduler's table prefix.
+--
+
+CREATE INDEX IDX_QRTZ_FT_TG ON QRTZ_FIRED_TRIGGERS(SCHED_NAME,TRIGGER_GROUP);
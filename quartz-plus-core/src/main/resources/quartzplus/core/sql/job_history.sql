@@ -0,0 +1,26 @@
+--
+-- Execution history written by quartzplus.core.history.JobHistoryListener when history-enabled is set.
+--
+-- Run it once per table prefix in use, replacing QRTZ_ with the scheduler's table prefix. OUTCOME is one of
+-- SUCCESS, FAILED or VETOED, times are epoch milliseconds like in the Quartz tables. Rows older than
+-- history-retention-days are purged hourly by SCHED_NAME and END_TIME.
+--
+
+CREATE TABLE QRTZ_JOB_HISTORY (
+  SCHED_NAME VARCHAR(120) NOT NULL,
+  INSTANCE_NAME VARCHAR(200) NOT NULL,
+  ENTRY_ID VARCHAR(95) NOT NULL,
+  JOB_NAME VARCHAR(200) NOT NULL,
+  JOB_GROUP VARCHAR(200) NOT NULL,
+  TRIGGER_NAME VARCHAR(200) NOT NULL,
+  TRIGGER_GROUP VARCHAR(200) NOT NULL,
+  SCHED_TIME BIGINT NOT NULL,
+  FIRED_TIME BIGINT NOT NULL,
+  END_TIME BIGINT NOT NULL,
+  RUN_TIME BIGINT NOT NULL,
+  OUTCOME VARCHAR(16) NOT NULL,
+  ERROR_MESSAGE VARCHAR(1000) NULL
+);
+
+CREATE INDEX IDX_QRTZ_JH_END ON QRTZ_JOB_HISTORY(SCHED_NAME,END_TIME);
+CREATE INDEX IDX_QRTZ_JH_JOB ON QRTZ_JOB_HISTORY(SCHED_NAME,JOB_GROUP,JOB_NAME);
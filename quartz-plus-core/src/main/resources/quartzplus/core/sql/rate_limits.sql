@@ -0,0 +1,15 @@
+--
+-- Token buckets of quartzplus.core.quartz.QuartzPlusJobStore when rate-limit.clustered is set, shared by the
+-- nodes of a cluster. Rows are created on first use and locked with SELECT ... FOR UPDATE.
+--
+-- Run it once per table prefix in use, replacing QRTZ_ with the scheduler's table prefix. BUCKET_NAME is * for
+-- the limit of the scheduler and group:<job group> for the limit of a job group.
+--
+
+CREATE TABLE QRTZ_RATE_LIMITS (
+  SCHED_NAME VARCHAR(120) NOT NULL,
+  BUCKET_NAME VARCHAR(210) NOT NULL,
+  TOKENS DOUBLE PRECISION NOT NULL,
+  LAST_REFILL BIGINT NOT NULL,
+  PRIMARY KEY (SCHED_NAME,BUCKET_NAME)
+);
@@ -0,0 +1,207 @@
+/*
+ * All content copyright unionj-cloud, unless otherwise indicated. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy
+ * of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package quartzplus.core.delay;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.quartz.JobDataMap;
+import org.quartz.JobKey;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import quartzplus.core.H2Database;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class DelayedJobStoreTest {
+
+    private static final String SCHEDULER_NAME = "delayedJobStoreTest";
+
+    private static final String NOBODY = "nobody";
+
+    private DataSource dataSource;
+
+    private DelayedJobStore store;
+
+    @BeforeEach
+    void setUp() throws SQLException {
+        dataSource = H2Database.create();
+        store = new DelayedJobStore(dataSource, H2Database.TABLE_PREFIX, SCHEDULER_NAME);
+    }
+
+    @Test
+    void claimsDueJobsByFireTimeUpToTheLimit() throws Exception {
+        insertWaiting(job("e", 500L), job("a", 100L), job("c", 300L), job("b", 200L), job("d", 400L), job("late", 5000L));
+
+        List<DelayedJob> claimed = store.claim("node1", 1L, 1000L, 3);
+        assertEquals(names("a", "b", "c"), names(claimed));
+        assertEquals("a", claimed.stream().filter(job -> job.getFireTime() == 100L).findFirst()
+            .map(job -> job.getJobDataMap().getString("name")).orElse(null));
+        assertEquals(names("d", "e"), names(store.claim("node2", 2L, 1000L, 3)));
+        assertTrue(store.claim("node1", 3L, 1000L, 3).isEmpty());
+    }
+
+    @Test
+    void insertsJobsDueSoonAsLoadedByTheOwner() throws Exception {
+        assertTrue(all(store.insert(Arrays.asList(job("a", 100L), job("b", 2000L)), "node1", 1000L)));
+
+        assertEquals(names("b"), names(store.claim("node2", 1L, 5000L, 10)));
+        assertEquals(keys("a"), store.markExecuting("node1", Arrays.asList(job("a", 100L))));
+    }
+
+    @Test
+    void duplicatesFailOnlyTheirOwnJob() throws Exception {
+        insertWaiting(job("a", 100L));
+
+        boolean[] stored = store.insert(Arrays.asList(job("b", 100L), job("a", 200L), job("c", 300L)), NOBODY, Long.MIN_VALUE);
+        assertEquals(Arrays.asList(true, false, true), toList(stored));
+        assertEquals(Long.valueOf(100L), store.selectFireTime(JobKey.jobKey("a", "group")));
+        assertNotNull(store.select(JobKey.jobKey("c", "group")));
+    }
+
+    @Test
+    void insertJoinsTheSpringTransaction() throws Exception {
+        TransactionTemplate transactionTemplate = new TransactionTemplate(new DataSourceTransactionManager(dataSource));
+
+        transactionTemplate.executeWithoutResult(status -> {
+            insertUnchecked(job("a", 100L));
+            status.setRollbackOnly();
+        });
+        assertNull(store.select(JobKey.jobKey("a", "group")));
+
+        boolean[] stored = transactionTemplate.execute(status -> insertUnchecked(job("a", 100L), job("a", 200L)));
+        assertEquals(Arrays.asList(true, false), toList(stored));
+        assertEquals(Long.valueOf(100L), store.selectFireTime(JobKey.jobKey("a", "group")));
+    }
+
+    @Test
+    void marksOnlyJobsLoadedByTheOwner() throws Exception {
+        insertWaiting(job("a", 100L), job("b", 200L));
+        List<DelayedJob> claimed = store.claim("node1", 1L, 1000L, 10);
+
+        assertTrue(store.markExecuting("node2", claimed).isEmpty());
+        assertEquals(keys("a", "b"), store.markExecuting("node1", claimed));
+        assertTrue(store.markExecuting("node1", claimed).isEmpty());
+    }
+
+    @Test
+    void releaseOwnedReturnsLoadedButNotExecutingJobs() throws Exception {
+        insertWaiting(job("a", 100L), job("b", 200L), job("c", 300L));
+        store.claim("node1", 1L, 1000L, 10);
+        store.markExecuting("node1", Arrays.asList(job("a", 100L)));
+
+        assertEquals(2, store.releaseOwned("node1"));
+        assertEquals(names("b", "c"), names(store.claim("node2", 2L, 1000L, 10)));
+    }
+
+    @Test
+    void releaseOrphansRecoversJobsOfInstancesThatLeftTheCluster() throws Exception {
+        checkIn("alive");
+        insertWaiting(job("a", 100L), job("b", 200L), job("c", 300L));
+        assertEquals(names("a"), names(store.claim("alive", 1L, 100L, 10)));
+        assertEquals(names("b", "c"), names(store.claim("dead", 2L, 300L, 10)));
+        store.markExecuting("dead", Arrays.asList(job("b", 200L)));
+
+        assertEquals(2, store.releaseOrphans());
+        assertEquals(names("b", "c"), names(store.claim("alive", 3L, 1000L, 10)));
+        assertEquals(0, store.releaseOrphans());
+        assertEquals(3, store.releaseAll());
+    }
+
+    @Test
+    void deleteRemovesJobsInAnyState() throws Exception {
+        insertWaiting(job("a", 100L), job("b", 200L));
+        store.claim("node1", 1L, 100L, 10);
+
+        assertEquals(2, store.delete(keys("a", "b", "missing")));
+        assertNull(store.selectFireTime(JobKey.jobKey("a", "group")));
+    }
+
+    private static DelayedJob job(String name, long fireTime) {
+        JobDataMap jobDataMap = new JobDataMap();
+        jobDataMap.put("name", name);
+        return new DelayedJob(name, "group", "quartzplus.core.delay.NoOpJob", null, fireTime, jobDataMap);
+    }
+
+    private void insertWaiting(DelayedJob... jobs) throws Exception {
+        assertTrue(all(store.insert(Arrays.asList(jobs), NOBODY, Long.MIN_VALUE)));
+    }
+
+    private boolean[] insertUnchecked(DelayedJob... jobs) {
+        try {
+            return store.insert(Arrays.asList(jobs), NOBODY, Long.MIN_VALUE);
+        } catch (Exception e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private void checkIn(String instanceName) throws SQLException {
+        try (Connection conn = dataSource.getConnection();
+             PreparedStatement ps = conn.prepareStatement("INSERT INTO " + H2Database.TABLE_PREFIX + "SCHEDULER_STATE " +
+                 "(SCHED_NAME, INSTANCE_NAME, LAST_CHECKIN_TIME, CHECKIN_INTERVAL) VALUES (?, ?, ?, ?)")) {
+            ps.setString(1, SCHEDULER_NAME);
+            ps.setString(2, instanceName);
+            ps.setLong(3, System.currentTimeMillis());
+            ps.setLong(4, 7500L);
+            ps.executeUpdate();
+        }
+    }
+
+    private static Set<String> names(String... names) {
+        return new HashSet<>(Arrays.asList(names));
+    }
+
+    private static Set<String> names(List<DelayedJob> jobs) {
+        Set<String> names = new HashSet<>();
+        for (DelayedJob job : jobs) {
+            names.add(job.getJobName());
+        }
+        return names;
+    }
+
+    private static Set<JobKey> keys(String... names) {
+        Set<JobKey> keys = new HashSet<>();
+        for (String name : names) {
+            keys.add(JobKey.jobKey(name, "group"));
+        }
+        return keys;
+    }
+
+    private static boolean all(boolean[] values) {
+        return !toList(values).contains(false);
+    }
+
+    private static List<Boolean> toList(boolean[] values) {
+        List<Boolean> list = new ArrayList<>();
+        for (boolean value : values) {
+            list.add(value);
+        }
+        return list;
+    }
+}
@@ -0,0 +1,127 @@
+/*
+ * All content copyright unionj-cloud, unless otherwise indicated. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy
+ * of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package quartzplus.core.delay;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class TimingWheelTest {
+
+    private static final long TICK = 10L;
+
+    /**
+     * Levels of 80 ms, 640 ms and 5120 ms, so that the expirations below cascade through all of them
+     */
+    private static final int WHEEL_SIZE = 8;
+
+    /**
+     * One per tick, entries of the same tick expire in the order they were added
+     */
+    private static final long[] EXPIRATIONS = {15L, 25L, 69L, 80L, 100L, 639L, 1000L, 5003L, 12_345L};
+
+    @Test
+    void neverExpiresEarlyNorLaterThanATick() {
+        TimingWheel<Long> wheel = new TimingWheel<>(TICK, WHEEL_SIZE, 0L);
+        for (long expiration : EXPIRATIONS) {
+            assertTrue(wheel.add(new TimingWheel.Entry<>(expiration, expiration)));
+        }
+        List<Long> expired = new ArrayList<>();
+        for (long now = 0L; now <= 13_000L; now++) {
+            long time = now;
+            wheel.advance(now, entry -> {
+                assertTrue(time >= entry.expiration, "expired early: " + entry.expiration + " at " + time);
+                assertTrue(time - entry.expiration < TICK, "expired late: " + entry.expiration + " at " + time);
+                expired.add(entry.payload);
+            });
+        }
+        assertEquals(toList(EXPIRATIONS), expired);
+        assertEquals(Long.MAX_VALUE, wheel.nextExpiration());
+    }
+
+    @Test
+    void cascadesInOrderWhenTheClockJumps() {
+        TimingWheel<Long> wheel = new TimingWheel<>(TICK, WHEEL_SIZE, 0L);
+        for (int i = EXPIRATIONS.length - 1; i >= 0; i--) {
+            wheel.add(new TimingWheel.Entry<>(EXPIRATIONS[i], EXPIRATIONS[i]));
+        }
+        List<Long> expired = new ArrayList<>();
+        wheel.advance(999L, entry -> expired.add(entry.payload));
+        assertEquals(Arrays.asList(15L, 25L, 69L, 80L, 100L, 639L), expired);
+        wheel.advance(20_000L, entry -> expired.add(entry.payload));
+        assertEquals(toList(EXPIRATIONS), expired);
+    }
+
+    @Test
+    void nextExpirationIsNeverAfterTheEarliestEntry() {
+        TimingWheel<Long> wheel = new TimingWheel<>(TICK, WHEEL_SIZE, 0L);
+        assertEquals(Long.MAX_VALUE, wheel.nextExpiration());
+        wheel.add(new TimingWheel.Entry<>(1000L, 1000L));
+        assertTrue(wheel.nextExpiration() <= 1000L);
+        wheel.add(new TimingWheel.Entry<>(25L, 25L));
+        assertEquals(30L, wheel.nextExpiration());
+    }
+
+    @Test
+    void rejectsEntriesAlreadyDue() {
+        TimingWheel<Long> wheel = new TimingWheel<>(TICK, WHEEL_SIZE, 1000L);
+        assertFalse(wheel.add(new TimingWheel.Entry<>(999L, 999L)));
+        assertFalse(wheel.add(new TimingWheel.Entry<>(1000L, 1000L)));
+        assertTrue(wheel.add(new TimingWheel.Entry<>(1001L, 1001L)));
+        wheel.advance(1500L, entry -> {
+        });
+        assertFalse(wheel.add(new TimingWheel.Entry<>(1500L, 1500L)));
+        assertTrue(wheel.add(new TimingWheel.Entry<>(1505L, 1505L)));
+    }
+
+    @Test
+    void cancelledEntriesDoNotExpire() {
+        TimingWheel<Long> wheel = new TimingWheel<>(TICK, WHEEL_SIZE, 0L);
+        TimingWheel.Entry<Long> kept = new TimingWheel.Entry<>(1L, 50L);
+        TimingWheel.Entry<Long> sameBucket = new TimingWheel.Entry<>(2L, 50L);
+        TimingWheel.Entry<Long> overflow = new TimingWheel.Entry<>(3L, 5003L);
+        TimingWheel.Entry<Long> cascaded = new TimingWheel.Entry<>(4L, 700L);
+        wheel.add(kept);
+        wheel.add(sameBucket);
+        wheel.add(overflow);
+        wheel.add(cascaded);
+        TimingWheel.remove(sameBucket);
+        TimingWheel.remove(overflow);
+        List<Long> expired = new ArrayList<>();
+        wheel.advance(660L, entry -> expired.add(entry.payload));
+        // Moved down from the 640 ms level by now, removed from the bucket it was cascaded to
+        TimingWheel.remove(cascaded);
+        // Removing twice is a no-op
+        TimingWheel.remove(sameBucket);
+        wheel.advance(20_000L, entry -> expired.add(entry.payload));
+        assertEquals(Arrays.asList(1L), expired);
+    }
+
+    private static List<Long> toList(long[] values) {
+        List<Long> list = new ArrayList<>();
+        for (long value : values) {
+            list.add(value);
+        }
+        return list;
+    }
+}
@@ -0,0 +1,155 @@
+/*
+ * All content copyright unionj-cloud, unless otherwise indicated. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy
+ * of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package quartzplus.core.quartz;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.quartz.TriggerKey;
+import org.quartz.impl.jdbcjobstore.Constants;
+import org.quartz.simpl.SimpleClassLoadHelper;
+import org.slf4j.LoggerFactory;
+import quartzplus.core.H2Database;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SkipLockedTriggerDelegateTest {
+
+    private static final String SCHEDULER_NAME = "skipLockedTest";
+
+    private static final String GROUP = "DEFAULT";
+
+    private DataSource dataSource;
+
+    private SkipLockedTriggerDelegate delegate;
+
+    private final List<Connection> connections = new ArrayList<>();
+
+    @BeforeEach
+    void setUp() throws Exception {
+        dataSource = H2Database.create();
+        delegate = new SkipLockedTriggerDelegate();
+        delegate.initialize(LoggerFactory.getLogger(SkipLockedTriggerDelegateTest.class), H2Database.TABLE_PREFIX,
+            SCHEDULER_NAME, "node1", new SimpleClassLoadHelper(), false,
+            SkipLockedTriggerDelegate.SETTING_LOCK_CLAUSE + "=FOR UPDATE SKIP LOCKED");
+        try (Connection conn = dataSource.getConnection()) {
+            insertJob(conn, "job");
+            for (int i = 1; i <= 4; i++) {
+                insertTrigger(conn, "t" + i, "job", i * 100L);
+            }
+        }
+    }
+
+    @AfterEach
+    void tearDown() throws Exception {
+        for (Connection conn : connections) {
+            conn.rollback();
+            conn.close();
+        }
+    }
+
+    @Test
+    void concurrentScansGetDisjointTriggers() throws Exception {
+        Connection first = begin();
+        Connection second = begin();
+
+        List<TriggerKey> locked = delegate.selectTriggerToAcquire(first, 1000L, 0L, 2);
+        assertEquals(keys("t1", "t2"), locked);
+
+        // Returns right away instead of waiting for the first transaction, and never hands out its rows
+        List<TriggerKey> skipping = delegate.selectTriggerToAcquire(second, 1000L, 0L, 4);
+        for (TriggerKey key : skipping) {
+            assertTrue(!locked.contains(key), key + " was locked by the first scan");
+        }
+        assertTrue(keys("t3", "t4").containsAll(skipping));
+    }
+
+    @Test
+    void rowsAreAvailableAgainOnceTheScanEnds() throws Exception {
+        Connection first = begin();
+        assertEquals(keys("t1", "t2"), delegate.selectTriggerToAcquire(first, 1000L, 0L, 2));
+        first.rollback();
+
+        assertEquals(keys("t1", "t2", "t3", "t4"), delegate.selectTriggerToAcquire(begin(), 1000L, 0L, 4));
+    }
+
+    @Test
+    void leavesTriggersThatAreNotDueOrWaiting() throws Exception {
+        try (Connection conn = dataSource.getConnection();
+             PreparedStatement ps = conn.prepareStatement("UPDATE " + H2Database.TABLE_PREFIX
+                 + "TRIGGERS SET TRIGGER_STATE = ? WHERE TRIGGER_NAME = ?")) {
+            ps.setString(1, Constants.STATE_PAUSED);
+            ps.setString(2, "t2");
+            ps.executeUpdate();
+        }
+
+        Set<TriggerKey> due = new HashSet<>(delegate.selectTriggerToAcquire(begin(), 300L, 0L, 4));
+        assertEquals(new HashSet<>(keys("t1", "t3")), due);
+    }
+
+    private Connection begin() throws Exception {
+        Connection conn = dataSource.getConnection();
+        conn.setAutoCommit(false);
+        connections.add(conn);
+        return conn;
+    }
+
+    private static List<TriggerKey> keys(String... names) {
+        List<TriggerKey> keys = new ArrayList<>();
+        for (String name : names) {
+            keys.add(TriggerKey.triggerKey(name, GROUP));
+        }
+        return keys;
+    }
+
+    private static void insertJob(Connection conn, String name) throws Exception {
+        try (PreparedStatement ps = conn.prepareStatement("INSERT INTO " + H2Database.TABLE_PREFIX + "JOB_DETAILS "
+            + "(SCHED_NAME, JOB_NAME, JOB_GROUP, JOB_CLASS_NAME, IS_DURABLE, IS_NONCONCURRENT, IS_UPDATE_DATA, "
+            + "REQUESTS_RECOVERY) VALUES (?, ?, ?, ?, TRUE, FALSE, FALSE, FALSE)")) {
+            ps.setString(1, SCHEDULER_NAME);
+            ps.setString(2, name);
+            ps.setString(3, GROUP);
+            ps.setString(4, "TestJob");
+            ps.executeUpdate();
+        }
+    }
+
+    private static void insertTrigger(Connection conn, String name, String jobName, long nextFireTime) throws Exception {
+        try (PreparedStatement ps = conn.prepareStatement("INSERT INTO " + H2Database.TABLE_PREFIX + "TRIGGERS "
+            + "(SCHED_NAME, TRIGGER_NAME, TRIGGER_GROUP, JOB_NAME, JOB_GROUP, NEXT_FIRE_TIME, PRIORITY, TRIGGER_STATE, "
+            + "TRIGGER_TYPE, START_TIME, MISFIRE_INSTR) VALUES (?, ?, ?, ?, ?, ?, 5, ?, ?, 0, 0)")) {
+            ps.setString(1, SCHEDULER_NAME);
+            ps.setString(2, name);
+            ps.setString(3, GROUP);
+            ps.setString(4, jobName);
+            ps.setString(5, GROUP);
+            ps.setLong(6, nextFireTime);
+            ps.setString(7, Constants.STATE_WAITING);
+            ps.setString(8, Constants.TTYPE_SIMPLE);
+            ps.executeUpdate();
+        }
+    }
+}